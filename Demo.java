@@ -2,6 +2,8 @@ import rpg.dungeon.*;
 import rpg.square.*;
 import rpg.util.*;
 
+import java.util.Set;
+
 /**
  * A class demonstrating the Dungeon class.
  *
@@ -42,12 +44,13 @@ public class Demo {
         dungeon.addSubDungeonAt(Coordinate.ORIGIN, level);
         dungeon.addSubDungeonAt(Coordinate.ORIGIN, shaft);
 
+        Set<Square> reachable =
+                                    teleportationSquare.getReachableSquares();
         for (Coordinate coordinate : level.getCoordSyst())
             System.out.println(
                   "Can navigate from the teleportation square to "
                   + "the square at " + coordinate + ": "
-                  + teleportationSquare.canNavigateTo(
-                                             level.getSquareAt(coordinate)));
+                  + reachable.contains(level.getSquareAt(coordinate)));
         System.out.println(
               "Can navigate from the teleportation destination back to the "
               + "teleportation square in the shaft: "
@@ -17,6 +17,12 @@ import org.junit.runners.Suite;
     TransparentSquareTest.class,
     TransparentTeleportationSquareTest.class,
     RockTest.class,
+    EquilibrationBatchTest.class,
+    AreaRecordTest.class,
+    AreaPartitionTest.class,
+    ClimateDiffusionTest.class,
+    ReachabilityIndexTest.class,
+    PathFinderTest.class,
 
     CoupleTest.class,
 
@@ -27,12 +33,16 @@ import org.junit.runners.Suite;
 
     CoordinateTest.class,
     CoordinateSystemTest.class,
+    LongMapTest.class,
+    RTreeTest.class,
 
     DungeonTest.class,
     LeafDungeonTest.class,
     LevelTest.class,
     ShaftTest.class,
     CompositeDungeonTest.class,
+    DenseSquareStorageTest.class,
+    SparseSquareStorageTest.class,
 })
 public class AllTests {
 }
@@ -12,6 +12,7 @@ import java.util.Map;
 import java.util.EnumMap;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
+import java.util.Collections;
 
 /**
  * A class representing a composite dungeon, composed of other dungeons.
@@ -124,16 +125,29 @@ public class CompositeDungeon<S extends Square> extends Dungeon<S> {
         subDungeon.translate(offset);
         mergeSquaresOfSubdungeonWithNeighbours(subDungeon);
         subDungeons.add(subDungeon);
+        indexSubDungeon(subDungeon);
+        adjustSquareCounts(subDungeon.getNbSquares(),
+                           subDungeon.getNbIntrinsicallySlipperySquares());
         subDungeon.setParentDungeon(this);
+        adoptSquareIndexOf(subDungeon);
     }
 
     /** 
      * Merge the squares of the given dungeon with all its neighbouring 
      * squares in the dungeon complex of this dungeon.
+     * The squares of the given dungeon are already merged among 
+     * themselves, so only the squares on the faces of its coordinate 
+     * system can have new neighbours. Faces whose outer layer holds no 
+     * squares of the dungeon complex are skipped altogether. The remaining 
+     * faces are walked coordinate by coordinate, unless the given dungeon 
+     * has fewer squares than those faces have coordinates, in which case 
+     * its squares are walked instead.
      *
      * @param subDungeon 
      * The dungeon whose squares to merge with the squares in the dungeon 
      * complex of this dungeon.
+     * @pre
+     *   | !hasAsSubDungeon(subDungeon)
      * @effect
      *   | for each enty in subDungeon.getPositionsAndSquares() :
      *   |      mergeSquareWithNeighbours(entry.getValue(), entry.getKey())
@@ -141,9 +155,107 @@ public class CompositeDungeon<S extends Square> extends Dungeon<S> {
     @Raw @Model
     protected void mergeSquaresOfSubdungeonWithNeighbours(
                                         Dungeon<? extends S> subDungeon) {
-        for (Map.Entry<Coordinate, ? extends S> ps : 
-                                        subDungeon.getPositionsAndSquares())
-            mergeSquareWithNeighbours(ps.getValue(), ps.getKey());
+        Dungeon<? super S> root = getRootDungeon();
+        CoordinateSystem box = subDungeon.getCoordSystRaw();
+        Map<Direction, CoordinateSystem> touchingFaces =
+                new EnumMap<Direction, CoordinateSystem>(Direction.class);
+        double faceArea = 0;
+        for (Direction direction : Direction.values()) {
+            CoordinateSystem face = getFaceOf(box, direction);
+            CoordinateSystem layer = getOuterLayerOf(face, direction);
+            if (layer == null || !root.mayHaveSquaresIn(layer))
+                continue;
+            touchingFaces.put(direction, face);
+            faceArea += getVolumeOf(face);
+        }
+        if (touchingFaces.isEmpty())
+            return;
+
+        if (faceArea <= subDungeon.getNbSquares()) {
+            for (Map.Entry<Direction, CoordinateSystem> entry :
+                                                touchingFaces.entrySet()) {
+                for (Coordinate coordinate : entry.getValue()) {
+                    Square square = subDungeon.getSquareAtRaw(coordinate);
+                    if (square != null)
+                        mergeSquareOutwards(root, square, coordinate,
+                                            entry.getKey());
+                }
+            }
+        } else {
+            for (Map.Entry<Coordinate, ? extends S> ps : 
+                                    subDungeon.getPositionsAndSquares()) {
+                for (Map.Entry<Direction, CoordinateSystem> entry :
+                                                touchingFaces.entrySet()) {
+                    if (entry.getValue().contains(ps.getKey()))
+                        mergeSquareOutwards(root, ps.getValue(),
+                                            ps.getKey(), entry.getKey());
+                }
+            }
+        }
+    }
+
+    /** 
+     * Merge the given square at the given coordinate with its neighbour 
+     * in the given direction in the given root dungeon, if any.
+     */
+    @Raw
+    private static void mergeSquareOutwards(Dungeon<?> root, Square square,
+                                Coordinate coordinate, Direction direction) {
+        Square neighbour = (Square) root.getSquareAtRaw(
+                                    direction.moveCoordinate(coordinate));
+        if (neighbour != null)
+            square.mergeWith(neighbour, direction);
+    }
+
+    /** 
+     * Return the face of the given box that lies on the side of the given 
+     * direction.
+     * 
+     * @return
+     *   | result == { coordinate in box | true :
+     *   |              !box.contains(direction.moveCoordinate(coordinate)) }
+     */
+    private static CoordinateSystem getFaceOf(CoordinateSystem box,
+                                              Direction direction) {
+        Coordinate lo = box.getLowerBound();
+        Coordinate hi = box.getUpperBound();
+        Coordinate step = direction.moveCoordinate(Coordinate.ORIGIN);
+        if (step.x + step.y + step.z > 0)
+            lo = new Coordinate(step.x != 0 ? hi.x : lo.x,
+                                step.y != 0 ? hi.y : lo.y,
+                                step.z != 0 ? hi.z : lo.z);
+        else
+            hi = new Coordinate(step.x != 0 ? lo.x : hi.x,
+                                step.y != 0 ? lo.y : hi.y,
+                                step.z != 0 ? lo.z : hi.z);
+        return new CoordinateSystem(lo, hi);
+    }
+
+    /** 
+     * Return the layer of coordinates just outside of the given face in 
+     * the given direction, or null if that layer falls outside of the 
+     * range of valid coordinate systems.
+     */
+    private static CoordinateSystem getOuterLayerOf(CoordinateSystem face,
+                                                    Direction direction) {
+        Coordinate lo = direction.moveCoordinate(face.getLowerBound());
+        Coordinate hi = direction.moveCoordinate(face.getUpperBound());
+        //moving past the largest coordinate wraps around to negative ones
+        if (!CoordinateSystem.isPossibleLowerBound(lo)
+                || !CoordinateSystem.matchesLowerUpperBound(lo, hi))
+            return null;
+        return new CoordinateSystem(lo, hi);
+    }
+
+    /** 
+     * Return the number of coordinates in the given box.
+     */
+    private static double getVolumeOf(CoordinateSystem box) {
+        Coordinate lo = box.getLowerBound();
+        Coordinate hi = box.getUpperBound();
+        return ((double) hi.x - lo.x + 1)
+             * ((double) hi.y - lo.y + 1)
+             * ((double) hi.z - lo.z + 1);
     }
 
     /** 
@@ -174,7 +286,11 @@ public class CompositeDungeon<S extends Square> extends Dungeon<S> {
             return;
         if (!subDungeon.isTerminated())
             subDungeon.terminate();
-        subDungeons.remove(subDungeon);
+        if (subDungeons.remove(subDungeon)) {
+            unindexSubDungeon(subDungeon);
+            adjustSquareCounts(-subDungeon.getNbSquares(),
+                            -subDungeon.getNbIntrinsicallySlipperySquares());
+        }
         subDungeon.setParentDungeon(null);
     }
 
@@ -223,10 +339,13 @@ public class CompositeDungeon<S extends Square> extends Dungeon<S> {
                                          CoordinateSystem coordSyst) {
         assert coordSyst != null;
 
-        if (!getCoordSyst().contains(coordSyst))
+        if (!getCoordSystRaw().contains(coordSyst))
             return false;
-        for (Dungeon<?> subDungeon : getSubDungeonsRaw())
-            if (subDungeon != dungeon  &&  subDungeon.overlaps(coordSyst))
+        Coordinate origin = getCoordSystRaw().getLowerBound();
+        for (Dungeon<?> subDungeon : subDungeonIndex.getOverlapping(
+                                coordSyst.getLowerBound().sub(origin),
+                                coordSyst.getUpperBound().sub(origin)))
+            if (subDungeon != dungeon)
                 return false;
         return true;
     }
@@ -254,6 +373,51 @@ public class CompositeDungeon<S extends Square> extends Dungeon<S> {
     private Set<Dungeon<? extends S>> subDungeons = 
                                         new HashSet<Dungeon<? extends S>>();
 
+    /**
+     * Add the given subdungeon to the spatial index of this composite 
+     * dungeon.
+     *
+     * @param subDungeon
+     * The subdungeon to index.
+     */
+    @Raw
+    private void indexSubDungeon(Dungeon<? extends S> subDungeon) {
+        CoordinateSystem coordSyst = subDungeon.getCoordSystRaw();
+        Coordinate origin = getCoordSystRaw().getLowerBound();
+        subDungeonIndex.insert(coordSyst.getLowerBound().sub(origin),
+                               coordSyst.getUpperBound().sub(origin),
+                               subDungeon);
+    }
+
+    /**
+     * Remove the given subdungeon from the spatial index of this composite 
+     * dungeon.
+     *
+     * @param subDungeon
+     * The subdungeon to remove from the index.
+     */
+    @Raw
+    private void unindexSubDungeon(Dungeon<?> subDungeon) {
+        CoordinateSystem coordSyst = subDungeon.getCoordSystRaw();
+        Coordinate origin = getCoordSystRaw().getLowerBound();
+        boolean removed = subDungeonIndex.remove(
+                                    coordSyst.getLowerBound().sub(origin),
+                                    coordSyst.getUpperBound().sub(origin),
+                                    subDungeon);
+        assert removed;
+    }
+
+    /**
+     * Variable referencing a spatial index of the coordinate systems of the 
+     * subdungeons of this composite dungeon.
+     * The boxes in this index are relative to the lower bound of the 
+     * coordinate system of this composite dungeon. As a composite dungeon 
+     * translates along with all of its subdungeons, translating it leaves 
+     * this index untouched.
+     */
+    private final RTree<Dungeon<? extends S>> subDungeonIndex =
+                                        new RTree<Dungeon<? extends S>>();
+
     /** 
      * Check whether the given coordinate lies within this composite dungeon.
      *
@@ -281,12 +445,13 @@ public class CompositeDungeon<S extends Square> extends Dungeon<S> {
      */
     public Dungeon<? extends S> getSubDungeonContaining(
                                                 Coordinate coordinate) {
-        if (!getCoordSyst().contains(coordinate))
+        if (!getCoordSystRaw().contains(coordinate))
             return null;
-        for (Dungeon<? extends S> subDungeon : getSubDungeonsRaw())
-            if (subDungeon.containsCoordinate(coordinate))
-                return subDungeon;
-        return null;
+        Dungeon<? extends S> subDungeon = subDungeonIndex.getContaining(
+                        coordinate.sub(getCoordSystRaw().getLowerBound()));
+        if (subDungeon == null || !subDungeon.containsCoordinate(coordinate))
+            return null;
+        return subDungeon;
     }
     
     /** 
@@ -304,9 +469,7 @@ public class CompositeDungeon<S extends Square> extends Dungeon<S> {
                                             throws IllegalArgumentException {
         if (!isEffectiveCoordinate(coordinate))
             throw new IllegalArgumentException();
-        if (getSubDungeonContaining(coordinate) == null)
-            return false;
-        return getSubDungeonContaining(coordinate).isOccupied(coordinate);
+        return getSquareAtRaw(coordinate) != null;
 	}
 
     /** 
@@ -321,28 +484,72 @@ public class CompositeDungeon<S extends Square> extends Dungeon<S> {
             throws IllegalArgumentException, CoordinateNotOccupiedException {
         if (!isEffectiveCoordinate(coordinate))
             throw new IllegalArgumentException();
-        if (getSubDungeonContaining(coordinate) == null)
+        S result = getSquareAtRaw(coordinate);
+        if (result == null)
             throw new CoordinateNotOccupiedException(coordinate, this);
-        return getSubDungeonContaining(coordinate).getSquareAt(coordinate);
+        return result;
 	}
 
     /** 
-     * Returns whether or not this composite dungeon contains the given 
-     * square.
+     * Checks whether this composite dungeon may have squares within the 
+     * given region.
      *
      * @return
-     *   | result == (for some subDungeon in getSubDungeons() :
-     *   |                              subDungeon.hasSquare(square))
+     * True iff one of the subdungeons that overlap the given region may 
+     * have squares within it.
      */
-	@Override
-	public boolean hasSquare(Square square) {
-        if (square == null)
+    @Raw @Override
+    protected boolean mayHaveSquaresIn(CoordinateSystem region) {
+        if (!getCoordSystRaw().overlaps(region))
             return false;
-        for (Dungeon<? extends S> subDungeon : getSubDungeonsRaw())
-            if (subDungeon.hasSquare(square))
+        Coordinate origin = getCoordSystRaw().getLowerBound();
+        for (Dungeon<? extends S> subDungeon : subDungeonIndex.getOverlapping(
+                                        region.getLowerBound().sub(origin),
+                                        region.getUpperBound().sub(origin)))
+            if (subDungeon.mayHaveSquaresIn(region))
                 return true;
-		return false;
-	}
+        return false;
+    }
+
+    /** 
+     * Returns the square at the given coordinate in this composite 
+     * dungeon, or null if there is no such square.
+     * Only the single subdungeon whose box contains the given coordinate 
+     * is consulted, as found by the spatial index at each level.
+     */
+    @Raw @Override
+    protected S getSquareAtRaw(Coordinate coordinate) {
+        assert isEffectiveCoordinate(coordinate);
+        if (!getCoordSystRaw().contains(coordinate))
+            return null;
+        Dungeon<? extends S> subDungeon = subDungeonIndex.getContaining(
+                        coordinate.sub(getCoordSystRaw().getLowerBound()));
+        if (subDungeon == null)
+            return null;
+        return subDungeon.getSquareAtRaw(coordinate);
+    }
+
+    /** 
+     * Return the leaf dungeon of this composite dungeon that holds the 
+     * given square.
+     * The leaf dungeon is looked up in the reverse index of the root 
+     * dungeon, after which its chain of parent dungeons is walked up to 
+     * check that it belongs to this composite dungeon.
+     */
+    @Raw @Override
+    @SuppressWarnings("unchecked")
+    public LeafDungeon<? extends S> getLeafDungeonContaining(Square square) {
+        SquarePosition position = getPositionOf(square);
+        if (position == null)
+            return null;
+        LeafDungeon<?> leafDungeon = position.leafDungeon;
+        for (Dungeon<?> ancestor = leafDungeon; ancestor != null;
+                                    ancestor = ancestor.getParentDungeon())
+            if (ancestor == this)
+                //all descendants of this dungeon hold squares of type S
+                return (LeafDungeon<? extends S>) leafDungeon;
+        return null;
+    }
 
     /** 
      * Deletes the square at the given coordinate and terminates it.
@@ -355,25 +562,10 @@ public class CompositeDungeon<S extends Square> extends Dungeon<S> {
 			throws IllegalArgumentException, CoordinateNotOccupiedException {
         if (!isEffectiveCoordinate(coordinate))
             throw new IllegalArgumentException();
-        if (getSubDungeonContaining(coordinate) == null)
+        Dungeon<? extends S> subDungeon = getSubDungeonContaining(coordinate);
+        if (subDungeon == null)
             throw new CoordinateNotOccupiedException(coordinate, this);
-        getSubDungeonContaining(coordinate).deleteSquareAt(coordinate);
-	}
-
-	/** 
-     * Return the number of squares in this composite dungeon.
-     *
-     * @return
-     * The sum of the number of squares in each subdungeon.
-	 */
-    @Raw @Override
-	public int getNbSquares() {
-        int result = 0;
-        if (getSubDungeonsRaw() == null)
-            return 0;
-        for (Dungeon<? extends S> subDungeon : getSubDungeonsRaw())
-            result += subDungeon.getNbSquares();
-        return result;
+        subDungeon.deleteSquareAt(coordinate);
 	}
 
     /**
@@ -394,6 +586,50 @@ public class CompositeDungeon<S extends Square> extends Dungeon<S> {
             subDungeon.addSquareMappingTo(map);
 	}
 
+    /**
+     * Return an iterator over the squares and their positions in this 
+     * composite dungeon.
+     * This chains the iterators of the subdungeons of this composite 
+     * dungeon.
+     */
+    @Raw @Override
+    protected Iterator<Map.Entry<Coordinate, S>>
+                getPositionAndSquareIterator() throws IllegalStateException {
+        return new Iterator<Map.Entry<Coordinate, S>>() {
+            public boolean hasNext() {
+                while (!entryIterator.hasNext()) {
+                    if (subDungeonIterator == null
+                            || !subDungeonIterator.hasNext())
+                        return false;
+                    entryIterator = subDungeonIterator.next().
+                                            getPositionAndSquareIterator();
+                }
+                return true;
+            }
+
+            //the entries are immutable, so they can safely be viewed as 
+            //entries of a supertype
+            @SuppressWarnings("unchecked")
+            public Map.Entry<Coordinate, S> next()
+                                            throws NoSuchElementException {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                return (Map.Entry<Coordinate, S>) entryIterator.next();
+            }
+
+            public void remove() throws UnsupportedOperationException {
+                throw new UnsupportedOperationException();
+            }
+
+            private Iterator<Dungeon<? extends S>> subDungeonIterator =
+                getSubDungeonsRaw() == null
+                    ? null : getSubDungeonsRaw().iterator();
+            private Iterator<? extends Map.Entry<Coordinate, ? extends S>>
+                entryIterator = Collections.<Map.Entry<Coordinate, S>>
+                                                        emptyList().iterator();
+        };
+    }
+
     /**
      * Return an iterator of the squares in this composite dungeon that 
      * satisfy the conditions as imposed by the given filter.
@@ -472,20 +708,29 @@ public class CompositeDungeon<S extends Square> extends Dungeon<S> {
      * Return a mapping of directions to squares that represent all 
      * neighbouring squares of the given coordinate in this composite 
      * dungeon. 
+     * Each neighbouring coordinate is resolved to the one leaf dungeon 
+     * that may hold it, so at most six leaf dungeons are consulted, no 
+     * matter how many subdungeons this composite dungeon has.
      */
     @Raw @Override
     public Map<Direction,S> getDirectionsAndNeighboursOf(Coordinate coordinate)
                                             throws IllegalArgumentException {
+        if (!isEffectiveCoordinate(coordinate))
+            throw new IllegalArgumentException();
         EnumMap<Direction, S> result =
                                 new EnumMap<Direction, S>(Direction.class);
-        for (Dungeon<? extends S> subDungeon : getSubDungeonsRaw()) {
-            result.putAll(subDungeon.getDirectionsAndNeighboursOf(coordinate));
+        for (Direction direction : Direction.values()) {
+            S neighbour = getSquareAtRaw(direction.moveCoordinate(coordinate));
+            if (neighbour != null)
+                result.put(direction, neighbour);
         }
         return result;
     }
 
     /** 
      * Translate this composite dungeon over the given offset.
+     * The spatial index of the subdungeons is relative to this composite 
+     * dungeon, so it remains valid.
      *
      * @param offset 
      * The offset over which to translate this composite dungeon.
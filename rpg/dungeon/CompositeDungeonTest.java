@@ -12,6 +12,9 @@ import java.util.Map;
 import java.util.HashMap;
 import java.util.Set;
 import java.util.HashSet;
+import java.util.AbstractMap;
+import java.util.List;
+import java.util.ArrayList;
 
 /**
  * A class collecting tests for the class of composite dungeons.
@@ -121,6 +124,36 @@ public class CompositeDungeonTest {
         assertClassInvariantsDeep(dungeon);
     }
 
+    @Test
+    public void getDirectionsAndNeighboursOf_nested() {
+        CompositeDungeon<Square> inner = new CompositeDungeon<Square>(
+                new CoordinateSystem(new Coordinate(0, 0, 1),
+                                     new Coordinate(1, 1, 3)));
+        inner.addSubDungeonAt(Coordinate.ORIGIN, regularShaft);
+        dungeon.addSubDungeonAt(Coordinate.ORIGIN, teleportLevel);
+        dungeon.addSubDungeonAt(Coordinate.ORIGIN, inner);
+        dungeon.addSubDungeonAt(new Coordinate(0, 0, 4), transparentLevel);
+
+        Map<Direction, Square> map;
+        map = dungeon.getDirectionsAndNeighboursOf(new Coordinate(0, 1, 2));
+        assertEquals(regSq1, map.get(Direction.DOWN));
+        assertEquals(regSq3, map.get(Direction.UP));
+        assertEquals(2, map.size());
+
+        map = dungeon.getDirectionsAndNeighboursOf(new Coordinate(0, 1, 4));
+        assertEquals(regSq3, map.get(Direction.DOWN));
+        assertEquals(transSq3, map.get(Direction.EAST));
+        assertEquals(2, map.size());
+
+        map = dungeon.getDirectionsAndNeighboursOf(new Coordinate(9, 9, 9));
+        assertTrue(map.isEmpty());
+        assertClassInvariantsDeep(dungeon);
+    }
+    @Test (expected = IllegalArgumentException.class)
+    public void getDirectionsAndNeighboursOf_null() {
+        dungeon.getDirectionsAndNeighboursOf(null);
+    }
+
     @Test
     public void getSubDungeonContaining_test() {
         assertEquals(null, dungeon.getSubDungeonContaining(
@@ -151,6 +184,154 @@ public class CompositeDungeonTest {
         assertClassInvariantsDeep(dungeon);
     }
 
+    @Test
+    public void getSubDungeonContaining_manySubDungeons() {
+        CompositeDungeon<Square> world = new CompositeDungeon<Square>(
+                new CoordinateSystem(Coordinate.ORIGIN,
+                                     new Coordinate(99, 99, 0)));
+        List<List<Level<RegularSquare>>> levels = newLevelGrid(10);
+        for (int i = 0; i < 10; i++)
+            for (int j = 0; j < 10; j++)
+                world.addSubDungeonAt(new Coordinate(10 * i, 10 * j, 0),
+                                      levels.get(i).get(j));
+        for (int i = 0; i < 10; i++)
+            for (int j = 0; j < 10; j++)
+                assertEquals(levels.get(i).get(j),
+                            world.getSubDungeonContaining(
+                                new Coordinate(10 * i + 3, 10 * j + 9, 0)));
+
+        for (int i = 0; i < 10; i += 2)
+            world.deleteSubDungeon(levels.get(i).get(i));
+        for (int i = 0; i < 10; i++)
+            for (int j = 0; j < 10; j++)
+                assertEquals(i == j && i % 2 == 0 ? null : levels.get(i).get(j),
+                            world.getSubDungeonContaining(
+                                new Coordinate(10 * i, 10 * j, 0)));
+        assertTrue(world.canExpandSubDungeonTo(null, new CoordinateSystem(
+                new Coordinate(20, 20, 0), new Coordinate(29, 29, 0))));
+        assertFalse(world.canExpandSubDungeonTo(null, new CoordinateSystem(
+                new Coordinate(20, 20, 0), new Coordinate(30, 29, 0))));
+        assertClassInvariantsDeep(world);
+    }
+
+    @Test
+    public void addSubDungeonAt_mergesFaces() {
+        Level<RegularSquare> full = new Level<RegularSquare>(3, 3);
+        for (int x = 0; x < 3; x++)
+            for (int y = 0; y < 3; y++)
+                if (x != 0 || y != 0)
+                    full.addSquareAt(new Coordinate(x, y, 0),
+                                     new RegularSquare());
+        Level<RegularSquare> sparse = new Level<RegularSquare>(3, 3);
+        RegularSquare lonely = new RegularSquare();
+        sparse.addSquareAt(new Coordinate(0, 1, 0), lonely);
+
+        dungeon.addSubDungeonAt(new Coordinate(0, 3, 1), full);
+        dungeon.addSubDungeonAt(new Coordinate(3, 3, 1), sparse);
+        Square west = full.getSquareAt(new Coordinate(2, 4, 1));
+        assertEquals(west, lonely.getNeighbours().get(Direction.WEST));
+        assertEquals(1, lonely.getNeighbours().size());
+
+        Level<RegularSquare> below = new Level<RegularSquare>(3, 3);
+        RegularSquare underneath = new RegularSquare();
+        below.addSquareAt(new Coordinate(1, 1, 0), underneath);
+        dungeon.addSubDungeonAt(new Coordinate(0, 3, 0), below);
+        assertEquals(full.getSquareAt(new Coordinate(1, 4, 1)),
+                     underneath.getNeighbours().get(Direction.UP));
+        assertClassInvariantsDeep(dungeon);
+    }
+
+    private static List<List<Level<RegularSquare>>> newLevelGrid(int size) {
+        List<List<Level<RegularSquare>>> result =
+                                    new ArrayList<List<Level<RegularSquare>>>();
+        for (int i = 0; i < size; i++) {
+            List<Level<RegularSquare>> row =
+                                    new ArrayList<Level<RegularSquare>>();
+            for (int j = 0; j < size; j++)
+                row.add(new Level<RegularSquare>(10, 10));
+            result.add(row);
+        }
+        return result;
+    }
+
+    @Test
+    public void getPositionsAndSquares_matchesMapping() {
+        dungeon.addSubDungeonAt(Coordinate.ORIGIN, teleportLevel);
+        dungeon.addSubDungeonAt(new Coordinate(0, 0, 4), transparentLevel);
+        Set<Map.Entry<Coordinate, Square>> view =
+                                        dungeon.getPositionsAndSquares();
+        assertEquals(dungeon.getNbSquares(), view.size());
+        assertEquals(dungeon.getSquareMapping().entrySet(), view);
+        assertTrue(view.contains(new AbstractMap.SimpleEntry<Coordinate,
+                                            Square>(telCoord1, regTelSq1)));
+        assertFalse(view.contains(new AbstractMap.SimpleEntry<Coordinate,
+                                            Square>(telCoord1, transSq1)));
+
+        dungeon.deleteSubDungeon(transparentLevel);
+        assertEquals(dungeon.getSquareMapping().entrySet(), view);
+    }
+
+    @Test
+    public void getLeafDungeonContaining_nested() {
+        CompositeDungeon<Square> inner = new CompositeDungeon<Square>(
+                new CoordinateSystem(Coordinate.ORIGIN,
+                                     new Coordinate(4, 4, 4)));
+        inner.addSubDungeonAt(Coordinate.ORIGIN, teleportLevel);
+        assertEquals(teleportLevel, inner.getLeafDungeonContaining(regTelSq1));
+        dungeon.addSubDungeonAt(Coordinate.ORIGIN, regularShaft);
+        dungeon.addSubDungeonAt(new Coordinate(0, 0, 5), inner);
+
+        assertEquals(teleportLevel,
+                                dungeon.getLeafDungeonContaining(regTelSq1));
+        assertEquals(teleportLevel, inner.getLeafDungeonContaining(regTelSq2));
+        assertEquals(regularShaft, dungeon.getLeafDungeonContaining(regSq1));
+        assertNull(inner.getLeafDungeonContaining(regSq1));
+        assertNull(dungeon.getLeafDungeonContaining(transSq1));
+        assertEquals(new Coordinate(0, 1, 5),
+                                        dungeon.getCoordinateOf(regTelSq1));
+        assertEquals(new Coordinate(1, 0, 5),
+                                    teleportLevel.getCoordinateOf(regTelSq2));
+        assertTrue(inner.hasSquare(regTelSq3));
+        assertFalse(inner.hasSquare(regSq3));
+
+        dungeon.deleteSquareAt(new Coordinate(0, 1, 5));
+        assertFalse(dungeon.hasSquare(regTelSq1));
+        assertNull(dungeon.getCoordinateOf(regTelSq1));
+        dungeon.deleteSubDungeon(regularShaft);
+        assertFalse(dungeon.hasSquare(regSq2));
+        assertTrue(dungeon.hasSquare(regTelSq2));
+    }
+
+    @Test
+    public void addSubDungeonAt_largerSubDungeonKeepsItsIndex() {
+        Level<Square> big = new Level<Square>(5, 5);
+        for (int x = 0; x < 5; x++)
+            for (int y = 1; y < 5; y++)
+                big.addSquareAt(new Coordinate(x, y, 0), new RegularSquare());
+        Square square = big.getSquareAt(new Coordinate(4, 4, 0));
+        CompositeDungeon<Square> inner = new CompositeDungeon<Square>(
+                new CoordinateSystem(Coordinate.ORIGIN,
+                                     new Coordinate(4, 4, 4)));
+        inner.addSubDungeonAt(Coordinate.ORIGIN, big);
+        dungeon.addSubDungeonAt(new Coordinate(0, 0, 5), teleportLevel);
+        dungeon.addSubDungeonAt(Coordinate.ORIGIN, inner);
+
+        assertEquals(big, dungeon.getLeafDungeonContaining(square));
+        assertEquals(new Coordinate(4, 4, 0), dungeon.getCoordinateOf(square));
+        assertTrue(inner.hasSquare(square));
+        assertTrue(big.hasSquare(square));
+        assertEquals(new Coordinate(0, 1, 5),
+                                        dungeon.getCoordinateOf(regTelSq1));
+        assertFalse(inner.hasSquare(regTelSq1));
+        assertNull(big.getCoordinateOf(regTelSq1));
+
+        dungeon.translate(new Coordinate(1, 1, 1));
+        assertEquals(new Coordinate(5, 5, 1), big.getCoordinateOf(square));
+        big.deleteSquareAt(new Coordinate(5, 5, 1));
+        assertFalse(dungeon.hasSquare(square));
+        assertEquals(22, dungeon.getNbSquares());
+    }
+
     @Test
     public void translate_legal() {
         CoordinateSystem teleport, regular, transparent;
@@ -300,6 +481,22 @@ public class CompositeDungeonTest {
         assertEquals(6, dungeon.getNbSquares());
         dungeon.addSubDungeonAt(new Coordinate(0, 0, 4), transparentLevel);
         assertEquals(9, dungeon.getNbSquares());
+        dungeon.deleteSubDungeon(regularShaft);
+        assertEquals(6, dungeon.getNbSquares());
+        transparentLevel.deleteSquareAt(new Coordinate(0, 1, 4));
+        assertEquals(5, dungeon.getNbSquares());
+    }
+
+    @Test
+    public void getNbIntrinsicallySlipperySquares_rollUp() {
+        dungeon.addSubDungeonAt(Coordinate.ORIGIN, teleportLevel);
+        dungeon.addSubDungeonAt(Coordinate.ORIGIN, regularShaft);
+        assertEquals(0, dungeon.getNbIntrinsicallySlipperySquares());
+        new Wall(regSq2.getBorderAt(Direction.DOWN), true);
+        assertEquals(1, regularShaft.getNbIntrinsicallySlipperySquares());
+        assertEquals(1, dungeon.getNbIntrinsicallySlipperySquares());
+        new Wall(regSq2.getBorderAt(Direction.DOWN), false);
+        assertEquals(0, dungeon.getNbIntrinsicallySlipperySquares());
     }
 
     @Test
@@ -0,0 +1,333 @@
+package rpg.dungeon;
+
+import rpg.square.Square;
+import rpg.util.Coordinate;
+import rpg.util.CoordinateSystem;
+
+import be.kuleuven.cs.som.annotate.*;
+
+import java.util.Map;
+import java.util.AbstractMap;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A class of square storages that store their squares in a flat array
+ * that covers a complete box of coordinates.
+ * The slot of a square is computed from the offset of its coordinate
+ * against the lower bound of the box, so looking up a square amounts to a
+ * single array read.
+ *
+ * @invar
+ *   | 0 &lt;= size() &amp;&amp; size() &lt;= getVolume()
+ *
+ * @author Roald Frederickx
+ */
+class DenseSquareStorage<S extends Square> extends SquareStorage<S> {
+
+    /**
+     * Create a new, empty dense square storage that covers the given
+     * coordinate system.
+     *
+     * @param coordSyst
+     * The coordinate system to cover.
+     * @throws IllegalArgumentException
+     *   | !canCoverDensely(coordSyst)
+     */
+    DenseSquareStorage(CoordinateSystem coordSyst)
+                                        throws IllegalArgumentException {
+        if (!canCoverDensely(coordSyst))
+            throw new IllegalArgumentException();
+        Coordinate lo = coordSyst.getLowerBound();
+        Coordinate hi = coordSyst.getUpperBound();
+        xSize = getExtent(lo.x, hi.x);
+        ySize = getExtent(lo.y, hi.y);
+        zSize = getExtent(lo.z, hi.z);
+        setLowerBound(lo);
+        slots = new Object[(int) (xSize * ySize * zSize)];
+    }
+
+    /**
+     * Check whether the given coordinate system is small enough to be
+     * covered by a dense square storage.
+     *
+     * @param coordSyst
+     * The coordinate system to check.
+     * @return
+     *   | result == (coordSyst != null
+     *   |      &amp;&amp; (for each dimension : size(dimension) &lt;= MAX_VOLUME)
+     *   |      &amp;&amp; volume(coordSyst) &lt;= MAX_VOLUME)
+     */
+    static boolean canCoverDensely(CoordinateSystem coordSyst) {
+        if (coordSyst == null)
+            return false;
+        Coordinate lo = coordSyst.getLowerBound();
+        Coordinate hi = coordSyst.getUpperBound();
+        long xSize = getExtent(lo.x, hi.x);
+        long ySize = getExtent(lo.y, hi.y);
+        long zSize = getExtent(lo.z, hi.z);
+        if (xSize < 0 || ySize < 0 || zSize < 0)
+            return false;
+        if (xSize * ySize > MAX_VOLUME)
+            return false;
+        return xSize * ySize * zSize <= MAX_VOLUME;
+    }
+
+    /**
+     * Return the number of coordinates from the given lower bound up to
+     * and including the given upper bound, or -1 if that number exceeds
+     * the maximum volume of a dense square storage.
+     * The number is compared against the maximum volume before it is
+     * computed, so that bounds that lie further apart than the range of a
+     * long do not make it wrap around.
+     *
+     * @param lower
+     * The lower bound.
+     * @param upper
+     * The upper bound.
+     * @pre
+     *   | lower &lt;= upper
+     */
+    private static long getExtent(long lower, long upper) {
+        long difference = upper - lower;
+        if (difference < 0 || difference >= MAX_VOLUME)
+            return -1;
+        return difference + 1;
+    }
+
+    /**
+     * Constant registering the maximum number of slots of a dense square
+     * storage.
+     * Larger boxes should use a storage that only pays for the squares it
+     * actually holds.
+     */
+    static final long MAX_VOLUME = 1 << 24;
+
+    /**
+     * Return the number of slots of this storage.
+     */
+    @Basic @Immutable
+    long getVolume() {
+        return slots.length;
+    }
+
+    /**
+     * Return the index of the slot for the given coordinate, or -1 if the
+     * given coordinate lies outside of the box covered by this storage.
+     *
+     * @param x
+     * The x component of the coordinate.
+     * @param y
+     * The y component of the coordinate.
+     * @param z
+     * The z component of the coordinate.
+     */
+    private int indexOf(long x, long y, long z) {
+        long dx = x - lowerX;
+        long dy = y - lowerY;
+        long dz = z - lowerZ;
+        if (dx < 0 || dx >= xSize || dy < 0 || dy >= ySize
+                                  || dz < 0 || dz >= zSize)
+            return -1;
+        return (int) (dx + xSize * (dy + ySize * dz));
+    }
+
+    /**
+     * Return the coordinate that belongs to the slot with the given index.
+     *
+     * @param index
+     * The index of the slot.
+     * @pre
+     *   | 0 &lt;= index &amp;&amp; index &lt; getVolume()
+     */
+    private Coordinate coordinateOf(int index) {
+        long dx = index % xSize;
+        long rest = index / xSize;
+        long dy = rest % ySize;
+        long dz = rest / ySize;
+        return new Coordinate(lowerX + dx, lowerY + dy, lowerZ + dz);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    S get(Coordinate coordinate) {
+        int index = indexOf(coordinate.x, coordinate.y, coordinate.z);
+        if (index < 0)
+            return null;
+        return (S) slots[index];
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    S put(Coordinate coordinate, S square) {
+        assert square != null;
+        int index = indexOf(coordinate.x, coordinate.y, coordinate.z);
+        assert index >= 0;
+        S old = (S) slots[index];
+        slots[index] = square;
+        if (old == null)
+            size++;
+        return old;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    S remove(Coordinate coordinate) {
+        int index = indexOf(coordinate.x, coordinate.y, coordinate.z);
+        if (index < 0)
+            return null;
+        S old = (S) slots[index];
+        slots[index] = null;
+        if (old != null)
+            size--;
+        return old;
+    }
+
+    /**
+     * Check whether this storage is able to store a square at the given
+     * coordinate.
+     *
+     * @return
+     * True iff the given coordinate lies in the box covered by this
+     * storage.
+     */
+    @Override
+    boolean canStoreAt(Coordinate coordinate) {
+        return coordinate != null
+            && indexOf(coordinate.x, coordinate.y, coordinate.z) >= 0;
+    }
+
+    @Basic @Override
+    int size() {
+        return size;
+    }
+
+    /**
+     * Variable registering the number of occupied slots of this storage.
+     */
+    private int size = 0;
+
+    @Override
+    boolean containsSquare(Square square) {
+        if (square == null)
+            return false;
+        for (Object slot : slots)
+            if (slot == square)
+                return true;
+        return false;
+    }
+
+    /**
+     * Translate all coordinates of this storage over the given offset.
+     * This only shifts the box that is covered by this storage, the slots
+     * themselves are left untouched.
+     */
+    @Override
+    void translate(Coordinate offset) {
+        setLowerBound(new Coordinate(lowerX, lowerY, lowerZ).add(offset));
+    }
+
+    /**
+     * Set the lower bound of the box covered by this storage.
+     *
+     * @param lowerBound
+     * The new lower bound.
+     */
+    private void setLowerBound(Coordinate lowerBound) {
+        lowerX = lowerBound.x;
+        lowerY = lowerBound.y;
+        lowerZ = lowerBound.z;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    void addMappingTo(Map<Coordinate, ? super S> map) {
+        for (int i = 0; i < slots.length; i++)
+            if (slots[i] != null)
+                map.put(coordinateOf(i), (S) slots[i]);
+    }
+
+    @Override
+    Iterator<S> squareIterator() {
+        return new Iterator<S>() {
+            public boolean hasNext() {
+                return index < slots.length;
+            }
+
+            @SuppressWarnings("unchecked")
+            public S next() throws NoSuchElementException {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                S result = (S) slots[index];
+                index = advance(index + 1);
+                return result;
+            }
+
+            public void remove() throws UnsupportedOperationException {
+                throw new UnsupportedOperationException();
+            }
+
+            private int index = advance(0);
+        };
+    }
+
+    @Override
+    Iterator<Map.Entry<Coordinate, S>> entryIterator() {
+        return new Iterator<Map.Entry<Coordinate, S>>() {
+            public boolean hasNext() {
+                return index < slots.length;
+            }
+
+            @SuppressWarnings("unchecked")
+            public Map.Entry<Coordinate, S> next()
+                                            throws NoSuchElementException {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                Map.Entry<Coordinate, S> result =
+                        new AbstractMap.SimpleImmutableEntry<Coordinate, S>(
+                                    coordinateOf(index), (S) slots[index]);
+                index = advance(index + 1);
+                return result;
+            }
+
+            public void remove() throws UnsupportedOperationException {
+                throw new UnsupportedOperationException();
+            }
+
+            private int index = advance(0);
+        };
+    }
+
+    /**
+     * Return the index of the first occupied slot at or after the given
+     * index, or the number of slots if there is no such slot.
+     *
+     * @param from
+     * The index to start looking from.
+     */
+    private int advance(int from) {
+        while (from < slots.length && slots[from] == null)
+            from++;
+        return from;
+    }
+
+    /**
+     * Variables registering the lower bound of the box covered by this
+     * storage.
+     */
+    private long lowerX, lowerY, lowerZ;
+
+    /**
+     * Variables registering the dimensions of the box covered by this
+     * storage.
+     */
+    private final long xSize, ySize, zSize;
+
+    /**
+     * Variable referencing the slots of this storage. The x component of
+     * the coordinates varies fastest, the z component slowest.
+     */
+    private final Object[] slots;
+}
+
+// vim: ts=4:sw=4:expandtab:smarttab
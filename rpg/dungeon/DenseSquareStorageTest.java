@@ -0,0 +1,141 @@
+package rpg.dungeon;
+
+import rpg.square.*;
+import rpg.util.*;
+
+import static org.junit.Assert.*;
+import org.junit.*;
+
+import java.util.Map;
+import java.util.HashMap;
+import java.util.Iterator;
+
+/**
+ * A class collecting tests for the class of dense square storages.
+ *
+ * @author Roald Frederickx
+ */
+public class DenseSquareStorageTest {
+
+    private DenseSquareStorage<Square> storage_3x2_offset10;
+    private Square square1;
+    private Square square2;
+
+    @Before
+    public void setUpMutableFixture() {
+        storage_3x2_offset10 = new DenseSquareStorage<Square>(
+                new CoordinateSystem(new Coordinate(10, 10, 10),
+                                     new Coordinate(12, 11, 10)));
+        square1 = new RegularSquare();
+        square2 = new RegularSquare();
+    }
+
+    @Test
+    public void constructor_legal() {
+        assertEquals(6, storage_3x2_offset10.getVolume());
+        assertEquals(0, storage_3x2_offset10.size());
+    }
+    @Test (expected = IllegalArgumentException.class)
+    public void constructor_tooLarge() {
+        new DenseSquareStorage<Square>(new CoordinateSystem(
+                Coordinate.ORIGIN, new Coordinate(1 << 12, 1 << 12, 1)));
+    }
+
+    @Test
+    public void canCoverDensely_test() {
+        assertTrue(DenseSquareStorage.canCoverDensely(new CoordinateSystem(
+                Coordinate.ORIGIN, new Coordinate(1999, 1999, 0))));
+        assertFalse(DenseSquareStorage.canCoverDensely(new CoordinateSystem(
+                Coordinate.ORIGIN, new Coordinate(Long.MAX_VALUE - 1, 0, 0))));
+        assertFalse(DenseSquareStorage.canCoverDensely(null));
+    }
+
+    @Test
+    public void canCoverDensely_fullRangeLevel() {
+        CoordinateSystem fullRange = new CoordinateSystem(Coordinate.ORIGIN,
+                new Coordinate(Long.MAX_VALUE, Long.MAX_VALUE, 0));
+        assertFalse(DenseSquareStorage.canCoverDensely(fullRange));
+        assertFalse(DenseSquareStorage.canCoverDensely(new CoordinateSystem(
+                Coordinate.ORIGIN, new Coordinate(Long.MAX_VALUE, 0, 0))));
+    }
+    @Test (expected = IllegalArgumentException.class)
+    public void constructor_fullRangeLevel() {
+        new DenseSquareStorage<Square>(new CoordinateSystem(Coordinate.ORIGIN,
+                new Coordinate(Long.MAX_VALUE, Long.MAX_VALUE, 0)));
+    }
+
+    @Test
+    public void putGetRemove_legal() {
+        Coordinate coordinate = new Coordinate(12, 11, 10);
+        assertNull(storage_3x2_offset10.put(coordinate, square1));
+        assertEquals(square1, storage_3x2_offset10.get(coordinate));
+        assertEquals(1, storage_3x2_offset10.size());
+        assertEquals(square1, storage_3x2_offset10.put(coordinate, square2));
+        assertEquals(1, storage_3x2_offset10.size());
+        assertEquals(square2, storage_3x2_offset10.remove(coordinate));
+        assertNull(storage_3x2_offset10.get(coordinate));
+        assertEquals(0, storage_3x2_offset10.size());
+    }
+
+    @Test
+    public void get_outsideBox() {
+        assertNull(storage_3x2_offset10.get(new Coordinate(9, 10, 10)));
+        assertNull(storage_3x2_offset10.get(new Coordinate(13, 10, 10)));
+        assertNull(storage_3x2_offset10.get(new Coordinate(10, 10, 11)));
+        assertFalse(storage_3x2_offset10.canStoreAt(
+                                            new Coordinate(10, 12, 10)));
+        assertTrue(storage_3x2_offset10.canStoreAt(
+                                            new Coordinate(10, 11, 10)));
+    }
+
+    @Test
+    public void translate_test() {
+        Coordinate coordinate = new Coordinate(11, 10, 10);
+        Coordinate offset = new Coordinate(5, 0, -10);
+        storage_3x2_offset10.put(coordinate, square1);
+        storage_3x2_offset10.translate(offset);
+        assertNull(storage_3x2_offset10.get(coordinate));
+        assertEquals(square1, storage_3x2_offset10.get(coordinate.add(offset)));
+        assertTrue(storage_3x2_offset10.containsSquare(square1));
+    }
+
+    @Test
+    public void addMappingTo_test() {
+        storage_3x2_offset10.put(new Coordinate(10, 10, 10), square1);
+        storage_3x2_offset10.put(new Coordinate(12, 11, 10), square2);
+        Map<Coordinate, Square> map = new HashMap<Coordinate, Square>();
+        storage_3x2_offset10.addMappingTo(map);
+        assertEquals(2, map.size());
+        assertEquals(square1, map.get(new Coordinate(10, 10, 10)));
+        assertEquals(square2, map.get(new Coordinate(12, 11, 10)));
+    }
+
+    @Test
+    public void squareIterator_test() {
+        Iterator<Square> it = storage_3x2_offset10.squareIterator();
+        assertFalse(it.hasNext());
+        storage_3x2_offset10.put(new Coordinate(11, 11, 10), square1);
+        storage_3x2_offset10.put(new Coordinate(10, 10, 10), square2);
+        it = storage_3x2_offset10.squareIterator();
+        assertEquals(square2, it.next());
+        assertEquals(square1, it.next());
+        assertFalse(it.hasNext());
+    }
+
+    @Test
+    public void entryIterator_test() {
+        storage_3x2_offset10.put(new Coordinate(11, 11, 10), square1);
+        storage_3x2_offset10.put(new Coordinate(10, 10, 10), square2);
+        Iterator<Map.Entry<Coordinate, Square>> it =
+                                        storage_3x2_offset10.entryIterator();
+        Map.Entry<Coordinate, Square> e = it.next();
+        assertEquals(new Coordinate(10, 10, 10), e.getKey());
+        assertEquals(square2, e.getValue());
+        e = it.next();
+        assertEquals(new Coordinate(11, 11, 10), e.getKey());
+        assertEquals(square1, e.getValue());
+        assertFalse(it.hasNext());
+    }
+}
+
+// vim: ts=4:sw=4:expandtab:smarttab
@@ -7,8 +7,11 @@ import rpg.util.*;
 import be.kuleuven.cs.som.annotate.*;
 
 import java.util.Map;
+import java.util.List;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Set;
+import java.util.AbstractSet;
 import java.util.Iterator;
 
 /**
@@ -176,12 +179,14 @@ public abstract class Dungeon<S extends Square> {
      *
      * @note
      * Never expose this result to the user, use getCoordSyst() instead.
+     * Subclasses may use it to avoid cloning on lookups, but must never 
+     * mutate it.
      * @note
      * After making changes to the returned result, you still *have* to 
      * commit them with setCoordSystRaw().
      */
     @Basic @Raw
-    private CoordinateSystem getCoordSystRaw() {
+    protected CoordinateSystem getCoordSystRaw() {
         return coordSyst;
     }
 
@@ -255,14 +260,203 @@ public abstract class Dungeon<S extends Square> {
     abstract public S getSquareAt(Coordinate coordinate) 
             throws IllegalArgumentException, CoordinateNotOccupiedException;
 
+    /** 
+     * Returns the square at the given coordinate in this dungeon, or null 
+     * if there is no such square.
+     *
+     * @param coordinate 
+     * The coordinate of the square to return.
+     * @pre
+     *   | isEffectiveCoordinate(coordinate)
+     * @return
+     *   | if (isOccupied(coordinate))
+     *   |      then result == getSquareAt(coordinate)
+     *   |      else result == null
+     */
+    @Raw
+    abstract protected S getSquareAtRaw(Coordinate coordinate);
+
+    /** 
+     * Checks whether this dungeon may have squares within the given 
+     * region.
+     * This is a cheap, conservative test: a result of false guarantees 
+     * that there are no such squares.
+     * 
+     * @param region 
+     * The region to check.
+     * @pre
+     *   | region != null
+     * @return
+     *   | if (for some coordinate in region : isOccupied(coordinate))
+     *   |      then result == true
+     */
+    @Raw
+    protected boolean mayHaveSquaresIn(CoordinateSystem region) {
+        return getNbSquares() > 0 && getCoordSystRaw().overlaps(region);
+    }
+
     /** 
      * Returns whether or not this dungeon contains the given square.
      * 
      * @param square 
      * The square to check.
+     * @return
+     *   | result == (getLeafDungeonContaining(square) != null)
+     */
+    @Raw
+    public boolean hasSquare(Square square) {
+        return getLeafDungeonContaining(square) != null;
+    }
+
+    /** 
+     * Return the leaf dungeon of this dungeon that holds the given square.
+     * The squares of a dungeon complex are indexed by identity, so this 
+     * does not search the squares or the subdungeons of this dungeon.
+     * 
+     * @param square 
+     * The square whose leaf dungeon to return.
+     * @return
+     * The leaf dungeon in this dungeon that holds the given square, or 
+     * null if this dungeon does not hold the given square.
+     *   | if (result != null)
+     *   | then result.hasSquare(square)
+     *   |      &amp;&amp; (result == this
+     *   |              || result has this dungeon as an ancestor)
+     */
+    @Raw
+    abstract public LeafDungeon<? extends S> getLeafDungeonContaining(
+                                                            Square square);
+
+    /** 
+     * Return the coordinate of the given square in this dungeon.
+     * 
+     * @param square 
+     * The square whose coordinate to return.
+     * @return
+     * The coordinate of the given square, or null if this dungeon does not 
+     * hold the given square.
+     *   | if (hasSquare(square))
+     *   | then getSquareAt(result) == square
+     *   | else result == null
+     */
+    @Raw
+    public Coordinate getCoordinateOf(Square square) {
+        LeafDungeon<? extends S> leafDungeon = getLeafDungeonContaining(square);
+        if (leafDungeon == null)
+            return null;
+        return leafDungeon.getCoordinateOf(square);
+    }
+
+    /**
+     * Return the position of the given square in the dungeon complex of 
+     * this dungeon, or null if no leaf dungeon of that complex holds it.
+     *
+     * @param square
+     * The square whose position to return.
+     */
+    @Raw
+    SquarePosition getPositionOf(Square square) {
+        if (square == null)
+            return null;
+        return getRootDungeon().positionsOfSquares.get(square);
+    }
+
+    /**
+     * Register the given square of the given leaf dungeon in the reverse 
+     * index of the root dungeon of this dungeon.
+     *
+     * @param leafDungeon
+     * The leaf dungeon that holds the given square.
+     * @param square
+     * The square to register.
+     * @param relative
+     * The coordinate of the given square, relative to the lower bound of 
+     * the coordinate system of the given leaf dungeon.
+     */
+    @Raw
+    void indexSquareOf(LeafDungeon<?> leafDungeon, Square square,
+                                                    Coordinate relative) {
+        getRootDungeon().positionsOfSquares.put(square,
+                                new SquarePosition(leafDungeon, relative));
+    }
+
+    /**
+     * Remove the given square from the reverse index of the root dungeon 
+     * of this dungeon.
+     *
+     * @param square
+     * The square to remove.
      */
     @Raw
-    abstract public boolean hasSquare(Square square);
+    void unindexSquare(Square square) {
+        getRootDungeon().positionsOfSquares.remove(square);
+    }
+
+    /**
+     * Move the reverse index of the given subdungeon, which has just been 
+     * attached to the dungeon complex of this dungeon, into the index of 
+     * the root dungeon.
+     * The smaller of both indices is copied into the larger one, which the 
+     * root dungeon keeps from then on. Attaching a dungeon thus costs time 
+     * in the number of squares of the smaller side only, and the squares 
+     * of the attached dungeon are not visited at all if it is the larger 
+     * side.
+     *
+     * @param subDungeon
+     * The subdungeon whose index to move.
+     * @pre
+     *   | subDungeon.getRootDungeon() == getRootDungeon()
+     */
+    @Raw
+    void adoptSquareIndexOf(Dungeon<?> subDungeon) {
+        Dungeon<?> root = getRootDungeon();
+        assert subDungeon.getRootDungeon() == root && subDungeon != root;
+        Map<Square, SquarePosition> smaller = subDungeon.positionsOfSquares;
+        if (smaller.size() > root.positionsOfSquares.size()) {
+            subDungeon.positionsOfSquares = root.positionsOfSquares;
+            root.positionsOfSquares = smaller;
+            smaller = subDungeon.positionsOfSquares;
+        }
+        root.positionsOfSquares.putAll(smaller);
+        smaller.clear();
+    }
+
+    /**
+     * Variable referencing a map of the squares in the dungeon complex of 
+     * this dungeon to their positions. Squares are compared by identity.
+     * Only the root dungeon of a dungeon complex keeps this index, it is 
+     * empty for all other dungeons.
+     */
+    private Map<Square, SquarePosition> positionsOfSquares =
+                                new IdentityHashMap<Square, SquarePosition>();
+
+    /**
+     * A class of positions of squares in a dungeon complex.
+     * The coordinate of a position is relative to the lower bound of the 
+     * coordinate system of its leaf dungeon, so translating that leaf 
+     * dungeon leaves the position valid.
+     */
+    static final class SquarePosition {
+
+        /**
+         * Create a new position in the given leaf dungeon, at the given 
+         * relative coordinate.
+         */
+        SquarePosition(LeafDungeon<?> leafDungeon, Coordinate relative) {
+            this.leafDungeon = leafDungeon;
+            this.relative = relative;
+        }
+
+        /**
+         * Variable referencing the leaf dungeon of this position.
+         */
+        final LeafDungeon<?> leafDungeon;
+
+        /**
+         * Variable referencing the relative coordinate of this position.
+         */
+        final Coordinate relative;
+    }
 
     /** 
      * Check if the given square at the given coordinate borders properly 
@@ -348,6 +542,117 @@ public abstract class Dungeon<S extends Square> {
         }
     }
 
+    /** 
+     * Change the temperatures and humidities of the squares at the given 
+     * coordinates, equilibrating each affected area only once.
+     *
+     * @param temperatures
+     * A map from coordinates to the new temperatures of the squares at 
+     * those coordinates.
+     * @param humidities
+     * A map from coordinates to the new humidities of the squares at those 
+     * coordinates.
+     * @effect
+     *   | EquilibrationBatch.begin()
+     *   | for each entry in temperatures.entrySet() :
+     *   |      getSquareAt(entry.getKey()).setTemperature(entry.getValue())
+     *   | for each entry in humidities.entrySet() :
+     *   |      getSquareAt(entry.getKey()).setHumidity(entry.getValue())
+     *   | EquilibrationBatch.end()
+     * @throws IllegalArgumentException
+     * One of the given maps is not effective, one of the given 
+     * coordinates is not occupied in this dungeon, or one of the squares 
+     * can not have its new temperature or humidity. Nothing is changed.
+     * @throws EquilibratingSquaresViolatesLimitsException
+     * Equilibrating one of the affected areas violates the limits of one 
+     * of its squares. All temperatures and humidities are rolled back, as 
+     * described by EquilibrationBatch.end().
+     */
+    public void changeClimate(Map<Coordinate, Temperature> temperatures,
+                                    Map<Coordinate, Integer> humidities)
+                        throws IllegalArgumentException,
+                                EquilibratingSquaresViolatesLimitsException {
+        if (temperatures == null || humidities == null)
+            throw new IllegalArgumentException();
+        for (Map.Entry<Coordinate, Temperature> entry :
+                                                temperatures.entrySet()) {
+            S square = getClimateSquareAt(entry.getKey());
+            if (!square.canHaveAsTemperature(entry.getValue()))
+                throw new IllegalArgumentException();
+        }
+        for (Map.Entry<Coordinate, Integer> entry : humidities.entrySet()) {
+            S square = getClimateSquareAt(entry.getKey());
+            if (entry.getValue() == null
+                            || !square.canHaveAsHumidity(entry.getValue()))
+                throw new IllegalArgumentException();
+        }
+
+        EquilibrationBatch.begin();
+        try {
+            for (Map.Entry<Coordinate, Temperature> entry :
+                                                temperatures.entrySet())
+                getSquareAtRaw(entry.getKey()).setTemperature(
+                                                        entry.getValue());
+            for (Map.Entry<Coordinate, Integer> entry :
+                                                humidities.entrySet())
+                getSquareAtRaw(entry.getKey()).setHumidity(entry.getValue());
+        } finally {
+            EquilibrationBatch.end();
+        }
+    }
+
+    /** 
+     * Equilibrate all areas that contain a square of this dungeon, each of 
+     * them only once.
+     *
+     * @effect
+     *   | new AreaPartition(getSquares()).equilibrate()
+     * @throws IllegalStateException
+     *   | EquilibrationBatch.isOpen()
+     * @throws EquilibratingSquaresViolatesLimitsException
+     * Equilibrating one of the areas violates the limits of one of its 
+     * squares. All other areas are equilibrated regardless.
+     */
+    public void equilibrateAll() throws IllegalStateException,
+                                EquilibratingSquaresViolatesLimitsException {
+        new AreaPartition(getSquares()).equilibrate();
+    }
+
+    /** 
+     * Return a new diffusion of the climates of the areas that contain a 
+     * square of this dungeon, with the given rate.
+     *
+     * @param rate
+     * The rate of the new diffusion.
+     * @return
+     *   | result == new ClimateDiffusion(getSquares(), rate)
+     * @throws IllegalArgumentException
+     *   | !ClimateDiffusion.isValidRate(rate)
+     */
+    public ClimateDiffusion newClimateDiffusion(double rate)
+                                            throws IllegalArgumentException {
+        return new ClimateDiffusion(getSquares(), rate);
+    }
+
+    /** 
+     * Return the square at the given coordinate whose climate is to be 
+     * changed.
+     *
+     * @param coordinate 
+     * The coordinate of the square to return.
+     * @throws IllegalArgumentException
+     *   | !isEffectiveCoordinate(coordinate)  ||  !isOccupied(coordinate)
+     */
+    private S getClimateSquareAt(Coordinate coordinate)
+                                            throws IllegalArgumentException {
+        if (!isEffectiveCoordinate(coordinate))
+            throw new IllegalArgumentException();
+        S square = getSquareAtRaw(coordinate);
+        if (square == null)
+            throw new IllegalArgumentException();
+        return square;
+    }
+
     /** 
      * Deletes the square at the given coordinate and terminates it.
      *
@@ -389,7 +694,25 @@ public abstract class Dungeon<S extends Square> {
      *   |  result == (getNbIntrinsicallySlipperySquares() * 5 &lt;= getNbSquares())
      */
     public boolean squaresSatisfyConstraints() {
-        return (getNbIntrinsicallySlipperySquares() * 5 <= getNbSquares());
+        return satisfiesSquareConstraints(getNbSquares(),
+                                        getNbIntrinsicallySlipperySquares());
+    }
+
+    /** 
+     * Checks whether a dungeon with the given number of squares, of which 
+     * the given number have a slippery floor, satisfies the constraints on 
+     * squares of a dungeon.
+     * 
+     * @param nbSquares
+     * The number of squares to check.
+     * @param nbSlipperySquares
+     * The number of squares with a slippery floor to check.
+     * @return
+     *   | result == (nbSlipperySquares * 5 &lt;= nbSquares)
+     */
+    public static boolean satisfiesSquareConstraints(int nbSquares,
+                                                    int nbSlipperySquares) {
+        return nbSlipperySquares * 5 <= nbSquares;
     }
 
     /** 
@@ -400,8 +723,10 @@ public abstract class Dungeon<S extends Square> {
      *   |      then result == null
      *   |      else result == {square in getSquares() | true : true}.size()
      */
-    @Raw
-    abstract public int getNbSquares();
+    @Basic @Raw
+    public int getNbSquares() {
+        return nbSquares;
+    }
 
     /** 
      * Return the number of squares in this dungeon that have a slippery 
@@ -413,14 +738,53 @@ public abstract class Dungeon<S extends Square> {
      *   | ({ square in getSquares() | true :
      *   |                  square.hasSlipperyFloor() }.size() == result)
      */
+    @Basic @Raw
     public int getNbIntrinsicallySlipperySquares() {
-        int nbSlipperySquares = 0;
-        for (S square : getSquares())
-            if (square.hasSlipperyFloor())
-                nbSlipperySquares++;
         return nbSlipperySquares;
     }
 
+    /** 
+     * Adjust the number of squares and the number of squares with a 
+     * slippery floor of this dungeon and of all its ancestors.
+     * 
+     * @param nbSquares 
+     * The number of squares that were added (or removed, if negative).
+     * @param nbSlipperySquares 
+     * The number of squares with a slippery floor that were added (or 
+     * removed, if negative).
+     * @post
+     *   | new.getNbSquares() == getNbSquares() + nbSquares
+     * @post
+     *   | new.getNbIntrinsicallySlipperySquares() ==
+     *   |          getNbIntrinsicallySlipperySquares() + nbSlipperySquares
+     * @effect
+     *   | if (hasParentDungeon())
+     *   |      then getParentDungeon().adjustSquareCounts(nbSquares,
+     *   |                                          nbSlipperySquares)
+     */
+    @Raw @Model
+    protected void adjustSquareCounts(int nbSquares, int nbSlipperySquares) {
+        this.nbSquares += nbSquares;
+        this.nbSlipperySquares += nbSlipperySquares;
+        assert this.nbSquares >= 0;
+        assert 0 <= this.nbSlipperySquares
+                        && this.nbSlipperySquares <= this.nbSquares;
+        if (hasParentDungeon())
+            getParentDungeon().adjustSquareCounts(nbSquares,
+                                                  nbSlipperySquares);
+    }
+
+    /**
+     * Variable registering the number of squares in this dungeon.
+     */
+    private int nbSquares = 0;
+
+    /**
+     * Variable registering the number of squares with a slippery floor in 
+     * this dungeon.
+     */
+    private int nbSlipperySquares = 0;
+
     /**
      * Return a mapping of coordinates to squares of this dungeon.
      */
@@ -449,20 +813,61 @@ public abstract class Dungeon<S extends Square> {
     abstract protected void addSquareMappingTo(Map<Coordinate, ? super S> map)
                                                 throws IllegalStateException;
 
+    /**
+     * Return an iterator over the squares and their positions in this 
+     * dungeon.
+     * The iterator walks the storage of the leaf dungeons directly, 
+     * without copying the mapping of coordinates to squares. It does not 
+     * support removal and is invalidated by adding or removing squares.
+     *
+     * @return
+     * An iterator over the elements of getSquareMapping().entrySet().
+     * @throws IllegalStateException
+     * This dungeon is not in a valid state for this operation.
+     */
+    @Raw
+    abstract protected Iterator<Map.Entry<Coordinate, S>>
+                getPositionAndSquareIterator() throws IllegalStateException;
+
     /**
      * Return a set of the squares and their positions in this dungeon.
+     * The resulting set is a read-only view that reflects the current 
+     * squares of this dungeon. Adding or removing squares while iterating 
+     * over it invalidates the iteration, so callers that want to change 
+     * the squares of this dungeon have to copy the view first.
      *
      * @return
-     *   | result == getSquareMapping().entrySet()
+     *   | result.equals(getSquareMapping().entrySet())
      * @throws IllegalStateException
+     * Iterating over the resulting set throws this exception if
      *   | getSquareMapping() == null
      */
     @Raw
     public Set<Map.Entry<Coordinate,S>> getPositionsAndSquares() 
                                                 throws IllegalStateException {
-        if (getSquareMapping() == null)
-            throw new IllegalStateException();
-        return getSquareMapping().entrySet();
+        return new AbstractSet<Map.Entry<Coordinate, S>>() {
+            public Iterator<Map.Entry<Coordinate, S>> iterator() {
+                return getPositionAndSquareIterator();
+            }
+
+            public int size() {
+                return getNbSquares();
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                if (!(o instanceof Map.Entry<?, ?>))
+                    return false;
+                Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+                if (!(entry.getKey() instanceof Coordinate))
+                    return false;
+                Coordinate coordinate = (Coordinate) entry.getKey();
+                if (!isEffectiveCoordinate(coordinate))
+                    return false;
+                S square = getSquareAtRaw(coordinate);
+                return square != null && square.equals(entry.getValue());
+            }
+        };
     }
 
     /**
@@ -493,6 +898,59 @@ public abstract class Dungeon<S extends Square> {
         return getFilteredSquares(acceptAllSquaresFilter);
     }
 
+    /**
+     * Return the reachability index of the squares in this dungeon.
+     * The index is created on first use and keeps itself up to date.
+     *
+     * @return
+     * An index over getSquares().
+     */
+    public ReachabilityIndex getReachabilityIndex() {
+        if (reachabilityIndex == null)
+            reachabilityIndex = new ReachabilityIndex(getSquares());
+        return reachabilityIndex;
+    }
+
+    /**
+     * Variable referencing the reachability index of this dungeon, or null 
+     * if it has not been created yet.
+     */
+    private ReachabilityIndex reachabilityIndex = null;
+
+    /**
+     * Return a shortest path between the given squares of this dungeon.
+     *
+     * @param square
+     * The square to start from.
+     * @param destination
+     * The square to end at.
+     * @return
+     * Null if the given square cannot navigate to the given destination, 
+     * or a shortest path between them otherwise.
+     *   | if (!getReachabilityIndex().canNavigate(square, destination))
+     *   |      then result == null
+     *   |      else result == new PathFinder().findPath(square, destination)
+     * @throws IllegalArgumentException
+     *   | !hasSquare(square)  ||  !hasSquare(destination)
+     */
+    public List<Square> findPath(Square square, Square destination)
+                                            throws IllegalArgumentException {
+        if (!hasSquare(square) || !hasSquare(destination))
+            throw new IllegalArgumentException();
+        if (!getReachabilityIndex().canNavigate(square, destination))
+            return null;
+        if (pathFinder == null)
+            pathFinder = new PathFinder();
+        return pathFinder.findPath(square, destination);
+    }
+
+    /**
+     * Variable referencing the path finder of this dungeon, or null if it 
+     * has not been created yet. Its search state is reused from one path 
+     * to the next.
+     */
+    private PathFinder pathFinder = null;
+
     /** 
      * Return an iterable of all rocks in this dungeon that have a 
      * temperature greater than 200C.
@@ -7,9 +7,13 @@ import rpg.util.*;
 import be.kuleuven.cs.som.annotate.*;
 
 import java.util.Set;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Collection;
+import java.util.ArrayList;
 import java.util.Map;
-import java.util.HashMap;
 import java.util.EnumMap;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
@@ -37,6 +41,29 @@ public abstract class LeafDungeon<S extends Square> extends Dungeon<S> {
     protected LeafDungeon(CoordinateSystem coordinateSystem)
                                         throws IllegalArgumentException {
         super(coordinateSystem);
+        if (prefersDenseSquareStorage()
+                && DenseSquareStorage.canCoverDensely(getCoordSystRaw()))
+            squares = new DenseSquareStorage<S>(getCoordSystRaw());
+        else
+            squares = new SparseSquareStorage<S>(
+                                    getCoordSystRaw().getLowerBound());
+    }
+
+    /** 
+     * Checks whether this leaf dungeon prefers to store its squares 
+     * densely, in a slot for every coordinate of its coordinate system.
+     *
+     * Leaf dungeons whose coordinate system is expected to be mostly 
+     * filled with squares should return true. The dense storage is only 
+     * used if the coordinate system is small enough for it.
+     *
+     * @note
+     * This gets called during construction, so it should not rely on the 
+     * state of this leaf dungeon.
+     */
+    @Raw
+    protected boolean prefersDenseSquareStorage() {
+        return false;
     }
 
     /** 
@@ -44,7 +71,51 @@ public abstract class LeafDungeon<S extends Square> extends Dungeon<S> {
      */
     @Basic @Raw @Override
     public boolean hasSquare(Square square) {
-        return squares.containsValue(square);
+        SquarePosition position = getPositionOf(square);
+        return position != null && position.leafDungeon == this;
+    }
+
+    /** 
+     * Return the leaf dungeon of this leaf dungeon that holds the given 
+     * square.
+     *
+     * @return
+     *   | if (hasSquare(square))
+     *   |      then result == this
+     *   |      else result == null
+     */
+    @Raw @Override
+    public LeafDungeon<? extends S> getLeafDungeonContaining(Square square) {
+        return hasSquare(square) ? this : null;
+    }
+
+    /** 
+     * Return the coordinate of the given square in this leaf dungeon.
+     */
+    @Raw @Override
+    public Coordinate getCoordinateOf(Square square) {
+        SquarePosition position = getPositionOf(square);
+        if (position == null || position.leafDungeon != this)
+            return null;
+        return position.relative.add(getCoordSystRaw().getLowerBound());
+    }
+
+    /**
+     * Register the given square at the given coordinate in the reverse 
+     * index of the root dungeon of this leaf dungeon.
+     * The coordinate is registered relative to the lower bound of the 
+     * coordinate system of this leaf dungeon, so translating this leaf 
+     * dungeon leaves the index untouched.
+     *
+     * @param coordinate
+     * The coordinate of the given square.
+     * @param square
+     * The square to register.
+     */
+    @Raw
+    private void indexSquare(Coordinate coordinate, S square) {
+        indexSquareOf(this, square,
+                        coordinate.sub(getCoordSystRaw().getLowerBound()));
     }
 
     /** 
@@ -67,12 +138,9 @@ public abstract class LeafDungeon<S extends Square> extends Dungeon<S> {
     /** 
      * Returns the square at the given coordinate in this dungeon, or null 
      * if there is no such square.
-     *
-     * @pre
-     *   | isEffectiveCoordinate(coordinate)
      */
-    @Basic @Raw
-    private S getSquareAtRaw(Coordinate coordinate) {
+    @Basic @Raw @Override
+    protected S getSquareAtRaw(Coordinate coordinate) {
         assert isEffectiveCoordinate(coordinate);
 
         return squares.get(coordinate);
@@ -111,11 +179,16 @@ public abstract class LeafDungeon<S extends Square> extends Dungeon<S> {
             throw new CoordinateOccupiedException(coordinate, this);
 
         squares.put(coordinate, square);
+        int nbSlippery = square.hasSlipperyFloor() ? 1 : 0;
+        adjustSquareCounts(1, nbSlippery);
 
         if (!squaresSatisfyConstraints()){
             squares.remove(coordinate);
+            adjustSquareCounts(-1, -nbSlippery);
             throw new DungeonConstraintsException(square, this);
         }
+        square.addBorderListener(floorListener);
+        indexSquare(coordinate, square);
 
         for (Map.Entry<Direction, ? super S> neighbourEntry :
                         getRootDungeon().getDirectionsAndNeighboursOf(
@@ -126,6 +199,125 @@ public abstract class LeafDungeon<S extends Square> extends Dungeon<S> {
         }
     }
 
+    /** 
+     * Add all given squares to this leaf dungeon at their given 
+     * coordinates.
+     * All squares are stored first and then validated against the 
+     * dungeon that contains all of them, so that a square is also checked 
+     * against the other given squares it borders on. If that fails, all 
+     * given squares are removed again. Otherwise, their borders get merged 
+     * in a single sweep, in which each pair of neighbouring squares gets 
+     * merged once, and each area that results from this gets equilibrated 
+     * only once, at the end.
+     *
+     * @param squares 
+     * A mapping of coordinates to the squares to add at them.
+     * @effect
+     * The squares that border the given coordinates in this dungeon get 
+     * merged with the given squares in the appropriate directions. Two 
+     * given squares that border on each other get merged once, when the 
+     * later one of them in the iteration order of the given mapping is 
+     * visited.
+     * @post
+     *   | for each entry in squares.entrySet() :
+     *   |      new.getSquareAt(entry.getKey()).equals(entry.getValue())
+     * @throws IllegalArgumentException
+     *   | squares == null
+     *   |   || (for some entry in squares.entrySet() :
+     *   |          !canPossiblyHaveAsSquareAt(entry.getKey(),
+     *   |                                     entry.getValue()))
+     * @throws IllegalArgumentException
+     * The same square is given at more than one coordinate.
+     * @throws IllegalArgumentException
+     * Once all given squares are added, this dungeon cannot have one of 
+     * them at its coordinate.
+     *   | for some entry in squares.entrySet() :
+     *   |      !(new.canHaveAsSquareAt(entry.getKey(), entry.getValue()))
+     * @throws CoordinateOccupiedException
+     *   | for some coordinate in squares.keySet() : isOccupied(coordinate)
+     * @throws DungeonConstraintsException
+     * Adding all given squares would violate the constraints as specified 
+     * by squaresSatisfyConstraints(). Only the state after adding all 
+     * squares is checked, not every intermediate state. The offending 
+     * square of the exception is the given square from which on, adding 
+     * the given squares one by one in the iteration order of the given 
+     * mapping, the constraints are violated up to the end.
+     */
+    public void addSquares(Map<Coordinate, ? extends S> squares) 
+                                        throws IllegalArgumentException,
+                                                CoordinateOccupiedException,
+                                                DungeonConstraintsException {
+        if (squares == null)
+            throw new IllegalArgumentException();
+        Set<S> distinct = Collections.newSetFromMap(
+                                        new IdentityHashMap<S, Boolean>());
+        int nbSquares = getNbSquares();
+        int nbSlippery = 0;
+        S culprit = null;
+        for (Map.Entry<Coordinate, ? extends S> entry : squares.entrySet()) {
+            if (!canPossiblyHaveAsSquareAt(entry.getKey(), entry.getValue()))
+                throw new IllegalArgumentException();
+            if (isOccupied(entry.getKey()))
+                throw new CoordinateOccupiedException(entry.getKey(), this);
+            if (!distinct.add(entry.getValue()))
+                throw new IllegalArgumentException("Duplicate squares");
+            nbSquares++;
+            if (entry.getValue().hasSlipperyFloor())
+                nbSlippery++;
+            if (satisfiesSquareConstraints(nbSquares,
+                        getNbIntrinsicallySlipperySquares() + nbSlippery))
+                culprit = null;
+            else if (culprit == null)
+                culprit = entry.getValue();
+        }
+
+        for (Map.Entry<Coordinate, ? extends S> entry : squares.entrySet())
+            this.squares.put(entry.getKey(), entry.getValue());
+        adjustSquareCounts(squares.size(), nbSlippery);
+        Coordinate illegal = null;
+        for (Map.Entry<Coordinate, ? extends S> entry : squares.entrySet())
+            if (!canHaveAsSquareAt(entry.getKey(), entry.getValue())) {
+                illegal = entry.getKey();
+                break;
+            }
+        if (illegal != null || !squaresSatisfyConstraints()) {
+            for (Coordinate coordinate : squares.keySet())
+                this.squares.remove(coordinate);
+            adjustSquareCounts(-squares.size(), -nbSlippery);
+            if (illegal != null)
+                throw new IllegalArgumentException(
+                                    "Illegal square at " + illegal);
+            assert culprit != null;
+            throw new DungeonConstraintsException(culprit, this);
+        }
+        for (Map.Entry<Coordinate, ? extends S> entry : squares.entrySet()) {
+            entry.getValue().addBorderListener(floorListener);
+            indexSquare(entry.getKey(), entry.getValue());
+        }
+
+        //the given squares that have not been visited yet merge with the 
+        //current square themselves, once they are visited
+        Set<S> unvisited = distinct;
+        Dungeon<? super S> root = getRootDungeon();
+        EquilibrationBatch.begin();
+        try {
+            for (Map.Entry<Coordinate, ? extends S> entry :
+                                                    squares.entrySet()) {
+                S square = entry.getValue();
+                unvisited.remove(square);
+                for (Map.Entry<Direction, ? super S> neighbourEntry :
+                            root.getDirectionsAndNeighboursOf(
+                                            entry.getKey()).entrySet()) {
+                    Square neighbour = (Square) neighbourEntry.getValue();
+                    if (!unvisited.contains(neighbour))
+                        square.mergeWith(neighbour, neighbourEntry.getKey());
+                }
+            }
+        } finally {
+            EquilibrationBatch.end();
+        }
+    }
+
     /** 
      * Checks whether this leaf dungeon can have the given square at the 
      * given coordinate.
@@ -208,7 +400,7 @@ public abstract class LeafDungeon<S extends Square> extends Dungeon<S> {
      */
     @Override
     public boolean containsCoordinate(Coordinate coordinate) {
-        return getCoordSyst().contains(coordinate);
+        return getCoordSystRaw().contains(coordinate);
     }
 
     /** 
@@ -219,20 +411,94 @@ public abstract class LeafDungeon<S extends Square> extends Dungeon<S> {
                                     throws IllegalArgumentException,
                                             CoordinateNotOccupiedException {
         S square = getSquareAt(coordinate);
+        int nbSlippery = square.hasSlipperyFloor() ? 1 : 0;
+        square.removeBorderListener(floorListener);
         square.terminate(); //detatches all neighbouring squares too
         squares.remove(coordinate);
+        unindexSquare(square);
+        adjustSquareCounts(-1, -nbSlippery);
     }
 
     /** 
-     * Return the number of squares in this dungeon.
+     * Delete the squares at all given coordinates and terminate them.
+     * All borders of the squares are detatched first, after which each 
+     * area of the surviving squares that bordered on one of them gets 
+     * equilibrated only once, at the end.
+     *
+     * @param coordinates 
+     * The coordinates of the squares to delete.
+     * @effect
+     *   | for each coordinate in coordinates :
+     *   |      deleteSquareAt(coordinate)
+     * @effect
+     * The area of each square that is not deleted, but that bordered on 
+     * one of the deleted squares, gets equilibrated.
+     * @throws IllegalArgumentException
+     *   | coordinates == null
+     *   |   || (for some coordinate in coordinates :
+     *   |          !isEffectiveCoordinate(coordinate))
+     * @throws IllegalArgumentException
+     * The same coordinate is given more than once.
+     * @throws CoordinateNotOccupiedException
+     *   | for some coordinate in coordinates : !isOccupied(coordinate)
+     * @throws EquilibratingSquaresViolatesLimitsException
+     * Equilibrating one of the surviving areas violates the limits of one 
+     * of its squares. The squares are deleted regardless, but the climates 
+     * of the surviving areas are rolled back.
      */
-    @Basic @Raw @Override
-    public int getNbSquares() {
-        if (squares == null)
-            return 0;
-        return squares.size();
+    public void deleteSquaresAt(Collection<Coordinate> coordinates) 
+                        throws IllegalArgumentException,
+                                CoordinateNotOccupiedException,
+                                EquilibratingSquaresViolatesLimitsException {
+        if (coordinates == null)
+            throw new IllegalArgumentException();
+        List<S> doomed = new ArrayList<S>(coordinates.size());
+        int nbSlippery = 0;
+        for (Coordinate coordinate : coordinates) {
+            S square = getSquareAt(coordinate);
+            doomed.add(square);
+            if (square.hasSlipperyFloor())
+                nbSlippery++;
+        }
+        Set<S> distinct = Collections.newSetFromMap(
+                                        new IdentityHashMap<S, Boolean>());
+        distinct.addAll(doomed);
+        if (distinct.size() != doomed.size())
+            throw new IllegalArgumentException("Duplicate coordinates");
+
+        EquilibrationBatch.begin();
+        try {
+            int i = 0;
+            for (Coordinate coordinate : coordinates) {
+                S square = doomed.get(i++);
+                square.removeBorderListener(floorListener);
+                square.terminate();
+                squares.remove(coordinate);
+                unindexSquare(square);
+            }
+            adjustSquareCounts(-doomed.size(), -nbSlippery);
+        } finally {
+            EquilibrationBatch.end();
+        }
     }
 
+    /**
+     * Variable referencing the listener that keeps the number of squares 
+     * with a slippery floor of this leaf dungeon up to date when the floor 
+     * of one of its squares gets replaced.
+     */
+    private final BorderListener floorListener = new BorderListener() {
+        public void borderChanged(Square square, Direction direction,
+                                  Border oldBorder, Border newBorder) {
+            if (direction != Direction.DOWN)
+                return;
+            boolean wasSlippery = oldBorder != null && oldBorder.isSlippery();
+            boolean isSlippery = newBorder != null && newBorder.isSlippery();
+            if (wasSlippery != isSlippery)
+                adjustSquareCounts(0, isSlippery ? 1 : -1);
+        }
+    };
+
     /**
      * Add the mapping of coordinates to squares of this leaf dungeon to 
      * the given map.
@@ -242,7 +508,19 @@ public abstract class LeafDungeon<S extends Square> extends Dungeon<S> {
                                             throws IllegalStateException {
         if (squares == null)
             throw new IllegalStateException();
-        map.putAll(squares);
+        squares.addMappingTo(map);
+    }
+
+    /**
+     * Return an iterator over the squares and their positions in this leaf 
+     * dungeon.
+     */
+    @Raw @Override
+    protected Iterator<Map.Entry<Coordinate, S>>
+                getPositionAndSquareIterator() throws IllegalStateException {
+        if (squares == null)
+            throw new IllegalStateException();
+        return squares.entryIterator();
     }
 
     /** 
@@ -254,13 +532,13 @@ public abstract class LeafDungeon<S extends Square> extends Dungeon<S> {
                                         throws IllegalArgumentException {
         if (!isEffectiveCoordinate(coordinate))
             throw new IllegalArgumentException();
-        return squares.containsKey(coordinate);
+        return squares.get(coordinate) != null;
     }
 
     /**
-     * Variable referencing a map of the squares of this dungeon
+     * Variable referencing the storage of the squares of this dungeon.
      */
-    private Map<Coordinate, S> squares = new HashMap<Coordinate, S>();
+    private SquareStorage<S> squares;
 
     /**
      * Return an iterator of the squares in this leaf dungeon that satisfy 
@@ -296,7 +574,7 @@ public abstract class LeafDungeon<S extends Square> extends Dungeon<S> {
 				throw new UnsupportedOperationException();
 			}
 
-			private Iterator<S> squareIterator = squares.values().iterator();
+			private Iterator<S> squareIterator = squares.squareIterator();
             private S next = getNextSquare();
 		};
     }
@@ -314,13 +592,11 @@ public abstract class LeafDungeon<S extends Square> extends Dungeon<S> {
         EnumMap<Direction, S> result =
                     new EnumMap<Direction, S>(Direction.class);
 
-        for (Map.Entry<Direction, Coordinate> neighbourEntry :
-                        getCoordSyst().neighboursOf(coordinate).entrySet()) {
-            Coordinate neighbourCoordinate = neighbourEntry.getValue();
-            Direction neighbourDirection = neighbourEntry.getKey();
-            S neighbour = getSquareAtRaw(neighbourCoordinate);
+        //the storage only holds coordinates of our coordinate system
+        for (Direction direction : Direction.values()) {
+            S neighbour = getSquareAtRaw(direction.moveCoordinate(coordinate));
             if (neighbour != null)
-                result.put(neighbourDirection, neighbour);
+                result.put(direction, neighbour);
         }
 
         return result;
@@ -341,30 +617,107 @@ public abstract class LeafDungeon<S extends Square> extends Dungeon<S> {
 
     /** 
      * Translate this leaf dungeon over the given offset.
+     * The storage of the squares of this leaf dungeon is relative to its 
+     * coordinate system, so translating it takes constant time. If the 
+     * constraints on the coordinates of the squares of this leaf dungeon 
+     * are invariant under translation, only the squares that end up on the 
+     * diagonal are checked, instead of all squares.
      */
     @Override
     protected void translate(Coordinate offset)
                                     throws IllegalArgumentException,
                                             CoordinateConstraintsException {
         translateCoordSyst(offset);
+        S offending = hasTranslationInvariantSquareConstraints()
+                        ? getSquareMovedOntoDiagonalBy(offset)
+                        : getSquareInvalidatedBy(offset);
+        if (offending != null) {
+            translateCoordSyst(offset.mirror());
+            throw new CoordinateConstraintsException(offending, this);
+        }
+        squares.translate(offset);
+    }
+
+    /**
+     * Checks whether the constraints on the coordinates of the squares of 
+     * this leaf dungeon, apart from the rule that a square can not lie on 
+     * the diagonal, only depend on the position of the squares relative to 
+     * the coordinate system of this leaf dungeon.
+     *
+     * @return
+     * True iff translating this leaf dungeon along with its squares can 
+     * only invalidate squares that end up on the diagonal.
+     */
+    @Raw
+    protected boolean hasTranslationInvariantSquareConstraints() {
+        return false;
+    }
+
+    /**
+     * Return a square of this leaf dungeon that will no longer be valid at 
+     * its coordinate after translating its squares over the given offset.
+     *
+     * @param offset
+     * The offset over which the squares are going to be translated.
+     * @pre
+     * The coordinate system of this leaf dungeon has already been 
+     * translated over the given offset, but its squares have not.
+     * @return
+     * A square whose translated coordinate is not valid, or null if there 
+     * is no such square.
+     *   | if (result == null)
+     *   | then (for each e in getPositionsAndSquares() :
+     *   |          canHaveAsSquareAt(e.getKey().add(offset), e.getValue()))
+     */
+    @Raw
+    private S getSquareInvalidatedBy(Coordinate offset) {
         for (Map.Entry<Coordinate, S> e : getPositionsAndSquares())
-            if (!canHaveAsSquareAt(e.getKey().add(offset), e.getValue())){
-                translateCoordSyst(offset.mirror());
-                throw new CoordinateConstraintsException(e.getValue(), this);
-            }
-        Map<Coordinate, S> translatedSquares = new HashMap<Coordinate, S>();
-        for (Map.Entry<Coordinate, S> e : getPositionsAndSquares()) {
-            translatedSquares.put(e.getKey().add(offset), e.getValue());
+            if (!canHaveAsSquareAt(e.getKey().add(offset), e.getValue()))
+                return e.getValue();
+        return null;
+    }
+
+    /**
+     * Return a square of this leaf dungeon that will end up on the 
+     * diagonal after translating its squares over the given offset.
+     * Only the coordinates of the diagonal that lie within the coordinate 
+     * system of this leaf dungeon are looked up, so this takes time in 
+     * the order of the smallest dimension of this leaf dungeon.
+     *
+     * @param offset
+     * The offset over which the squares are going to be translated.
+     * @pre
+     * The coordinate system of this leaf dungeon has already been 
+     * translated over the given offset, but its squares have not.
+     * @return
+     * A square whose translated coordinate has equal components, or null 
+     * if there is no such square.
+     */
+    @Raw
+    private S getSquareMovedOntoDiagonalBy(Coordinate offset) {
+        Coordinate lo = getCoordSystRaw().getLowerBound();
+        Coordinate hi = getCoordSystRaw().getUpperBound();
+        long from = Math.max(lo.x, Math.max(lo.y, lo.z));
+        long to = Math.min(hi.x, Math.min(hi.y, hi.z));
+        for (long t = from; t <= to; t++) {
+            S square = squares.get(new Coordinate(
+                        t - offset.x, t - offset.y, t - offset.z));
+            if (square != null)
+                return square;
         }
-        squares = translatedSquares;
+        return null;
     }
 
     /** 
      * Terminate this leaf dungeon.
      */
     public void terminate(){
-        for (Coordinate coordinate : getSquareMapping().keySet())
-            deleteSquareAt(coordinate);
+        //deleting squares invalidates the view, so copy the coordinates
+        List<Coordinate> coordinates =
+                                new ArrayList<Coordinate>(getNbSquares());
+        for (Map.Entry<Coordinate, S> e : getPositionsAndSquares())
+            coordinates.add(e.getKey());
+        deleteSquaresAt(coordinates);
         setIsTerminated();
         if (hasParentDungeon())
             getParentDungeon().deleteSubDungeon(this); 
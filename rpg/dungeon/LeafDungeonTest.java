@@ -7,6 +7,12 @@ import rpg.util.*;
 import static org.junit.Assert.*;
 import org.junit.*;
 
+import java.util.Map;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.ArrayList;
+
 /**
  * A class collecting tests for the class of leaf dungeons.
  *
@@ -124,6 +130,215 @@ public class LeafDungeonTest {
         assertEquals(1, level_10.getNbSquares());
         assertEquals(0, level_10.getNbIntrinsicallySlipperySquares());
     }
+    @Test
+    public void getNbIntrinsicallySlipperySquares_floorChanges() {
+        assertEquals(6, level_10_withSquares.getNbSquares());
+        new Wall(square1.getBorderAt(Direction.DOWN), true);
+        assertEquals(1,
+                level_10_withSquares.getNbIntrinsicallySlipperySquares());
+        new Wall(square2.getBorderAt(Direction.UP), true);
+        assertEquals(1,
+                level_10_withSquares.getNbIntrinsicallySlipperySquares());
+        level_10_withSquares.deleteSquareAt(coordinate1);
+        assertEquals(0,
+                level_10_withSquares.getNbIntrinsicallySlipperySquares());
+        assertEquals(5, level_10_withSquares.getNbSquares());
+        assertFalse(square1.hasAsBorderListener(null));
+        assertClassInvariants(level_10_withSquares);
+    }
+
+    @Test
+    public void addSquares_legal() {
+        Map<Coordinate, Square> map = new HashMap<Coordinate, Square>();
+        for (int x = 0; x < 10; x++) {
+            for (int y = 0; y < 10; y++) {
+                if (x == 0 && y == 0)
+                    continue;
+                map.put(new Coordinate(x, y, 0),
+                        new RegularSquare(new Temperature(x * 10), 100 * y));
+            }
+        }
+        level_10.addSquares(map);
+        assertEquals(99, level_10.getNbSquares());
+        for (Map.Entry<Coordinate, Square> entry : map.entrySet())
+            assertEquals(entry.getValue(),
+                         level_10.getSquareAt(entry.getKey()));
+        Square corner = map.get(new Coordinate(9, 9, 0));
+        assertEquals(99, corner.getArea().size());
+        assertTrue(corner.myAreaIsEquilibrated());
+        assertFalse(EquilibrationBatch.isOpen());
+        assertClassInvariants(level_10);
+    }
+    @Test
+    public void changeClimate_test() {
+        Map<Coordinate, Temperature> temperatures =
+                                    new HashMap<Coordinate, Temperature>();
+        temperatures.put(coordinate1, new Temperature(70));
+        temperatures.put(coordinate6, new Temperature(40));
+        level_10_withSquares.changeClimate(temperatures,
+                                    new HashMap<Coordinate, Integer>());
+        assertEquals(new Temperature(30), square5.getTemperature());
+        assertEquals(new Temperature(40), square6.getTemperature());
+        assertTrue(square1.myAreaIsEquilibrated());
+        assertFalse(EquilibrationBatch.isOpen());
+    }
+    @Test
+    public void equilibrateAll_test() {
+        square1.setTemperatureRaw(new Temperature(70));
+        square6.setHumidity(1000);
+        level_10_withSquares.equilibrateAll();
+        assertEquals(new Temperature(30), square5.getTemperature());
+        assertEquals(1000, square6.getHumidity());
+        assertTrue(square1.myAreaIsEquilibrated());
+    }
+    @Test
+    public void changeClimate_notOccupied() {
+        Map<Coordinate, Integer> humidities =
+                                    new HashMap<Coordinate, Integer>();
+        humidities.put(coordinate1, 1000);
+        humidities.put(new Coordinate(5, 5, 0), 1000);
+        try {
+            level_10_withSquares.changeClimate(
+                    new HashMap<Coordinate, Temperature>(), humidities);
+            fail();
+        } catch (IllegalArgumentException e) {
+        }
+        assertEquals(5000, square1.getHumidity());
+    }
+    @Test
+    public void findPath_test() {
+        List<Square> path = level_10_withSquares.findPath(square2, square3);
+        assertEquals(3, path.size());
+        assertSame(square1, path.get(1));
+        assertNull(level_10_withSquares.findPath(square2, square6));
+    }
+    @Test (expected = IllegalArgumentException.class)
+    public void findPath_notInDungeon() {
+        level_10_withSquares.findPath(square2, square);
+    }
+    @Test
+    public void deleteSquaresAt_legal() {
+        List<Coordinate> coordinates = new ArrayList<Coordinate>();
+        coordinates.add(coordinate1);
+        coordinates.add(coordinate2);
+        level_10_withSquares.deleteSquaresAt(coordinates);
+        assertEquals(4, level_10_withSquares.getNbSquares());
+        assertTrue(square1.isTerminated());
+        assertTrue(square2.isTerminated());
+        assertFalse(level_10_withSquares.isOccupied(coordinate1));
+        assertEquals(1, square3.getArea().size());
+        assertTrue(square3.myAreaIsEquilibrated());
+        assertTrue(square4.myAreaIsEquilibrated());
+        assertFalse(EquilibrationBatch.isOpen());
+        assertClassInvariants(level_10_withSquares);
+    }
+    @Test
+    public void deleteSquaresAt_notOccupied() {
+        List<Coordinate> coordinates = new ArrayList<Coordinate>();
+        coordinates.add(coordinate1);
+        coordinates.add(new Coordinate(5, 5, 0));
+        try {
+            level_10_withSquares.deleteSquaresAt(coordinates);
+            fail();
+        } catch (CoordinateNotOccupiedException e) {
+        }
+        assertEquals(6, level_10_withSquares.getNbSquares());
+        assertFalse(square1.isTerminated());
+    }
+    @Test (expected = IllegalArgumentException.class)
+    public void deleteSquaresAt_duplicate() {
+        List<Coordinate> coordinates = new ArrayList<Coordinate>();
+        coordinates.add(coordinate1);
+        coordinates.add(coordinate1);
+        level_10_withSquares.deleteSquaresAt(coordinates);
+    }
+    @Test
+    public void addSquares_nextToExistingSquares() {
+        Map<Coordinate, Square> map = new HashMap<Coordinate, Square>();
+        map.put(new Coordinate(1, 4, 0), square);
+        level_10_withSquares.addSquares(map);
+        assertEquals(square2, square.getNeighbours().get(Direction.SOUTH));
+        assertEquals(7, level_10_withSquares.getNbSquares());
+        assertClassInvariants(level_10_withSquares);
+    }
+    @Test (expected = CoordinateOccupiedException.class)
+    public void addSquares_occupied() {
+        Map<Coordinate, Square> map = new HashMap<Coordinate, Square>();
+        map.put(new Coordinate(5, 5, 0), new RegularSquare());
+        map.put(coordinate1, square);
+        level_10_withSquares.addSquares(map);
+    }
+    @Test (expected = IllegalArgumentException.class)
+    public void addSquares_duplicateSquare() {
+        Map<Coordinate, Square> map = new HashMap<Coordinate, Square>();
+        map.put(new Coordinate(5, 5, 0), square);
+        map.put(new Coordinate(5, 6, 0), square);
+        level_10.addSquares(map);
+    }
+    @Test
+    public void addSquares_tooManySlippery() {
+        Map<Coordinate, Square> map = new HashMap<Coordinate, Square>();
+        new Wall(square.getBorderAt(Direction.DOWN), true);
+        map.put(new Coordinate(5, 5, 0), square);
+        map.put(new Coordinate(5, 6, 0), new RegularSquare());
+        try {
+            level_10.addSquares(map);
+            assertTrue(false);
+        } catch (DungeonConstraintsException e) {
+            assertEquals(square, e.getSquare());
+            assertEquals(0, level_10.getNbSquares());
+            assertFalse(level_10.hasSquare(square));
+        }
+        for (int i = 0; i < 3; i++)
+            map.put(new Coordinate(6, i, 0), new RegularSquare());
+        level_10.addSquares(map);
+        assertEquals(1, level_10.getNbIntrinsicallySlipperySquares());
+        assertClassInvariants(level_10);
+    }
+
+    @Test
+    public void addSquares_culpritStartsTheViolation() {
+        Map<Coordinate, Square> map = new LinkedHashMap<Coordinate, Square>();
+        for (int i = 0; i < 4; i++)
+            map.put(new Coordinate(1, i, 0), new RegularSquare());
+        Square culprit = newSlipperySquare();
+        map.put(new Coordinate(2, 0, 0), newSlipperySquare());
+        map.put(new Coordinate(2, 1, 0), culprit);
+        map.put(new Coordinate(2, 2, 0), newSlipperySquare());
+        map.put(new Coordinate(2, 3, 0), new RegularSquare());
+        try {
+            level_10.addSquares(map);
+            fail();
+        } catch (DungeonConstraintsException e) {
+            assertEquals(culprit, e.getSquare());
+        }
+        assertEquals(0, level_10.getNbSquares());
+    }
+
+    private static Square newSlipperySquare() {
+        Square result = new RegularSquare();
+        new Wall(result.getBorderAt(Direction.DOWN), true);
+        return result;
+    }
+
+    @Test
+    public void addSquares_mergesEachPairOnce() {
+        final int[] nbMerges = new int[1];
+        Map<Coordinate, Square> map = new HashMap<Coordinate, Square>();
+        for (int i = 0; i < 3; i++)
+            map.put(new Coordinate(1, i, 0), new RegularSquare() {
+                @Override
+                public void mergeWith(Square other, Direction direction) {
+                    nbMerges[0]++;
+                    super.mergeWith(other, direction);
+                }
+            });
+        level_10.addSquares(map);
+        assertEquals(2, nbMerges[0]);
+        assertEquals(3, map.get(new Coordinate(1, 0, 0)).getArea().size());
+        assertClassInvariants(level_10);
+    }
+
     @Test
     public void addSquareAt_multipleSquares() {
         Coordinate coordinate = new Coordinate(2, 3, 0);
@@ -151,6 +366,7 @@ public class LeafDungeonTest {
         new Wall(square.getBorderAt(Direction.DOWN), true);
         level_10.addSquareAt(coordinate, square);
     }
+    @Test
     public void addSquareAt_tooManySlippery_checkNotAdded() {
         Coordinate coordinate = new Coordinate(1, 2, 0);
         new Wall(square.getBorderAt(Direction.DOWN), true);
@@ -218,6 +434,46 @@ public class LeafDungeonTest {
         assertEquals(oldUpper, l10ws.getCoordSyst().getUpperBound());
     }
 
+    @Test
+    public void getCoordinateOf_test() {
+        assertEquals(coordinate4,
+                                level_10_withSquares.getCoordinateOf(square4));
+        assertNull(level_10_withSquares.getCoordinateOf(square));
+        assertNull(level_10_withSquares.getCoordinateOf(null));
+        Coordinate offset = new Coordinate(0, 0, 10);
+        level_10_withSquares.translate(offset);
+        assertEquals(coordinate4.add(offset),
+                                level_10_withSquares.getCoordinateOf(square4));
+        level_10_withSquares.deleteSquareAt(coordinate4.add(offset));
+        assertFalse(level_10_withSquares.hasSquare(square4));
+        assertNull(level_10_withSquares.getCoordinateOf(square4));
+    }
+
+    @Test
+    public void translate_sparseLevel() {
+        Level<Square> level = new Level<Square>(5000, 5000);
+        Coordinate far = new Coordinate(4000, 3000, 0);
+        level.addSquareAt(coordinate1, square1);
+        level.addSquareAt(far, square2);
+        Coordinate offset = new Coordinate(1 << 22, 7, 3);
+        level.translate(offset);
+        assertEquals(square1, level.getSquareAt(coordinate1.add(offset)));
+        assertEquals(square2, level.getSquareAt(far.add(offset)));
+        assertFalse(level.isOccupied(coordinate1));
+
+        //(4003, 4003, 4003) lies on the diagonal
+        offset = new Coordinate(-(1 << 22) + 3, 996, 4000);
+        try {
+            level.translate(offset);
+            assertTrue(false);
+        } catch (CoordinateConstraintsException e) {
+            assertEquals(square2, e.getSquare());
+        }
+        assertEquals(square2, level.getSquareAt(
+                            far.add(new Coordinate(1 << 22, 7, 3))));
+        assertClassInvariants(level);
+    }
+
     @Test (expected = IllegalArgumentException.class)
     public void getDirectionsAndNeighboursOf_null() {
         level_10_withSquares.getDirectionsAndNeighboursOf(null);
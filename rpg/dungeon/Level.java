@@ -65,6 +65,35 @@ public class Level<S extends Square> extends LeafDungeon<S> {
         return true;
     }
 
+    /** 
+     * Checks whether this level prefers to store its squares densely.
+     * 
+     * @return 
+     * Always true, levels are boxes that are meant to be filled with 
+     * squares.
+     *   | result == true
+     */
+    @Raw @Immutable
+    @Override
+    protected boolean prefersDenseSquareStorage() {
+        return true;
+    }
+
+    /**
+     * Checks whether the constraints on the coordinates of the squares of 
+     * this level are invariant under translation.
+     * 
+     * @return 
+     * Always true, a level only requires its squares to lie within its 
+     * coordinate system.
+     *   | result == true
+     */
+    @Raw @Immutable
+    @Override
+    protected boolean hasTranslationInvariantSquareConstraints() {
+        return true;
+    }
+
     /** 
      * Checks whether this level can have the given square at the given 
      * coordinate.
@@ -51,6 +51,19 @@ public class LevelTest {
         assertClassInvariants(level);
     }
 
+    @Test
+    public void constructor_fullRange() {
+        Level<Square> level = new Level<Square>(Coordinate.ORIGIN,
+                                            Long.MAX_VALUE, Long.MAX_VALUE);
+        Coordinate corner = level.getCoordSyst().getUpperBound();
+        Square square = new RegularSquare();
+        level.addSquareAt(corner, square);
+        level.addSquareAt(new Coordinate(1, 0, 0), new RegularSquare());
+        assertSame(square, level.getSquareAt(corner));
+        assertEquals(2, level.getNbSquares());
+        assertClassInvariants(level);
+    }
+
     @Test
     public void canHaveAsCoordSyst_test() {
         CoordinateSystem coordSyst = level_10_offset10.getCoordSyst();
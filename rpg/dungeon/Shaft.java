@@ -76,6 +76,35 @@ public class Shaft<S extends Square> extends LeafDungeon<S> {
             return lo.y == hi.y  &&  lo.z == hi.z;
     }
 
+    /** 
+     * Checks whether this shaft prefers to store its squares densely.
+     * 
+     * @return 
+     * Always true, shafts are boxes that are meant to be filled with 
+     * squares.
+     *   | result == true
+     */
+    @Raw @Immutable
+    @Override
+    protected boolean prefersDenseSquareStorage() {
+        return true;
+    }
+
+    /**
+     * Checks whether the constraints on the coordinates of the squares of 
+     * this shaft are invariant under translation.
+     * 
+     * @return 
+     * Always true, the borders and types of the squares of a shaft do not 
+     * depend on where the shaft lies.
+     *   | result == true
+     */
+    @Raw @Immutable
+    @Override
+    protected boolean hasTranslationInvariantSquareConstraints() {
+        return true;
+    }
+
     /** 
      * Checks whether this shaft can have the given square at the given 
      * coordinate.
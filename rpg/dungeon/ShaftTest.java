@@ -6,6 +6,9 @@ import rpg.util.*;
 import static org.junit.Assert.*;
 import org.junit.*;
 
+import java.util.Map;
+import java.util.HashMap;
+
 /**
  * A class collecting tests for the class of shafts.
  *
@@ -95,6 +98,24 @@ public class ShaftTest {
         shaft_10N.addSquareAt(coordinate010, transDoorN);
         assertFalse(shaft_10N.canHaveAsSquareAt(coordinate020, transDoorS));
     }
+    @Test
+    public void addSquares_doorInsideBatch() {
+        Map<Coordinate, Square> map = new HashMap<Coordinate, Square>();
+        Square door = new TransparentSquare(Direction.NORTH);
+        map.put(new Coordinate(0, 1, 0), door);
+        map.put(new Coordinate(0, 2, 0), new RegularSquare());
+        try {
+            shaft_10N.addSquares(map);
+            assertTrue(false);
+        } catch (IllegalArgumentException e) {
+            assertEquals(0, shaft_10N.getNbSquares());
+            assertFalse(shaft_10N.hasSquare(door));
+            assertFalse(shaft_10N.isOccupied(new Coordinate(0, 2, 0)));
+        }
+        map.remove(new Coordinate(0, 2, 0));
+        shaft_10N.addSquares(map);
+        assertEquals(1, shaft_10N.getNbSquares());
+    }
 }
 
 // vim: ts=4:sw=4:expandtab:smarttab
@@ -0,0 +1,240 @@
+package rpg.dungeon;
+
+import rpg.square.Square;
+import rpg.util.Coordinate;
+import rpg.util.LongMap;
+
+import be.kuleuven.cs.som.annotate.*;
+
+import java.util.Map;
+import java.util.AbstractMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A class of square storages that only pay for the squares they actually 
+ * hold.
+ * Squares are kept in a long map, keyed by their packed coordinate 
+ * relative to the origin of the storage. The rare squares whose relative 
+ * coordinate can not be packed are kept in an overflow hash map.
+ * Translating the storage only moves its origin, the keys of its squares 
+ * are left untouched.
+ * This storage is suited for sparsely populated dungeons of any size.
+ *
+ * @author Roald Frederickx
+ */
+class SparseSquareStorage<S extends Square> extends SquareStorage<S> {
+
+    /**
+     * Create a new, empty sparse square storage with the given origin.
+     *
+     * @param origin
+     * The origin of this new storage. Leaf dungeons use the lower bound of 
+     * their coordinate system, so that the keys of their squares stay 
+     * small and packable.
+     * @pre
+     *   | origin != null
+     */
+    SparseSquareStorage(Coordinate origin) {
+        setOrigin(origin);
+    }
+
+    /**
+     * Create a new, empty sparse square storage with the origin of the 
+     * coordinate space as its origin.
+     */
+    SparseSquareStorage() {
+        this(Coordinate.ORIGIN);
+    }
+
+    @Override
+    S get(Coordinate coordinate) {
+        long x = coordinate.x - originX;
+        long y = coordinate.y - originY;
+        long z = coordinate.z - originZ;
+        if (Coordinate.isPackable(x, y, z))
+            return squares.get(Coordinate.pack(x, y, z));
+        if (overflow == null)
+            return null;
+        return overflow.get(new Coordinate(x, y, z));
+    }
+
+    @Override
+    S put(Coordinate coordinate, S square) {
+        long x = coordinate.x - originX;
+        long y = coordinate.y - originY;
+        long z = coordinate.z - originZ;
+        if (Coordinate.isPackable(x, y, z))
+            return squares.put(Coordinate.pack(x, y, z), square);
+        if (overflow == null)
+            overflow = new HashMap<Coordinate, S>();
+        return overflow.put(new Coordinate(x, y, z), square);
+    }
+
+    @Override
+    S remove(Coordinate coordinate) {
+        long x = coordinate.x - originX;
+        long y = coordinate.y - originY;
+        long z = coordinate.z - originZ;
+        if (Coordinate.isPackable(x, y, z))
+            return squares.remove(Coordinate.pack(x, y, z));
+        if (overflow == null)
+            return null;
+        return overflow.remove(new Coordinate(x, y, z));
+    }
+
+    /**
+     * Return the absolute coordinate for the given coordinate relative to 
+     * the origin of this storage.
+     *
+     * @param relative
+     * The relative coordinate.
+     */
+    private Coordinate toAbsolute(Coordinate relative) {
+        return new Coordinate(relative.x + originX, relative.y + originY,
+                                                    relative.z + originZ);
+    }
+
+    /**
+     * Check whether this storage is able to store a square at the given 
+     * coordinate.
+     *
+     * @return
+     *   | result == (coordinate != null)
+     */
+    @Override
+    boolean canStoreAt(Coordinate coordinate) {
+        return coordinate != null;
+    }
+
+    @Basic @Override
+    int size() {
+        if (overflow == null)
+            return squares.size();
+        return squares.size() + overflow.size();
+    }
+
+    @Override
+    boolean containsSquare(Square square) {
+        if (square == null)
+            return false;
+        Iterator<S> it = squareIterator();
+        while (it.hasNext())
+            if (it.next() == square)
+                return true;
+        return false;
+    }
+
+    /**
+     * Translate all coordinates of this storage over the given offset.
+     * This only moves the origin of this storage, the squares themselves 
+     * are left untouched.
+     */
+    @Override
+    void translate(Coordinate offset) {
+        setOrigin(new Coordinate(originX, originY, originZ).add(offset));
+    }
+
+    /**
+     * Set the origin of this storage.
+     *
+     * @param origin
+     * The new origin.
+     */
+    private void setOrigin(Coordinate origin) {
+        originX = origin.x;
+        originY = origin.y;
+        originZ = origin.z;
+    }
+
+    /**
+     * Variables registering the origin of this storage.
+     */
+    private long originX, originY, originZ;
+
+    @Override
+    void addMappingTo(Map<Coordinate, ? super S> map) {
+        LongMap.Cursor<S> cursor = squares.cursor();
+        while (cursor.advance())
+            map.put(toAbsolute(Coordinate.unpack(cursor.key())),
+                    cursor.value());
+        if (overflow != null)
+            for (Map.Entry<Coordinate, S> e : overflow.entrySet())
+                map.put(toAbsolute(e.getKey()), e.getValue());
+    }
+
+    @Override
+    Iterator<S> squareIterator() {
+        if (overflow == null)
+            return squares.valueIterator();
+        return new Iterator<S>() {
+            public boolean hasNext() {
+                return packed.hasNext() || unpacked.hasNext();
+            }
+
+            public S next() throws NoSuchElementException {
+                if (packed.hasNext())
+                    return packed.next();
+                return unpacked.next();
+            }
+
+            public void remove() throws UnsupportedOperationException {
+                throw new UnsupportedOperationException();
+            }
+
+            private Iterator<S> packed = squares.valueIterator();
+            private Iterator<S> unpacked = overflow.values().iterator();
+        };
+    }
+
+    @Override
+    Iterator<Map.Entry<Coordinate, S>> entryIterator() {
+        return new Iterator<Map.Entry<Coordinate, S>>() {
+            public boolean hasNext() {
+                return hasPacked || (unpacked != null && unpacked.hasNext());
+            }
+
+            public Map.Entry<Coordinate, S> next()
+                                            throws NoSuchElementException {
+                if (hasPacked) {
+                    Map.Entry<Coordinate, S> result =
+                        new AbstractMap.SimpleImmutableEntry<Coordinate, S>(
+                                toAbsolute(Coordinate.unpack(cursor.key())),
+                                cursor.value());
+                    hasPacked = cursor.advance();
+                    return result;
+                }
+                if (unpacked == null)
+                    throw new NoSuchElementException();
+                Map.Entry<Coordinate, S> e = unpacked.next();
+                return new AbstractMap.SimpleImmutableEntry<Coordinate, S>(
+                                            toAbsolute(e.getKey()),
+                                            e.getValue());
+            }
+
+            public void remove() throws UnsupportedOperationException {
+                throw new UnsupportedOperationException();
+            }
+
+            private LongMap.Cursor<S> cursor = squares.cursor();
+            private boolean hasPacked = cursor.advance();
+            private Iterator<Map.Entry<Coordinate, S>> unpacked =
+                    overflow == null ? null : overflow.entrySet().iterator();
+        };
+    }
+
+    /**
+     * Variable referencing a map of the packed relative coordinates to the 
+     * squares of this storage.
+     */
+    private LongMap<S> squares = new LongMap<S>();
+
+    /**
+     * Variable referencing a map of the unpackable relative coordinates to 
+     * the squares of this storage, or null if there are no such squares.
+     */
+    private Map<Coordinate, S> overflow = null;
+}
+
+// vim: ts=4:sw=4:expandtab:smarttab
@@ -0,0 +1,86 @@
+package rpg.dungeon;
+
+import rpg.square.*;
+import rpg.util.*;
+
+import static org.junit.Assert.*;
+import org.junit.*;
+
+import java.util.Map;
+import java.util.HashMap;
+import java.util.Iterator;
+
+/**
+ * A class collecting tests for the class of sparse square storages.
+ *
+ * @author Roald Frederickx
+ */
+public class SparseSquareStorageTest {
+
+    private SparseSquareStorage<Square> storage;
+    private Square square1;
+    private Square square2;
+    private Coordinate packable;
+    private Coordinate unpackable;
+
+    @Before
+    public void setUpMutableFixture() {
+        storage = new SparseSquareStorage<Square>();
+        square1 = new RegularSquare();
+        square2 = new RegularSquare();
+        packable = new Coordinate(1500, 3, 0);
+        unpackable = new Coordinate(Long.MAX_VALUE - 1, 3, 0);
+        storage.put(packable, square1);
+        storage.put(unpackable, square2);
+    }
+
+    @Test
+    public void get_test() {
+        assertEquals(square1, storage.get(packable));
+        assertEquals(square2, storage.get(unpackable));
+        assertEquals(null, storage.get(new Coordinate(3, 1500, 0)));
+        assertEquals(2, storage.size());
+    }
+
+    @Test
+    public void remove_test() {
+        assertEquals(square2, storage.remove(unpackable));
+        assertEquals(square1, storage.remove(packable));
+        assertEquals(0, storage.size());
+        assertFalse(storage.squareIterator().hasNext());
+    }
+
+    @Test
+    public void translate_test() {
+        Coordinate offset = new Coordinate(-1, 0, 5);
+        storage.translate(offset);
+        assertEquals(square1, storage.get(packable.add(offset)));
+        assertEquals(square2, storage.get(unpackable.add(offset)));
+        assertEquals(null, storage.get(packable));
+        assertTrue(storage.containsSquare(square2));
+    }
+
+    @Test
+    public void addMappingTo_test() {
+        Map<Coordinate, Square> map = new HashMap<Coordinate, Square>();
+        storage.addMappingTo(map);
+        assertEquals(2, map.size());
+        assertEquals(square1, map.get(packable));
+        assertEquals(square2, map.get(unpackable));
+    }
+
+    @Test
+    public void entryIterator_test() {
+        Map<Coordinate, Square> map = new HashMap<Coordinate, Square>();
+        Iterator<Map.Entry<Coordinate, Square>> it = storage.entryIterator();
+        while (it.hasNext()) {
+            Map.Entry<Coordinate, Square> e = it.next();
+            assertNull(map.put(e.getKey(), e.getValue()));
+        }
+        assertEquals(2, map.size());
+        assertEquals(square1, map.get(packable));
+        assertEquals(square2, map.get(unpackable));
+    }
+}
+
+// vim: ts=4:sw=4:expandtab:smarttab
@@ -0,0 +1,130 @@
+package rpg.dungeon;
+
+import rpg.square.Square;
+import rpg.util.Coordinate;
+
+import be.kuleuven.cs.som.annotate.*;
+
+import java.util.Map;
+import java.util.Iterator;
+
+/**
+ * A class of storages that map coordinates to the squares of a leaf
+ * dungeon.
+ * A square storage knows nothing about the constraints of the leaf
+ * dungeon it belongs to, it merely stores squares at coordinates. It is up
+ * to the owning leaf dungeon to only store squares at valid coordinates.
+ *
+ * @author Roald Frederickx
+ */
+abstract class SquareStorage<S extends Square> {
+
+    /**
+     * Return the square at the given coordinate in this storage, or null
+     * if there is no such square.
+     *
+     * @param coordinate
+     * The coordinate of the square to return.
+     * @pre
+     *   | coordinate != null
+     */
+    @Basic
+    abstract S get(Coordinate coordinate);
+
+    /**
+     * Store the given square at the given coordinate in this storage.
+     *
+     * @param coordinate
+     * The coordinate to store the given square at.
+     * @param square
+     * The square to store.
+     * @pre
+     *   | coordinate != null  &amp;&amp;  square != null
+     * @pre
+     *   | canStoreAt(coordinate)
+     * @post
+     *   | new.get(coordinate) == square
+     * @return
+     * The square that was stored at the given coordinate before, or null
+     * if there was no such square.
+     */
+    abstract S put(Coordinate coordinate, S square);
+
+    /**
+     * Remove the square at the given coordinate from this storage.
+     *
+     * @param coordinate
+     * The coordinate of the square to remove.
+     * @pre
+     *   | coordinate != null
+     * @post
+     *   | new.get(coordinate) == null
+     * @return
+     * The square that was stored at the given coordinate, or null if
+     * there was no such square.
+     */
+    abstract S remove(Coordinate coordinate);
+
+    /**
+     * Check whether this storage is able to store a square at the given
+     * coordinate.
+     *
+     * @param coordinate
+     * The coordinate to check.
+     */
+    abstract boolean canStoreAt(Coordinate coordinate);
+
+    /**
+     * Return the number of squares in this storage.
+     */
+    @Basic
+    abstract int size();
+
+    /**
+     * Check whether this storage contains the given square.
+     *
+     * @param square
+     * The square to check.
+     */
+    abstract boolean containsSquare(Square square);
+
+    /**
+     * Translate all coordinates of this storage over the given offset.
+     *
+     * @param offset
+     * The offset over which to translate this storage.
+     * @pre
+     *   | offset != null
+     * @post
+     *   | for each coordinate :
+     *   |      new.get(coordinate.add(offset)) == old.get(coordinate)
+     */
+    abstract void translate(Coordinate offset);
+
+    /**
+     * Add the mapping of coordinates to squares of this storage to the
+     * given map.
+     *
+     * @param map
+     * The map to add the mapping of this storage to.
+     */
+    abstract void addMappingTo(Map<Coordinate, ? super S> map);
+
+    /**
+     * Return an iterator over the squares in this storage.
+     * The returned iterator does not support removal and is invalidated by
+     * any structural change of this storage.
+     */
+    abstract Iterator<S> squareIterator();
+
+    /**
+     * Return an iterator over the mappings of coordinates to squares of
+     * this storage.
+     * The entries are created on the fly and are immutable. The returned
+     * iterator does not support removal and is invalidated by any
+     * structural change of this storage.
+     */
+    abstract Iterator<Map.Entry<Coordinate, S>> entryIterator();
+}
+
+// vim: ts=4:sw=4:expandtab:smarttab
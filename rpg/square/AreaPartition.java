@@ -0,0 +1,249 @@
+package rpg.square;
+
+import rpg.exceptions.*;
+
+import be.kuleuven.cs.som.annotate.*;
+
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Set;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A class of partitions of a collection of squares into their disjoint
+ * areas.
+ * The areas are discovered once, when the partition is created. They can
+ * then be equilibrated all at once: the interiors of the areas do not
+ * share any state, so they get equilibrated in parallel on a fork/join
+ * pool, after which the squares bordering on them are touched and
+ * notified one by one, on the calling thread, in a deterministic order.
+ * Squares that are not a SquareImpl have no area record to work with, so
+ * their areas get equilibrated one at a time on the calling thread, as
+ * they report them.
+ *
+ * @author Roald Frederickx
+ */
+public final class AreaPartition {
+
+    /**
+     * Create a new partition of the given squares into their areas.
+     *
+     * @param squares
+     * The squares to partition.
+     * @post
+     * Each area that contains one of the given squares that is not
+     * terminated is part of this partition.
+     * @throws IllegalArgumentException
+     *   | squares == null
+     */
+    public AreaPartition(Iterable<? extends Square> squares)
+                                            throws IllegalArgumentException {
+        if (squares == null)
+            throw new IllegalArgumentException();
+        Set<Set<Square>> seen = Collections.newSetFromMap(
+                            new IdentityHashMap<Set<Square>, Boolean>());
+        Set<Square> otherSeen = Collections.newSetFromMap(
+                                    new IdentityHashMap<Square, Boolean>());
+        for (Square square : squares) {
+            if (square.isTerminated())
+                continue;
+            if (!(square instanceof SquareImpl)) {
+                if (otherSeen.add(square)) {
+                    otherSeen.addAll(square.getArea());
+                    otherRepresentatives.add(square);
+                }
+                continue;
+            }
+            SquareImpl squareImpl = (SquareImpl) square;
+            Set<Square> area = AreaRecord.getAreaOf(squareImpl);
+            if (seen.add(area))
+                representatives.add(squareImpl);
+        }
+    }
+
+    /**
+     * Return the number of areas of this partition.
+     */
+    @Basic
+    public int getNbAreas() {
+        return representatives.size() + otherRepresentatives.size();
+    }
+
+    /**
+     * Equilibrate all areas of this partition.
+     *
+     * @effect
+     * The interior of each area gets equilibrated, in parallel.
+     * Afterwards, each square in the boundary of one of the areas gets
+     * touched and notified once, in the order in which the areas were
+     * discovered. The areas of squares that are not a SquareImpl get
+     * equilibrated last, one at a time.
+     *   | for each area in this partition :
+     *   |      area.equilibrateAreaInternally()
+     *   | for each square in the union of the boundaries of the areas :
+     *   |      square.neighbourHasChangedTemperatureOrHumidity()
+     *   | SquareImpl.refreshClimatesOf(
+     *   |          the union of the boundaries of the areas)
+     * @note
+     * The parallel tasks only compute and share the climate of their own
+     * areas. Boundary squares belong to neighbouring areas that other
+     * tasks may be equilibrating at the same time, so everything that
+     * touches them happens on the calling thread, after all tasks have
+     * finished.
+     * @throws IllegalStateException
+     * An equilibration batch is open on the calling thread. The tasks run
+     * on other threads, which cannot see that batch.
+     *   | EquilibrationBatch.isOpen()
+     * @throws EquilibratingSquaresViolatesLimitsException
+     * Equilibrating the interior of one of the areas violates the limits
+     * of one of its squares. That area is left untouched, all other areas
+     * are equilibrated regardless.
+     */
+    public void equilibrate() throws IllegalStateException,
+                                EquilibratingSquaresViolatesLimitsException {
+        if (EquilibrationBatch.isOpen())
+            throw new IllegalStateException("Open equilibration batch");
+        SquareImpl[] areas = getCurrentAreas();
+        EquilibratingSquaresViolatesLimitsException[] failures =
+            new EquilibratingSquaresViolatesLimitsException[areas.length];
+        pool.invoke(new EquilibrateInteriors(areas, failures,
+                                             0, areas.length));
+
+        Set<Square> boundary = new LinkedHashSet<Square>();
+        for (int i = 0; i < areas.length; i++)
+            if (failures[i] == null)
+                boundary.addAll(areas[i].getAreaBoundary());
+        for (Square square : boundary) {
+            AreaRecord.touch(square);
+            square.neighbourHasChangedTemperatureOrHumidity();
+        }
+        SquareImpl.refreshClimatesOf(boundary);
+
+        EquilibratingSquaresViolatesLimitsException otherFailure = null;
+        for (Square square : otherRepresentatives) {
+            if (square.isTerminated())
+                continue;
+            try {
+                square.equilibrateMyArea();
+            } catch (EquilibratingSquaresViolatesLimitsException e) {
+                if (otherFailure == null)
+                    otherFailure = e;
+            }
+        }
+
+        for (EquilibratingSquaresViolatesLimitsException failure : failures)
+            if (failure != null)
+                throw failure;
+        if (otherFailure != null)
+            throw otherFailure;
+    }
+
+    /**
+     * Return a square of each distinct area of this partition, as the
+     * areas are now.
+     * Looking up the area of a square may have to bring its area record up
+     * to date, so this is done here, on the calling thread, rather than in
+     * the parallel tasks. Areas that have merged since this partition was
+     * created are only returned once, so no two tasks ever share a record.
+     */
+    private SquareImpl[] getCurrentAreas() {
+        Set<Set<Square>> seen = Collections.newSetFromMap(
+                            new IdentityHashMap<Set<Square>, Boolean>());
+        List<SquareImpl> result = new ArrayList<SquareImpl>();
+        for (SquareImpl square : representatives)
+            if (!square.isTerminated()
+                            && seen.add(AreaRecord.getAreaOf(square)))
+                result.add(square);
+        return result.toArray(new SquareImpl[result.size()]);
+    }
+
+    /**
+     * A class of fork/join tasks that equilibrate the interiors of a range
+     * of areas.
+     */
+    private static class EquilibrateInteriors extends RecursiveAction {
+
+        /**
+         * Create a new task for the areas with an index from the given
+         * start, inclusive, to the given end, exclusive.
+         */
+        EquilibrateInteriors(SquareImpl[] areas,
+                    EquilibratingSquaresViolatesLimitsException[] failures,
+                    int start, int end) {
+            this.areas = areas;
+            this.failures = failures;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start > SEQUENTIAL_THRESHOLD) {
+                int middle = (start + end) >>> 1;
+                invokeAll(
+                    new EquilibrateInteriors(areas, failures, start, middle),
+                    new EquilibrateInteriors(areas, failures, middle, end));
+                return;
+            }
+            for (int i = start; i < end; i++) {
+                SquareImpl square = areas[i];
+                if (!square.hasEquilibratingInterior())
+                    continue;
+                try {
+                    square.new Area().shareEquilibratedClimate();
+                } catch (EquilibratingSquaresViolatesLimitsException e) {
+                    failures[i] = e;
+                }
+            }
+        }
+
+        /**
+         * Variable referencing a square of each area to equilibrate.
+         */
+        private final SquareImpl[] areas;
+
+        /**
+         * Variable referencing the failures of the areas to equilibrate,
+         * by index.
+         */
+        private final EquilibratingSquaresViolatesLimitsException[] failures;
+
+        /**
+         * Variables registering the range of areas of this task.
+         */
+        private final int start, end;
+
+        private static final long serialVersionUID = 1L;
+    }
+
+    /**
+     * Variable referencing a square of each area of this partition.
+     */
+    private final List<SquareImpl> representatives =
+                                                new ArrayList<SquareImpl>();
+
+    /**
+     * Variable referencing a square of each area of this partition that
+     * consists of squares that are not a SquareImpl.
+     */
+    private final List<Square> otherRepresentatives =
+                                                    new ArrayList<Square>();
+
+    /**
+     * Constant registering the number of areas below which a task
+     * equilibrates its areas itself rather than forking.
+     */
+    private static final int SEQUENTIAL_THRESHOLD = 64;
+
+    /**
+     * Constant referencing the fork/join pool on which the interiors of
+     * areas get equilibrated.
+     */
+    private static final ForkJoinPool pool = ForkJoinPool.commonPool();
+}
+
+// vim: ts=4:sw=4:expandtab:smarttab
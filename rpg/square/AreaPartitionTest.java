@@ -0,0 +1,132 @@
+package rpg.square;
+
+import rpg.util.*;
+import rpg.exceptions.*;
+
+import static org.junit.Assert.*;
+import org.junit.*;
+
+import java.util.List;
+import java.util.ArrayList;
+
+/**
+ * A class collecting tests for the class of area partitions.
+ *
+ * @author Roald Frederickx
+ */
+public class AreaPartitionTest {
+
+    private List<Square> squares;
+
+    /**
+     * Set up a mutable test fixture of many pairs of squares, each pair 
+     * forming an area of its own. The temperatures within a pair differ, 
+     * as they are set without equilibrating.
+     */
+    @Before
+    public void setUpMutableFixture() {
+        squares = new ArrayList<Square>();
+        for (int i = 0; i < 200; i++) {
+            Square south = new RegularSquare();
+            Square north = new RegularSquare();
+            south.mergeWith(north, Direction.NORTH);
+            south.setTemperatureRaw(new Temperature(2 * i));
+            north.setTemperatureRaw(new Temperature(0));
+            squares.add(south);
+            squares.add(north);
+        }
+    }
+
+    @Test
+    public void constructor_test() {
+        assertEquals(200, new AreaPartition(squares).getNbAreas());
+    }
+
+    @Test (expected = IllegalArgumentException.class)
+    public void constructor_null() {
+        new AreaPartition(null);
+    }
+
+    @Test
+    public void equilibrate_test() {
+        new AreaPartition(squares).equilibrate();
+        for (int i = 0; i < 200; i++) {
+            Square north = squares.get(2 * i + 1);
+            assertEquals(new Temperature(i), north.getTemperature());
+            assertTrue(north.myAreaIsEquilibrated());
+        }
+    }
+
+    @Test
+    public void equilibrate_rockBoundary() {
+        Rock rock = new Rock();
+        rock.mergeWith(squares.get(1), Direction.SOUTH);
+        squares.add(rock);
+        new AreaPartition(squares).equilibrate();
+        assertEquals(new Temperature(0), rock.getTemperature());
+        squares.get(3).mergeWith(rock, Direction.EAST);
+        squares.get(3).setTemperatureRaw(new Temperature(30));
+        new AreaPartition(squares).equilibrate();
+        assertEquals(new Temperature(7.75), rock.getTemperature());
+    }
+
+    @Test
+    public void equilibrate_closedDoors() {
+        for (int i = 0; i + 1 < 200; i++) {
+            Square north = squares.get(2 * i + 1);
+            north.mergeWith(squares.get(2 * i + 2), Direction.EAST);
+            new Door(north.getBorderAt(Direction.EAST), false);
+        }
+        for (int i = 0; i < 200; i++) {
+            squares.get(2 * i).setTemperatureRaw(new Temperature(2 * i));
+            squares.get(2 * i + 1).setTemperatureRaw(new Temperature(0));
+        }
+        AreaPartition partition = new AreaPartition(squares);
+        assertEquals(200, partition.getNbAreas());
+        long[] versions = new long[200];
+        for (int i = 0; i < 200; i++)
+            versions[i] = getRecord(i).getVersion();
+        partition.equilibrate();
+        for (int i = 0; i < 200; i++) {
+            //one new version for the shared climate, one for each door
+            int nbDoors = (i == 0 || i == 199) ? 1 : 2;
+            assertTrue(getRecord(i).getVersion() - versions[i] > nbDoors);
+            Square south = squares.get(2 * i);
+            assertEquals(new Temperature(i), south.getTemperature());
+            assertTrue(south.myAreaIsEquilibrated());
+            assertTrue(getRecord(i).isKnownEquilibrated());
+        }
+    }
+
+    /**
+     * Return the area record of the i'th pair of squares.
+     */
+    private AreaRecord getRecord(int i) {
+        return ((SquareImpl) squares.get(2 * i)).getAreaRecord();
+    }
+
+    @Test (expected = IllegalStateException.class)
+    public void equilibrate_openBatch() {
+        EquilibrationBatch.begin();
+        try {
+            new AreaPartition(squares).equilibrate();
+        } finally {
+            EquilibrationBatch.end();
+        }
+    }
+
+    @Test
+    public void equilibrate_violatesLimits() {
+        squares.get(1).setMaxTemperature(new Temperature(10));
+        squares.get(0).setTemperatureRaw(new Temperature(50));
+        try {
+            new AreaPartition(squares).equilibrate();
+            fail();
+        } catch (EquilibratingSquaresViolatesLimitsException e) {
+        }
+        assertEquals(new Temperature(0), squares.get(1).getTemperature());
+        assertEquals(new Temperature(2), squares.get(5).getTemperature());
+    }
+}
+
+// vim: ts=4:sw=4:expandtab:smarttab
@@ -0,0 +1,809 @@
+package rpg.square;
+
+import be.kuleuven.cs.som.annotate.*;
+
+import java.util.Set;
+import java.util.HashSet;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.IdentityHashMap;
+import java.util.Queue;
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicLong;
+import java.lang.ref.WeakReference;
+
+/**
+ * A class of records that keep track of the areas of squares.
+ * An area is a maximal set of squares that are connected through open
+ * borders. Rather than rediscovering the area of a square with a
+ * traversal on every query, each square refers to a record that holds its
+ * area.
+ * Connecting two squares unites their records, the members of the
+ * smaller record being moved to the larger one. Disconnecting two squares
+ * may split their area. Outside equilibration batches, this is settled
+ * right away by searching from both squares at once, one step at a time
+ * on either side: if the searches meet, the area is still whole; if one
+ * of them runs out first, it has found the part that got cut off, which
+ * moves to a record of its own. A split is thus found as soon as the
+ * smaller part has been explored, so that closing the door of a small
+ * room in a large level only costs in proportion to that room.
+ * Within a batch, many borders tend to change at once, so the record is
+ * only marked as stale, and the next query for one of its squares
+ * recomputes the areas within the members of that record only.
+ * Once an area has been equilibrated, its members share the climate held
+ * by their record instead of each storing an identical copy. A member
+ * that gets a climate of its own makes all members take a private copy
+ * again.
+ * Each member of a record has a dense integer id within that record: its
+ * index in the member array of the record. Equilibration gathers the
+ * climates of the members into primitive arrays indexed by these ids, so
+ * its arithmetic runs over flat arrays rather than over a set of squares.
+ * Finally, a record keeps weak references to the navigation versions of
+ * the reachability indices that cover its area. Changing the open
+ * connections of the area or the teleporters of its members only
+ * increments those versions, so the indices of unrelated squares stay up
+ * to date. An index clears its references when it rebuilds, and the
+ * garbage collector clears them when the index is dropped; records drop
+ * cleared references whenever they go through them.
+ *
+ * @invar
+ * Each area is contained in the members of a single record.
+ * @invar
+ * If a record is not stale, its members that are not terminated form
+ * exactly one area.
+ *
+ * @author Roald Frederickx
+ */
+final class AreaRecord {
+
+    /**
+     * Create a new, empty area record.
+     */
+    private AreaRecord() {
+    }
+
+    /**
+     * Return the area of the given square.
+     *
+     * @param square
+     * The square whose area to return.
+     * @pre
+     *   | square != null  &amp;&amp;  !square.isTerminated()
+     * @return
+     * The set of squares that are connected to the given square through
+     * open borders, the given square included. The resulting set is
+     * owned by the record of the given square and must not be modified.
+     */
+    static Set<Square> getAreaOf(SquareImpl square) {
+        assert !square.isTerminated();
+        AreaRecord record = recordOf(square);
+        if (record.isStale) {
+            record.split();
+            record = square.getAreaRecord();
+        }
+        return record.members;
+    }
+
+    /**
+     * Register that the given squares have become connected through an
+     * open border.
+     *
+     * @param square
+     * The first square to connect.
+     * @param other
+     * The second square to connect.
+     * @post
+     * The given squares share the same record, which holds the members of
+     * both old records.
+     */
+    static void connect(Square square, Square other) {
+        AreaRecord record = recordOf((SquareImpl) square);
+        AreaRecord otherRecord = recordOf((SquareImpl) other);
+        if (record == otherRecord) {
+            if (record.isStale)
+                record.navigationChanged();
+            return;
+        }
+        record.navigationChanged();
+        otherRecord.navigationChanged();
+        if (record.members.size() < otherRecord.members.size()) {
+            AreaRecord swap = record;
+            record = otherRecord;
+            otherRecord = swap;
+        }
+        if (!record.sharesClimateWith(otherRecord)) {
+            record.unshareClimate();
+            otherRecord.unshareClimate();
+        }
+        for (Square member : otherRecord.members) {
+            ((SquareImpl) member).setAreaRecord(record);
+            record.members.add(member);
+        }
+        if (otherRecord.navigationWatches != null)
+            for (WeakReference<AtomicLong> watch :
+                                            otherRecord.navigationWatches)
+                record.addNavigationWatch(watch);
+        record.isStale |= otherRecord.isStale;
+        record.memberArray = null;
+        record.limitsChanged();
+        record.boundary = null;
+        record.version++;
+    }
+
+    /**
+     * Register that the given squares have lost the open connection
+     * between them.
+     *
+     * @param square
+     * The square that has been disconnected.
+     * @param other
+     * The square it has been disconnected from.
+     * @pre
+     * The given squares no longer border on each other through an open
+     * border.
+     * @post
+     * If the given square has a record, either that record is stale, or
+     * each record that is not stale still holds exactly one area.
+     */
+    static void disconnect(Square square, Square other) {
+        AreaRecord record = ((SquareImpl) square).getAreaRecord();
+        if (record == null)
+            return;
+        if (record.isStale || square.isTerminated() || other.isTerminated()
+                                        || EquilibrationBatch.isOpen()) {
+            record.navigationChanged();
+            record.isStale = true;
+            return;
+        }
+        assert ((SquareImpl) other).getAreaRecord() == record;
+        Set<Square> cutOff = findCutOffPart(square, other);
+        if (cutOff != null) {
+            record.navigationChanged();
+            record.splitOff(cutOff);
+        }
+    }
+
+    /**
+     * Search the squares that are openly connected to either of the given
+     * squares, one step at a time on either side, until the searches meet
+     * or one of them runs out.
+     *
+     * @param square
+     * The square to search from on one side.
+     * @param other
+     * The square to search from on the other side.
+     * @return
+     * Null if the given squares are still openly connected, or the set of
+     * squares that are openly connected to one of them but not to the
+     * other otherwise. That set is the smaller part, or at least not the
+     * larger one by more than a single step.
+     */
+    private static Set<Square> findCutOffPart(Square square, Square other) {
+        Map<Square, Boolean> sides = new IdentityHashMap<Square, Boolean>();
+        Queue<Square> queue = new ArrayDeque<Square>();
+        Queue<Square> otherQueue = new ArrayDeque<Square>();
+        sides.put(square, true);
+        sides.put(other, false);
+        queue.add(square);
+        otherQueue.add(other);
+        while (true) {
+            if (queue.isEmpty())
+                return collectSide(sides, true);
+            if (otherQueue.isEmpty())
+                return collectSide(sides, false);
+            if (!searchStep(queue, sides, true)
+                            || !searchStep(otherQueue, sides, false))
+                return null;
+        }
+    }
+
+    /**
+     * Take a single step in the search on the given side.
+     *
+     * @param queue
+     * The squares on the given side whose neighbours have not been
+     * searched yet.
+     * @param sides
+     * The side on which each square found so far has been found.
+     * @param side
+     * The side to search on.
+     * @return
+     * False iff the step found a square that had already been found on
+     * the other side.
+     */
+    private static boolean searchStep(Queue<Square> queue,
+                                    Map<Square, Boolean> sides, boolean side) {
+        if (queue.isEmpty())
+            return true;
+        for (Square neighbour :
+                        queue.remove().getAccessibleNeighbours().values()) {
+            Boolean found = sides.get(neighbour);
+            if (found == null) {
+                sides.put(neighbour, side);
+                queue.add(neighbour);
+            } else if (found != side) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Return the squares that have been found on the given side.
+     *
+     * @param sides
+     * The side on which each square has been found.
+     * @param side
+     * The side to collect.
+     */
+    private static Set<Square> collectSide(Map<Square, Boolean> sides,
+                                                            boolean side) {
+        Set<Square> result = new HashSet<Square>();
+        for (Map.Entry<Square, Boolean> entry : sides.entrySet())
+            if (entry.getValue() == side)
+                result.add(entry.getKey());
+        return result;
+    }
+
+    /**
+     * Make the given square take a private copy of the climate it shares
+     * with its area, if any.
+     *
+     * @param square
+     * The square that is about to get a climate of its own.
+     * @post
+     * The record of the given square, if any, has no shared climate.
+     */
+    static void unshareClimateOf(SquareImpl square) {
+        AreaRecord record = square.getAreaRecord();
+        if (record != null)
+            record.unshareClimate();
+    }
+
+    /**
+     * Register that the temperature limits of the given square have
+     * changed.
+     *
+     * @param square
+     * The square whose limits have changed.
+     */
+    static void limitsChanged(SquareImpl square) {
+        AreaRecord record = square.getAreaRecord();
+        if (record != null)
+            record.limitsChanged();
+    }
+
+    /**
+     * Register that the neighbours of the given square may have changed.
+     *
+     * @param square
+     * The square whose neighbours may have changed.
+     * @post
+     * The record of the given square, if any, has no cached boundary.
+     */
+    static void neighboursChanged(Square square) {
+        if (square == null)
+            return;
+        AreaRecord record = ((SquareImpl) square).getAreaRecord();
+        if (record != null) {
+            record.boundary = null;
+            record.version++;
+        }
+    }
+
+    /**
+     * Register that the climate or the temperature limits of the given 
+     * square, or of one of the squares it borders on, have changed.
+     *
+     * @param square
+     * The square whose area may no longer be equilibrated.
+     * @post
+     * The record of the given square, if any, has a new version.
+     */
+    static void touch(Square square) {
+        AreaRecord record = ((SquareImpl) square).getAreaRecord();
+        if (record != null)
+            record.version++;
+    }
+
+    /**
+     * Register that the navigation version referenced by the given watch
+     * must change whenever the open connections of the area of the given
+     * square, or the teleporters of its members, change.
+     *
+     * @param square
+     * The square whose area to watch.
+     * @param watch
+     * A weak reference to the navigation version to increment on each
+     * such change. Clearing it ends the watch.
+     * @pre
+     *   | square != null  &amp;&amp;  !square.isTerminated()
+     */
+    static void watchNavigation(SquareImpl square,
+                                        WeakReference<AtomicLong> watch) {
+        assert !square.isTerminated();
+        getAreaOf(square);
+        square.getAreaRecord().addNavigationWatch(watch);
+    }
+
+    /**
+     * Return the number of navigation watches of the record of the given
+     * square that have not been cleared.
+     *
+     * @param square
+     * The square whose record to inspect.
+     */
+    static int getNbNavigationWatchesOf(SquareImpl square) {
+        AreaRecord record = square.getAreaRecord();
+        if (record == null)
+            return 0;
+        record.pruneNavigationWatches();
+        return record.navigationWatches == null ?
+                                        0 : record.navigationWatches.size();
+    }
+
+    /**
+     * Register that the teleporter of the given square may have changed.
+     *
+     * @param square
+     * The square whose teleporter may have changed.
+     * @post
+     * Each navigation version registered with the record of the given
+     * square, if any, has been incremented.
+     */
+    static void teleporterChanged(SquareImpl square) {
+        AreaRecord record = square.getAreaRecord();
+        if (record != null)
+            record.navigationChanged();
+    }
+
+    /**
+     * Return the record of the given square, giving it a record of its
+     * own if it has none yet.
+     * A square without a record has never been connected to another
+     * square, so it forms an area on its own.
+     *
+     * @param square
+     * The square whose record to return.
+     */
+    private static AreaRecord recordOf(SquareImpl square) {
+        AreaRecord record = square.getAreaRecord();
+        if (record == null) {
+            record = new AreaRecord();
+            record.members.add(square);
+            square.setAreaRecord(record);
+        }
+        return record;
+    }
+
+    /**
+     * Move the given members of this record to a fresh record.
+     *
+     * @param part
+     * The members to move. They form an area on their own, and so do the
+     * remaining members of this record.
+     */
+    private void splitOff(Set<Square> part) {
+        AreaRecord record = new AreaRecord();
+        if (hasClimate)
+            record.shareClimate(temperature, humidity);
+        record.copyNavigationWatchesOf(this);
+        for (Square member : part) {
+            members.remove(member);
+            ((SquareImpl) member).setAreaRecord(record);
+            record.members.add(member);
+        }
+        memberArray = null;
+        limitsChanged();
+        boundary = null;
+        version++;
+    }
+
+    /**
+     * Split this record into a fresh record for each area among its
+     * members that are not terminated.
+     * Only the members of this record are traversed.
+     */
+    private void split() {
+        for (Square member : members) {
+            SquareImpl square = (SquareImpl) member;
+            square.setAreaRecord(null);
+            if (hasClimate && square.isTerminated())
+                square.setClimateRaw(temperature, humidity);
+        }
+        Queue<Square> queue = new ArrayDeque<Square>();
+        for (Square member : members) {
+            SquareImpl start = (SquareImpl) member;
+            if (start.isTerminated() || start.getAreaRecord() != null)
+                continue;
+            AreaRecord record = new AreaRecord();
+            if (hasClimate)
+                record.shareClimate(temperature, humidity);
+            record.copyNavigationWatchesOf(this);
+            record.members.add(start);
+            start.setAreaRecord(record);
+            queue.add(start);
+            while (!queue.isEmpty()) {
+                Square next = queue.remove();
+                for (Square neighbour :
+                                next.getAccessibleNeighbours().values()) {
+                    SquareImpl square = (SquareImpl) neighbour;
+                    if (square.getAreaRecord() == record)
+                        continue;
+                    assert members.contains(square);
+                    record.members.add(square);
+                    square.setAreaRecord(record);
+                    queue.add(square);
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks whether the members of this record share the climate of this
+     * record.
+     */
+    @Basic
+    boolean hasClimate() {
+        return hasClimate;
+    }
+
+    /**
+     * Return the temperature shared by the members of this record, in
+     * degrees Celcius.
+     *
+     * @pre
+     *   | hasClimate()
+     */
+    @Basic
+    double getTemperatureValue() {
+        assert hasClimate;
+        return temperature;
+    }
+
+    /**
+     * Return the humidity shared by the members of this record.
+     *
+     * @pre
+     *   | hasClimate()
+     */
+    @Basic
+    int getHumidity() {
+        assert hasClimate;
+        return humidity;
+    }
+
+    /**
+     * Let the members of this record share the given climate.
+     *
+     * @param temperature
+     * The temperature to share.
+     * @param humidity
+     * The humidity to share.
+     * @post
+     *   | new.hasClimate()
+     *   |      &amp;&amp; new.getTemperatureValue() == temperature
+     *   |      &amp;&amp; new.getHumidity() == humidity
+     */
+    void shareClimate(double temperature, int humidity) {
+        this.temperature = temperature;
+        this.humidity = humidity;
+        hasClimate = true;
+        version++;
+    }
+
+    /**
+     * Give each member of this record a private copy of the climate of
+     * this record, if any.
+     *
+     * @post
+     *   | !new.hasClimate()
+     */
+    private void unshareClimate() {
+        if (!hasClimate)
+            return;
+        hasClimate = false;
+        for (Square member : members)
+            ((SquareImpl) member).setClimateRaw(temperature, humidity);
+    }
+
+    /**
+     * Checks whether this record and the given record share the same
+     * climate.
+     *
+     * @param other
+     * The record to compare with.
+     */
+    private boolean sharesClimateWith(AreaRecord other) {
+        return hasClimate && other.hasClimate
+                && humidity == other.humidity
+                && temperature == other.temperature;
+    }
+
+    /**
+     * Variable registering whether the members of this record share the
+     * climate of this record.
+     */
+    private boolean hasClimate = false;
+
+    /**
+     * Variable registering the temperature shared by the members of this
+     * record, in degrees Celcius.
+     */
+    private double temperature;
+
+    /**
+     * Variable registering the humidity shared by the members of this
+     * record.
+     */
+    private int humidity;
+
+    /**
+     * Return the highest minimum temperature of the members of this
+     * record, in degrees Celcius.
+     */
+    double getLowestTemperature() {
+        if (!hasLimits)
+            computeLimits();
+        return lowestTemperature;
+    }
+
+    /**
+     * Return the lowest maximum temperature of the members of this record,
+     * in degrees Celcius.
+     */
+    double getHighestTemperature() {
+        if (!hasLimits)
+            computeLimits();
+        return highestTemperature;
+    }
+
+    /**
+     * Compute the temperature range that all members of this record can
+     * have.
+     */
+    private void computeLimits() {
+        double lowest = Double.NEGATIVE_INFINITY;
+        double highest = Double.POSITIVE_INFINITY;
+        for (Square member : members) {
+            lowest = Math.max(lowest, member.getMinTemperatureValue());
+            highest = Math.min(highest, member.getMaxTemperatureValue());
+        }
+        lowestTemperature = lowest;
+        highestTemperature = highest;
+        hasLimits = true;
+    }
+
+    /**
+     * Forget the temperature range of the members of this record.
+     */
+    private void limitsChanged() {
+        hasLimits = false;
+    }
+
+    /**
+     * Variable registering whether the temperature range of the members of
+     * this record is up to date.
+     */
+    private boolean hasLimits = false;
+
+    /**
+     * Variable registering the highest minimum temperature of the members
+     * of this record.
+     */
+    private double lowestTemperature;
+
+    /**
+     * Variable registering the lowest maximum temperature of the members
+     * of this record.
+     */
+    private double highestTemperature;
+
+    /**
+     * Return the boundary of the area of this record as cached by this
+     * record, or null if it has to be recomputed.
+     */
+    @Basic
+    Set<Square> getBoundary() {
+        return boundary;
+    }
+
+    /**
+     * Cache the given boundary of the area of this record.
+     *
+     * @param boundary
+     * The boundary to cache.
+     */
+    void setBoundary(Set<Square> boundary) {
+        this.boundary = boundary;
+    }
+
+    /**
+     * Variable referencing the cached boundary of the area of this record,
+     * or null if it has to be recomputed.
+     */
+    private Set<Square> boundary = null;
+
+    /**
+     * Return the version of this record.
+     * The version changes whenever the members of this record, their 
+     * climates or temperature limits, or those of the squares bordering 
+     * on them may have changed.
+     */
+    @Basic
+    long getVersion() {
+        return version;
+    }
+
+    /**
+     * Checks whether the area of this record is known to be equilibrated.
+     *
+     * @return
+     * True iff the area of this record was found to be equilibrated at its 
+     * current version.
+     */
+    boolean isKnownEquilibrated() {
+        return equilibratedVersion == version;
+    }
+
+    /**
+     * Register that the area of this record was found to be equilibrated 
+     * at the given version.
+     *
+     * @param version
+     * The version at which the area was checked.
+     */
+    void setEquilibratedAt(long version) {
+        equilibratedVersion = version;
+    }
+
+    /**
+     * Variable registering the version of this record.
+     */
+    private long version = 0;
+
+    /**
+     * Variable registering the version at which the area of this record 
+     * was last found to be equilibrated.
+     */
+    private long equilibratedVersion = -1;
+
+    /**
+     * Return the members of this record as an array. The index of a member
+     * in this array is its id within this record.
+     * The resulting array is owned by this record and must not be
+     * modified. It stays valid until the members of this record change.
+     *
+     * @return
+     * An array holding each member of this record exactly once, in the
+     * iteration order of the members of this record.
+     */
+    SquareImpl[] getMemberArray() {
+        if (memberArray == null) {
+            memberArray = members.toArray(new SquareImpl[members.size()]);
+            temperatureBuffer = new double[memberArray.length];
+            humidityBuffer = new int[memberArray.length];
+        }
+        return memberArray;
+    }
+
+    /**
+     * Return an array with room for a temperature for each member of this
+     * record, indexed by their id.
+     * The resulting array is owned by this record and serves as scratch
+     * space for a single equilibration at a time.
+     */
+    double[] getTemperatureBuffer() {
+        getMemberArray();
+        return temperatureBuffer;
+    }
+
+    /**
+     * Return an array with room for a humidity for each member of this
+     * record, indexed by their id.
+     * The resulting array is owned by this record and serves as scratch
+     * space for a single equilibration at a time.
+     */
+    int[] getHumidityBuffer() {
+        getMemberArray();
+        return humidityBuffer;
+    }
+
+    /**
+     * Variable referencing the members of this record by their id, or null
+     * if they have to be recomputed.
+     */
+    private SquareImpl[] memberArray = null;
+
+    /**
+     * Variables referencing scratch space for the climates of the members
+     * of this record, indexed by their id.
+     */
+    private double[] temperatureBuffer;
+    private int[] humidityBuffer;
+
+    /**
+     * Variable referencing the squares of this record.
+     */
+    private final Set<Square> members = new HashSet<Square>();
+
+    /**
+     * Variable registering whether the members of this record may span
+     * more than one area.
+     */
+    private boolean isStale = false;
+
+    /**
+     * Add the given navigation watch to this record, if it is not
+     * registered with this record yet.
+     *
+     * @param watch
+     * The navigation watch to add.
+     */
+    private void addNavigationWatch(WeakReference<AtomicLong> watch) {
+        pruneNavigationWatches();
+        if (watch.get() == null)
+            return;
+        if (navigationWatches == null)
+            navigationWatches = new ArrayList<WeakReference<AtomicLong>>(1);
+        else if (navigationWatches.contains(watch))
+            return;
+        navigationWatches.add(watch);
+    }
+
+    /**
+     * Register the navigation watches of the given record with this
+     * record as well.
+     *
+     * @param other
+     * The record whose navigation watches to copy.
+     */
+    private void copyNavigationWatchesOf(AreaRecord other) {
+        other.pruneNavigationWatches();
+        if (other.navigationWatches != null)
+            navigationWatches = new ArrayList<WeakReference<AtomicLong>>(
+                                                    other.navigationWatches);
+    }
+
+    /**
+     * Increment the navigation version of each navigation watch of this
+     * record that has not been cleared.
+     */
+    private void navigationChanged() {
+        pruneNavigationWatches();
+        if (navigationWatches != null)
+            for (WeakReference<AtomicLong> watch : navigationWatches) {
+                AtomicLong version = watch.get();
+                if (version != null)
+                    version.incrementAndGet();
+            }
+    }
+
+    /**
+     * Remove the navigation watches of this record that have been
+     * cleared.
+     */
+    private void pruneNavigationWatches() {
+        if (navigationWatches == null)
+            return;
+        Iterator<WeakReference<AtomicLong>> iterator =
+                                                navigationWatches.iterator();
+        while (iterator.hasNext())
+            if (iterator.next().get() == null)
+                iterator.remove();
+        if (navigationWatches.isEmpty())
+            navigationWatches = null;
+    }
+
+    /**
+     * Variable referencing weak references to the navigation versions of
+     * the reachability indices that cover the members of this record, or
+     * null if there are none. Each index hands out a single reference per
+     * build, so references are compared by identity.
+     */
+    private List<WeakReference<AtomicLong>> navigationWatches = null;
+}
+
+// vim: ts=4:sw=4:expandtab:smarttab
@@ -0,0 +1,202 @@
+package rpg.square;
+
+import rpg.util.*;
+import rpg.exceptions.*;
+
+import static org.junit.Assert.*;
+import org.junit.*;
+
+import java.util.Set;
+import java.util.HashSet;
+
+/**
+ * A class collecting tests for the class of area records.
+ *
+ * @author Roald Frederickx
+ */
+public class AreaRecordTest {
+
+    private Square square1;
+    private Square square2;
+    private Square square3;
+
+    /**
+     * Set up a mutable test fixture of three squares in a row, from south 
+     * to north, that are connected through open borders.
+     */
+    @Before
+    public void setUpMutableFixture() {
+        square1 = new RegularSquare();
+        square2 = new RegularSquare();
+        square3 = new RegularSquare();
+        square1.mergeWith(square2, Direction.NORTH);
+        square2.mergeWith(square3, Direction.NORTH);
+    }
+
+    private static Set<Square> setOf(Square... squares) {
+        Set<Square> result = new HashSet<Square>();
+        for (Square square : squares)
+            result.add(square);
+        return result;
+    }
+
+    @Test
+    public void getArea_merged() {
+        assertEquals(setOf(square1, square2, square3), square1.getArea());
+        assertEquals(setOf(square1, square2, square3), square3.getArea());
+    }
+
+    @Test
+    public void getMemberArray_test() {
+        Door door = new Door(square2.getBorderAt(Direction.NORTH), false);
+        square1.getArea();
+        AreaRecord record = ((SquareImpl) square1).getAreaRecord();
+        SquareImpl[] members = record.getMemberArray();
+        assertEquals(setOf(square1, square2), setOf(members));
+        assertSame(members, record.getMemberArray());
+        assertEquals(2, record.getTemperatureBuffer().length);
+        door.open();
+        record = ((SquareImpl) square1).getAreaRecord();
+        assertEquals(setOf(square1, square2, square3),
+                                            setOf(record.getMemberArray()));
+        assertEquals(3, record.getHumidityBuffer().length);
+    }
+
+    @Test
+    public void getArea_doorOpenAndClose() {
+        Door door = new Door(square2.getBorderAt(Direction.NORTH), false);
+        assertEquals(setOf(square1, square2), square1.getArea());
+        assertEquals(setOf(square3), square3.getArea());
+        door.open();
+        assertEquals(setOf(square1, square2, square3), square3.getArea());
+        door.close();
+        assertEquals(setOf(square3), square3.getArea());
+        assertEquals(setOf(square1, square2), square2.getArea());
+    }
+
+    @Test
+    public void getArea_openDoor() {
+        new Door(square2.getBorderAt(Direction.NORTH), true);
+        assertEquals(setOf(square1, square2, square3), square1.getArea());
+        assertTrue(square1.myAreaIsEquilibrated());
+    }
+
+    @Test
+    public void getArea_wall() {
+        new Wall(square1.getBorderAt(Direction.NORTH));
+        assertEquals(setOf(square1), square1.getArea());
+        assertEquals(setOf(square2, square3), square3.getArea());
+        new OpenBorder(square1.getBorderAt(Direction.NORTH));
+        assertEquals(setOf(square1, square2, square3), square1.getArea());
+    }
+
+    @Test
+    public void getArea_terminate() {
+        square2.terminate();
+        assertEquals(setOf(square1), square1.getArea());
+        assertEquals(setOf(square3), square3.getArea());
+    }
+
+    @Test
+    public void setTemperature_spreadsOverArea() {
+        double old = square2.getTemperature().temperature();
+        square1.setTemperature(new Temperature(old + 30));
+        Temperature expected = new Temperature(old + 10);
+        assertEquals(expected, square1.getTemperature());
+        assertEquals(expected, square2.getTemperature());
+        assertEquals(expected, square3.getTemperature());
+        assertTrue(square3.myAreaIsEquilibrated());
+    }
+
+    @Test
+    public void setTemperature_violatesLimits() {
+        Temperature old = square2.getTemperature();
+        square3.setMaxTemperature(new Temperature(old.temperature() + 5));
+        try {
+            square1.setTemperature(new Temperature(old.temperature() + 30));
+            fail();
+        } catch (EquilibratingSquaresViolatesLimitsException e) {
+        }
+        assertEquals(old, square1.getTemperature());
+        assertEquals(old, square3.getTemperature());
+    }
+
+    @Test
+    public void setHumidity_unsharesClimate() {
+        int old = square2.getHumidity();
+        square1.setHumidity(old + 100);
+        assertEquals(old + 100, square1.getHumidity());
+        assertEquals(old, square2.getHumidity());
+        assertEquals(old, square3.getHumidity());
+        square1.equilibrateMyArea();
+        assertEquals(old + 33, square3.getHumidity());
+    }
+
+    @Test
+    public void myAreaIsEquilibrated_rawChange() {
+        assertTrue(square1.myAreaIsEquilibrated());
+        assertTrue(square1.myAreaIsEquilibrated());
+        square3.setTemperatureRaw(new Temperature(50));
+        assertFalse(square1.myAreaIsEquilibrated());
+        square3.equilibrateMyArea();
+        assertTrue(square1.myAreaIsEquilibrated());
+    }
+
+    @Test
+    public void myAreaIsEquilibrated_rockInBetween() {
+        Rock rock = new Rock();
+        Square other = new RegularSquare();
+        square3.mergeWith(rock, Direction.NORTH);
+        rock.mergeWith(other, Direction.NORTH);
+        assertTrue(square1.myAreaIsEquilibrated());
+        other.setTemperatureRaw(new Temperature(100));
+        assertFalse(square1.myAreaIsEquilibrated());
+        other.equilibrateMyArea();
+        assertTrue(square1.myAreaIsEquilibrated());
+    }
+
+    @Test
+    public void getTemperature_keptAfterSplit() {
+        square1.setTemperature(new Temperature(50));
+        Temperature shared = square2.getTemperature();
+        new Wall(square1.getBorderAt(Direction.NORTH));
+        assertEquals(shared, square1.getTemperature());
+        assertEquals(shared, square3.getTemperature());
+        square3.setTemperature(new Temperature(-10));
+        assertEquals(shared, square1.getTemperature());
+    }
+
+    @Test
+    public void close_splitsRightAway() {
+        Door door = new Door(square2.getBorderAt(Direction.NORTH), true);
+        AreaRecord record = ((SquareImpl) square1).getAreaRecord();
+        door.close();
+        assertSame(record, ((SquareImpl) square2).getAreaRecord());
+        assertNotSame(record, ((SquareImpl) square3).getAreaRecord());
+        assertEquals(setOf(square1, square2), square1.getArea());
+        assertEquals(setOf(square3), square3.getArea());
+        door.open();
+        assertEquals(setOf(square1, square2, square3), square3.getArea());
+    }
+
+    @Test
+    public void close_insideLoop() {
+        Square square4 = new RegularSquare();
+        Square square5 = new RegularSquare();
+        square1.mergeWith(square4, Direction.EAST);
+        square4.mergeWith(square5, Direction.NORTH);
+        square5.mergeWith(square2, Direction.WEST);
+        ReachabilityIndex index = new ReachabilityIndex(setOf(square1));
+        assertEquals(1, index.getNbComponents());
+        AreaRecord record = ((SquareImpl) square1).getAreaRecord();
+        Door door = new Door(square1.getBorderAt(Direction.NORTH), true);
+        door.close();
+        assertSame(record, ((SquareImpl) square2).getAreaRecord());
+        assertTrue(index.isUpToDate());
+        assertEquals(5, square3.getArea().size());
+        door.open();
+        assertTrue(index.isUpToDate());
+    }
+}
+
+// vim: ts=4:sw=4:expandtab:smarttab
@@ -41,7 +41,39 @@ public abstract class Border {
     @Raw
     public Border(Border border)
                 throws IllegalArgumentException, BorderConstraintsException {
+        replace(border);
+    }
+
+    /** 
+     * Create a new border that does not border any square yet.
+     * Subclasses whose own state must be initialized before any square 
+     * gets to see the new border use this constructor, and call 
+     * replace() once that state is set.
+     */
+    @Raw
+    protected Border() {
+    }
+
+    /** 
+     * Let this new border replace the given border.
+     * 
+     * @param border 
+     * The border to replace with this new border.
+     * @pre
+     *   | border != null  &amp;&amp;  !border.isTerminated()
+     * @pre
+     *   | this border does not border any square yet
+     * @post
+     *   | (new border).isTerminated()
+     * @effect
+     *   | for each square in old.border.getSquares() :
+     *   |      square.updateBorder(border, this)
+     */
+    @Raw @Model
+    protected void replace(Border border)
+                throws IllegalArgumentException, BorderConstraintsException {
         assert border != null  &&  !border.isTerminated();
+        assert squares == null;
         this.squares = new Couple<Square>(border.squares);
         for (Square square : getSquares())
             square.updateBorder(border, this);
@@ -395,6 +427,26 @@ public abstract class Border {
     @Basic
     public abstract String symbol();
 
+    /** 
+     * Returns the fraction of heat and humidity that leaks through this 
+     * border in a single tick of a climate diffusion, relative to an open 
+     * border.
+     *
+     * @return
+     * One if this border is open, or a fraction of its openness otherwise.
+     *   | if (isOpen())
+     *   |      then result == 1
+     *   |      else result == openness() / 100.0
+     * @note
+     * Closed borders are ordered by their openness, so a closed door 
+     * leaks more than a wall, without exposing the openness itself.
+     */
+    public double conductivity() {
+        if (isOpen())
+            return 1;
+        return openness() / 100.0;
+    }
+
     /** 
      * Returns the level of 'openness' of a border.
      *
@@ -0,0 +1,34 @@
+package rpg.square;
+
+import rpg.util.Direction;
+
+/**
+ * An interface of listeners that get notified when a square changes one of 
+ * its borders.
+ * Higher order structures (eg dungeons) can use this to keep information 
+ * about their squares up to date without having to rescan them.
+ *
+ * @author Roald Frederickx
+ */
+public interface BorderListener {
+
+    /** 
+     * Notify this listener that the border of the given square in the 
+     * given direction has changed.
+     * 
+     * @param square 
+     * The square whose border has changed.
+     * @param direction 
+     * The direction of the border that has changed.
+     * @param oldBorder 
+     * The old border of the given square in the given direction. This 
+     * border may be terminated by now.
+     * @param newBorder 
+     * The new border of the given square in the given direction, or null 
+     * if the given square is being terminated.
+     */
+    public void borderChanged(Square square, Direction direction,
+                              Border oldBorder, Border newBorder);
+}
+
+// vim: ts=4:sw=4:expandtab:smarttab
@@ -0,0 +1,467 @@
+package rpg.square;
+
+import rpg.util.Direction;
+
+import be.kuleuven.cs.som.annotate.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.Set;
+import java.util.IdentityHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A class of time-stepped diffusions of heat and humidity between areas.
+ * Within an area, climates still get equilibrated instantly. Between
+ * areas, heat and humidity leak gradually through the closed borders that
+ * separate them, and heat also leaks through the squares without an
+ * equilibrating interior (eg rocks).
+ * The areas are discovered once, when the diffusion is created, and get
+ * captured in flat primitive arrays: one node per area, and for each node
+ * the nodes it borders on together with the conductivity of each border
+ * in between. Each tick then reads the climates of all nodes from one
+ * set of arrays and writes their new climates to another, in parallel
+ * chunks on a fork/join pool, without touching any square. Only when the
+ * results are written back do the squares change.
+ * The areas of the given squares must not change while the diffusion is
+ * in use; create a new diffusion after doors open or borders change.
+ *
+ * @invar
+ *   | isValidRate(getRate())
+ *
+ * @author Roald Frederickx
+ */
+public final class ClimateDiffusion {
+
+    /**
+     * Create a new diffusion of the climates of the given squares, with
+     * the given rate.
+     *
+     * @param squares
+     * The squares whose climates to diffuse.
+     * @param rate
+     * The rate of this new diffusion.
+     * @post
+     *   | new.getRate() == rate
+     * @post
+     * Each area that contains one of the given squares that is not
+     * terminated is a node of this diffusion, starting from the average
+     * temperature and humidity of its squares. Each square without an
+     * equilibrating interior is a node on its own, without humidity.
+     * Borders with squares outside these areas are ignored.
+     * @throws IllegalArgumentException
+     *   | squares == null  ||  !isValidRate(rate)
+     */
+    public ClimateDiffusion(Iterable<? extends Square> squares, double rate)
+                                            throws IllegalArgumentException {
+        if (squares == null || !isValidRate(rate))
+            throw new IllegalArgumentException();
+        this.rate = rate;
+
+        List<SquareImpl> found = new ArrayList<SquareImpl>();
+        for (Square square : squares) {
+            if (square.isTerminated())
+                continue;
+            SquareImpl squareImpl = (SquareImpl) square;
+            Set<Square> area = AreaRecord.getAreaOf(squareImpl);
+            if (!nodes.containsKey(area)) {
+                nodes.put(area, found.size());
+                found.add(squareImpl);
+            }
+        }
+        int nbNodes = found.size();
+        representatives = found.toArray(new SquareImpl[nbNodes]);
+
+        temperatures = new double[nbNodes];
+        humidities = new double[nbNodes];
+        nextTemperatures = new double[nbNodes];
+        nextHumidities = new double[nbNodes];
+        lowestTemperatures = new double[nbNodes];
+        highestTemperatures = new double[nbNodes];
+        sizes = new int[nbNodes];
+        holdsHumidity = new boolean[nbNodes];
+        firstEdges = new int[nbNodes + 1];
+
+        int[] targets = new int[4 * nbNodes];
+        float[] conductivities = new float[4 * nbNodes];
+        int nbEdges = 0;
+        for (int node = 0; node < nbNodes; node++) {
+            firstEdges[node] = nbEdges;
+            double lowest = Double.NEGATIVE_INFINITY;
+            double highest = Double.POSITIVE_INFINITY;
+            double temperatureSum = 0;
+            double humiditySum = 0;
+            Set<Square> area = AreaRecord.getAreaOf(representatives[node]);
+            for (Square member : area) {
+                lowest = Math.max(lowest, member.getMinTemperatureValue());
+                highest = Math.min(highest, member.getMaxTemperatureValue());
+                temperatureSum += member.getTemperatureValue();
+                humiditySum += member.getHumidity();
+                for (Direction direction : DIRECTIONS) {
+                    Integer target = getNeighbourNode(member, direction);
+                    if (target == null || target == node)
+                        continue;
+                    if (nbEdges == targets.length) {
+                        targets = Arrays.copyOf(targets, 2 * nbEdges);
+                        conductivities = Arrays.copyOf(conductivities,
+                                                            2 * nbEdges);
+                    }
+                    targets[nbEdges] = target;
+                    conductivities[nbEdges] = (float)
+                                member.getBorderAt(direction).conductivity();
+                    nbEdges++;
+                }
+            }
+            sizes[node] = area.size();
+            lowestTemperatures[node] = lowest;
+            highestTemperatures[node] = highest;
+            temperatures[node] = temperatureSum / sizes[node];
+            humidities[node] = humiditySum / sizes[node];
+            holdsHumidity[node] =
+                            representatives[node].hasEquilibratingInterior();
+        }
+        firstEdges[nbNodes] = nbEdges;
+        this.targets = Arrays.copyOf(targets, nbEdges);
+        this.conductivities = Arrays.copyOf(conductivities, nbEdges);
+    }
+
+    /**
+     * Return the node of the square that borders on the given square in
+     * the given direction through a closed border, if any.
+     *
+     * @param square
+     * The square whose neighbour to look up.
+     * @param direction
+     * The direction of the neighbour.
+     * @return
+     * The node of the neighbour, or null if there is no neighbour in this
+     * diffusion, or if the border in between is open.
+     */
+    private Integer getNeighbourNode(Square square, Direction direction) {
+        Border border = square.getBorderAt(direction);
+        if (border == null || border.isOpen())
+            return null;
+        Square neighbour = border.getNeighbour(square);
+        if (neighbour == null)
+            return null;
+        return nodes.get(AreaRecord.getAreaOf((SquareImpl) neighbour));
+    }
+
+    /**
+     * Return the number of nodes of this diffusion.
+     */
+    @Basic
+    public int getNbNodes() {
+        return representatives.length;
+    }
+
+    /**
+     * Return the temperature of the node of the given square in this
+     * diffusion, in degrees Celcius.
+     *
+     * @param square
+     * The square whose temperature to return.
+     * @throws IllegalArgumentException
+     * The given square is not part of a node of this diffusion.
+     */
+    public double getTemperatureValue(Square square)
+                                            throws IllegalArgumentException {
+        return temperatures[getNodeOf(square)];
+    }
+
+    /**
+     * Return the humidity of the node of the given square in this
+     * diffusion, in hundredths of a percent.
+     *
+     * @param square
+     * The square whose humidity to return.
+     * @throws IllegalArgumentException
+     * The given square is not part of a node of this diffusion.
+     */
+    public double getHumidity(Square square)
+                                            throws IllegalArgumentException {
+        return humidities[getNodeOf(square)];
+    }
+
+    /**
+     * Return the node of the given square in this diffusion.
+     *
+     * @param square
+     * The square whose node to return.
+     * @throws IllegalArgumentException
+     * The given square is not part of a node of this diffusion.
+     */
+    private int getNodeOf(Square square) throws IllegalArgumentException {
+        if (!(square instanceof SquareImpl) || square.isTerminated())
+            throw new IllegalArgumentException("Square is not diffused");
+        int node = getNodeOfArea(AreaRecord.getAreaOf((SquareImpl) square));
+        if (node < 0)
+            throw new IllegalArgumentException("Square is not diffused");
+        return node;
+    }
+
+    /**
+     * Return the node of the given area in this diffusion, or -1 if the
+     * given area is not a node of this diffusion.
+     *
+     * @param area
+     * The area whose node to return, as kept by its area record.
+     */
+    private int getNodeOfArea(Set<Square> area) {
+        Integer node = nodes.get(area);
+        if (node == null)
+            return -1;
+        return node;
+    }
+
+    /**
+     * Return the rate of this diffusion.
+     * Each tick, each node takes in this fraction of the difference
+     * between its climate and that of each of its neighbours, weighted by
+     * the conductivity of the border in between and divided by the number
+     * of squares of the node.
+     */
+    @Basic @Immutable
+    public double getRate() {
+        return rate;
+    }
+
+    /**
+     * Checks whether the given rate is a valid rate for any diffusion.
+     * The upper bound keeps a tick from overshooting: a square has at most
+     * six closed borders, none of which conducts more than a closed door.
+     *
+     * @param rate
+     * The rate to check.
+     * @return
+     *   | result == (0 &lt; rate  &amp;&amp;  rate &lt;= MAX_RATE)
+     */
+    public static boolean isValidRate(double rate) {
+        return 0 < rate && rate <= MAX_RATE;
+    }
+
+    /**
+     * Constant registering the highest rate of any diffusion.
+     */
+    public static final double MAX_RATE = 0.5;
+
+    /**
+     * Variable registering the rate of this diffusion.
+     */
+    private final double rate;
+
+    /**
+     * Advance the climates of the nodes of this diffusion by one tick.
+     *
+     * @post
+     * Each node takes in heat from, or gives it to, each node it borders
+     * on, in proportion to their difference in temperature, to the rate
+     * of this diffusion and to the conductivity of the border in between.
+     * Nodes that both hold humidity exchange humidity in the same way.
+     * The resulting temperature is coerced to the limits of the node.
+     * @note
+     * The squares themselves are left untouched until writeBack().
+     */
+    public void tick() {
+        pool.invoke(new Tick(0, getNbNodes()));
+        double[] swap = temperatures;
+        temperatures = nextTemperatures;
+        nextTemperatures = swap;
+        swap = humidities;
+        humidities = nextHumidities;
+        nextHumidities = swap;
+    }
+
+    /**
+     * Advance the climates of the nodes of this diffusion by the given
+     * number of ticks.
+     *
+     * @param nbTicks
+     * The number of ticks to advance.
+     * @effect
+     *   | for i in 1..nbTicks :
+     *   |      tick()
+     */
+    public void tick(int nbTicks) {
+        for (int i = 0; i < nbTicks; i++)
+            tick();
+    }
+
+    /**
+     * Compute the next climate of the nodes with an index from the given
+     * start, inclusive, to the given end, exclusive.
+     *
+     * @param start
+     * The first node to compute.
+     * @param end
+     * The node after the last node to compute.
+     */
+    private void computeNextClimates(int start, int end) {
+        for (int node = start; node < end; node++) {
+            double temperature = temperatures[node];
+            double humidity = humidities[node];
+            double temperatureFlow = 0;
+            double humidityFlow = 0;
+            boolean holds = holdsHumidity[node];
+            for (int edge = firstEdges[node]; edge < firstEdges[node + 1];
+                                                                    edge++) {
+                int target = targets[edge];
+                double conductivity = conductivities[edge];
+                temperatureFlow += conductivity
+                                    * (temperatures[target] - temperature);
+                if (holds && holdsHumidity[target])
+                    humidityFlow += conductivity
+                                    * (humidities[target] - humidity);
+            }
+            double factor = rate / sizes[node];
+            nextTemperatures[node] = Math.min(highestTemperatures[node],
+                                Math.max(lowestTemperatures[node],
+                                    temperature + factor * temperatureFlow));
+            nextHumidities[node] = humidity + factor * humidityFlow;
+        }
+    }
+
+    /**
+     * A class of fork/join tasks that compute the next climate of a range
+     * of nodes of this diffusion.
+     */
+    private class Tick extends RecursiveAction {
+
+        /**
+         * Create a new task for the nodes with an index from the given
+         * start, inclusive, to the given end, exclusive.
+         */
+        Tick(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start > SEQUENTIAL_THRESHOLD) {
+                int middle = (start + end) >>> 1;
+                invokeAll(new Tick(start, middle), new Tick(middle, end));
+                return;
+            }
+            computeNextClimates(start, end);
+        }
+
+        /**
+         * Variables registering the range of nodes of this task.
+         */
+        private final int start, end;
+
+        private static final long serialVersionUID = 1L;
+    }
+
+    /**
+     * Write the climates of the nodes of this diffusion back to their
+     * squares.
+     *
+     * @effect
+     * Each area of this diffusion gets its temperature, and its humidity
+     * rounded to an integer, after which the squares bordering on it are
+     * notified. Squares without an equilibrating interior derive their
+     * climate from their neighbours and are left to do so.
+     * @throws IllegalStateException
+     * The areas of the squares of this diffusion have changed since this
+     * diffusion was created. The areas that were written back before the
+     * change was detected keep their new climate.
+     */
+    public void writeBack() throws IllegalStateException {
+        for (int node = 0; node < getNbNodes(); node++) {
+            SquareImpl square = representatives[node];
+            if (!holdsHumidity[node])
+                continue;
+            if (square.isTerminated()
+                        || getNodeOfArea(AreaRecord.getAreaOf(square)) != node)
+                throw new IllegalStateException("Areas have changed");
+            square.new Area().setClimate(temperatures[node],
+                                    (int) Math.round(humidities[node]));
+        }
+    }
+
+    /**
+     * Variable referencing a square of each node of this diffusion.
+     */
+    private final SquareImpl[] representatives;
+
+    /**
+     * Variable referencing the index of the node of each area of this
+     * diffusion. The areas are the sets of squares kept by their area
+     * records, so they are looked up by identity.
+     */
+    private final Map<Set<Square>, Integer> nodes =
+                                new IdentityHashMap<Set<Square>, Integer>();
+
+    /**
+     * Variables referencing the current temperature and humidity of each
+     * node of this diffusion.
+     */
+    private double[] temperatures, humidities;
+
+    /**
+     * Variables referencing the arrays that the next tick writes the
+     * temperature and humidity of each node of this diffusion to.
+     */
+    private double[] nextTemperatures, nextHumidities;
+
+    /**
+     * Variables referencing the temperature range that all squares of each
+     * node of this diffusion can have.
+     */
+    private final double[] lowestTemperatures, highestTemperatures;
+
+    /**
+     * Variable referencing the number of squares of each node of this
+     * diffusion.
+     */
+    private final int[] sizes;
+
+    /**
+     * Variable registering whether each node of this diffusion holds
+     * humidity.
+     */
+    private final boolean[] holdsHumidity;
+
+    /**
+     * Variable referencing the index of the first edge of each node of
+     * this diffusion, followed by the total number of edges.
+     * The edges of a node are the closed borders through which it borders
+     * on another node. They are stored contiguously.
+     */
+    private final int[] firstEdges;
+
+    /**
+     * Variable referencing the node on the other side of each edge of this
+     * diffusion.
+     */
+    private final int[] targets;
+
+    /**
+     * Variable referencing the conductivity of the border of each edge of
+     * this diffusion.
+     */
+    private final float[] conductivities;
+
+    /**
+     * Constant referencing all directions.
+     */
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    /**
+     * Constant registering the number of nodes below which a task computes
+     * their next climate itself rather than forking.
+     */
+    private static final int SEQUENTIAL_THRESHOLD = 1024;
+
+    /**
+     * Constant referencing the common fork/join pool.
+     */
+    private static final ForkJoinPool pool = ForkJoinPool.commonPool();
+}
+
+// vim: ts=4:sw=4:expandtab:smarttab
@@ -0,0 +1,174 @@
+package rpg.square;
+
+import rpg.util.*;
+
+import static org.junit.Assert.*;
+import org.junit.*;
+
+import java.util.List;
+import java.util.ArrayList;
+
+/**
+ * A class collecting tests for the class of climate diffusions.
+ *
+ * @author Roald Frederickx
+ */
+public class ClimateDiffusionTest {
+
+    private Square hot;
+    private Square cold;
+    private List<Square> squares;
+
+    /**
+     * Set up a mutable test fixture of a hot and a cold square, separated
+     * by a wall.
+     */
+    @Before
+    public void setUpMutableFixture() {
+        hot = new RegularSquare();
+        cold = new RegularSquare();
+        hot.mergeWith(cold, Direction.NORTH);
+        new Wall(hot.getBorderAt(Direction.NORTH));
+        hot.setTemperature(new Temperature(100));
+        cold.setTemperature(new Temperature(0));
+        hot.setHumidity(5000);
+        cold.setHumidity(1000);
+        squares = new ArrayList<Square>();
+        squares.add(hot);
+        squares.add(cold);
+    }
+
+    @Test
+    public void constructor_legal() {
+        ClimateDiffusion diffusion = new ClimateDiffusion(squares, 0.5);
+        assertEquals(2, diffusion.getNbNodes());
+        assertEquals(0.5, diffusion.getRate(), 0);
+        assertEquals(100, diffusion.getTemperatureValue(hot), 0);
+        assertEquals(1000, diffusion.getHumidity(cold), 0);
+    }
+
+    @Test (expected = IllegalArgumentException.class)
+    public void constructor_null() {
+        new ClimateDiffusion(null, 0.5);
+    }
+
+    @Test (expected = IllegalArgumentException.class)
+    public void constructor_illegalRate() {
+        new ClimateDiffusion(squares, 0.6);
+    }
+
+    @Test (expected = IllegalArgumentException.class)
+    public void getTemperatureValue_notDiffused() {
+        new ClimateDiffusion(squares, 0.5).getTemperatureValue(
+                                                        new RegularSquare());
+    }
+
+    @Test
+    public void isValidRate_test() {
+        assertTrue(ClimateDiffusion.isValidRate(ClimateDiffusion.MAX_RATE));
+        assertFalse(ClimateDiffusion.isValidRate(0));
+        assertFalse(ClimateDiffusion.isValidRate(Double.NaN));
+    }
+
+    @Test
+    public void tick_wall() {
+        ClimateDiffusion diffusion = new ClimateDiffusion(squares, 0.5);
+        diffusion.tick();
+        assertEquals(95, diffusion.getTemperatureValue(hot), 1e-4);
+        assertEquals(5, diffusion.getTemperatureValue(cold), 1e-4);
+        assertEquals(4800, diffusion.getHumidity(hot), 1e-4);
+        assertEquals(1200, diffusion.getHumidity(cold), 1e-4);
+        assertEquals(new Temperature(100), hot.getTemperature());
+        diffusion.tick(200);
+        assertEquals(50, diffusion.getTemperatureValue(hot), 1e-3);
+        assertEquals(50, diffusion.getTemperatureValue(cold), 1e-3);
+    }
+
+    @Test
+    public void tick_closedDoor() {
+        new Door(hot.getBorderAt(Direction.NORTH), false);
+        ClimateDiffusion diffusion = new ClimateDiffusion(squares, 0.5);
+        diffusion.tick();
+        assertEquals(90, diffusion.getTemperatureValue(hot), 1e-4);
+        assertEquals(10, diffusion.getTemperatureValue(cold), 1e-4);
+    }
+
+    @Test
+    public void tick_limits() {
+        cold.setMaxTemperature(new Temperature(3));
+        ClimateDiffusion diffusion = new ClimateDiffusion(squares, 0.5);
+        diffusion.tick();
+        assertEquals(3, diffusion.getTemperatureValue(cold), 0);
+    }
+
+    @Test
+    public void tick_rockInBetween() {
+        Rock rock = new Rock();
+        Square far = new RegularSquare();
+        cold.mergeWith(rock, Direction.NORTH);
+        rock.mergeWith(far, Direction.NORTH);
+        squares.add(rock);
+        squares.add(far);
+        cold.setTemperature(new Temperature(100));
+        far.setTemperature(new Temperature(0));
+        far.setHumidity(1000);
+        assertEquals(new Temperature(50), rock.getTemperature());
+        ClimateDiffusion diffusion = new ClimateDiffusion(squares, 0.5);
+        assertEquals(4, diffusion.getNbNodes());
+        diffusion.tick();
+        assertEquals(97.5, diffusion.getTemperatureValue(cold), 1e-4);
+        assertEquals(50, diffusion.getTemperatureValue(rock), 1e-4);
+        assertEquals(2.5, diffusion.getTemperatureValue(far), 1e-4);
+        assertEquals(0, diffusion.getHumidity(rock), 0);
+        assertEquals(1000, diffusion.getHumidity(far), 1e-4);
+    }
+
+    @Test
+    public void tick_manyAreas() {
+        List<Square> pairs = new ArrayList<Square>();
+        for (int i = 0; i < 2000; i++) {
+            Square south = new RegularSquare();
+            Square north = new RegularSquare();
+            south.mergeWith(north, Direction.NORTH);
+            new Wall(south.getBorderAt(Direction.NORTH));
+            south.setTemperature(new Temperature(i));
+            north.setTemperature(new Temperature(0));
+            pairs.add(south);
+            pairs.add(north);
+        }
+        ClimateDiffusion diffusion = new ClimateDiffusion(pairs, 0.5);
+        assertEquals(4000, diffusion.getNbNodes());
+        diffusion.tick();
+        for (int i = 0; i < 2000; i++)
+            assertEquals(0.05 * i,
+                    diffusion.getTemperatureValue(pairs.get(2 * i + 1)), 1e-4);
+    }
+
+    @Test
+    public void writeBack_test() {
+        Square neighbour = new RegularSquare();
+        neighbour.setHumidity(5000);
+        neighbour.setTemperature(new Temperature(100));
+        hot.mergeWith(neighbour, Direction.SOUTH);
+        new OpenBorder(hot.getBorderAt(Direction.SOUTH));
+        ClimateDiffusion diffusion = new ClimateDiffusion(squares, 0.5);
+        assertEquals(2, diffusion.getNbNodes());
+        diffusion.tick();
+        diffusion.writeBack();
+        assertEquals(new Temperature(97.5), hot.getTemperature());
+        assertEquals(new Temperature(97.5), neighbour.getTemperature());
+        assertEquals(new Temperature(5), cold.getTemperature());
+        assertEquals(4900, hot.getHumidity());
+        assertTrue(hot.myAreaIsEquilibrated());
+        assertTrue(cold.myAreaIsEquilibrated());
+    }
+
+    @Test (expected = IllegalStateException.class)
+    public void writeBack_areasChanged() {
+        ClimateDiffusion diffusion = new ClimateDiffusion(squares, 0.5);
+        new Door(hot.getBorderAt(Direction.NORTH), true);
+        diffusion.writeBack();
+    }
+}
+
+// vim: ts=4:sw=4:expandtab:smarttab
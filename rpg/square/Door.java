@@ -21,13 +21,14 @@ public class Door extends Border{
      * @post
      *   | new.isOpen() == isOpened
      * @effect
-     *   | super(border)
+     *   | replace(border)
      */
     @Raw
     public Door(Border border, boolean isOpened)
                 throws IllegalArgumentException, BorderConstraintsException {
-        super(border);
+        //set the openness first, so the squares see the final door
         this.isOpened = isOpened;
+        replace(border);
     }
 
     /** 
@@ -94,14 +95,18 @@ public class Door extends Border{
      * @post
      *   | new.isOpened() == true
      * @effect
-     *   | if (isSharedByTwoSquares())
+     *   | if (isSharedByTwoSquares()  &amp;&amp;  !EquilibrationBatch.isOpen())
      *   |      then getASquare().equilibrateMyArea()
      */
     @Raw
     public void open() {
         isOpened = true;
-        if (isSharedByTwoSquares())
-            getASquare().equilibrateMyArea();
+        if (isSharedByTwoSquares()) {
+            Square square = getASquare();
+            AreaRecord.connect(square, getNeighbour(square));
+            if (!EquilibrationBatch.defer(square))
+                square.equilibrateMyArea();
+        }
     }
 
     /**
@@ -112,7 +117,12 @@ public class Door extends Border{
      */
     @Raw
     public void close() {
+        boolean wasOpened = isOpened;
         this.isOpened = false;
+        if (wasOpened && !isTerminated() && isSharedByTwoSquares()) {
+            Square square = getASquare();
+            AreaRecord.disconnect(square, getNeighbour(square));
+        }
     }
     
     /**
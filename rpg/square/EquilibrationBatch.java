@@ -0,0 +1,261 @@
+package rpg.square;
+
+import rpg.exceptions.*;
+
+import be.kuleuven.cs.som.annotate.*;
+
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Set;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+
+/**
+ * A class of batches that postpone the equilibration of areas.
+ * While a batch is open on the current thread, squares that change a
+ * border, their temperature or their humidity do not equilibrate their
+ * area right away, but register themselves with the batch instead. When
+ * the outermost batch gets closed, each distinct area that contains a
+ * registered square gets equilibrated exactly once.
+ * This is meant for bulk operations that change many borders or climates
+ * in a row (eg loading a complete level, or a heat wave), where
+ * equilibrating after every single change would be wasted work.
+ * If equilibrating one of the areas fails, the temperatures and
+ * humidities of all squares involved are rolled back to what they were
+ * before the batch was opened. Border changes are kept.
+ * Squares that cache a climate derived from their neighbours, such as
+ * rocks, get refreshed once, after all areas have been equilibrated,
+ * rather than once for each area they border on.
+ *
+ * @author Roald Frederickx
+ */
+public final class EquilibrationBatch {
+
+    /**
+     * Create a new, empty equilibration batch.
+     */
+    private EquilibrationBatch() {
+    }
+
+    /**
+     * Open a batch on the current thread. Batches may be nested, only the
+     * outermost batch equilibrates areas when it is closed.
+     *
+     * @post
+     *   | isOpen()
+     */
+    public static void begin() {
+        EquilibrationBatch batch = current.get();
+        if (batch == null) {
+            batch = new EquilibrationBatch();
+            current.set(batch);
+        }
+        batch.depth++;
+    }
+
+    /**
+     * Close the innermost batch on the current thread.
+     *
+     * @effect
+     * If this closes the outermost batch, the area of each square that was
+     * registered with it and that is not terminated gets equilibrated,
+     * once for each distinct area.
+     * @throws IllegalStateException
+     *   | !isOpen()
+     * @throws EquilibratingSquaresViolatesLimitsException
+     * Equilibrating one of the areas violates the temperature or humidity
+     * limits of one of its squares. The batch is closed regardless. The
+     * squares of all these areas and their boundaries get back the
+     * temperatures and humidities they had before the batch was opened.
+     */
+    public static void end() throws IllegalStateException,
+                                EquilibratingSquaresViolatesLimitsException {
+        EquilibrationBatch batch = current.get();
+        if (batch == null)
+            throw new IllegalStateException("No open batch");
+        batch.depth--;
+        if (batch.depth > 0)
+            return;
+        current.remove();
+        closing.set(batch);
+        try {
+            batch.equilibrate();
+        } finally {
+            closing.remove();
+            for (SquareImpl square : batch.stale)
+                square.refreshClimate();
+        }
+    }
+
+    /**
+     * Checks whether a batch is open on the current thread.
+     */
+    public static boolean isOpen() {
+        return current.get() != null;
+    }
+
+    /**
+     * Register the given square with the open batch of the current thread,
+     * if any.
+     *
+     * @param square
+     * The square whose area needs equilibration.
+     * @return
+     * True iff a batch was open, in which case it will take care of
+     * equilibrating the area of the given square.
+     *   | result == isOpen()
+     */
+    static boolean defer(Square square) {
+        EquilibrationBatch batch = current.get();
+        if (batch == null)
+            return false;
+        batch.pending.add(square);
+        return true;
+    }
+
+    /**
+     * Register that the climate of the given square is about to change
+     * while a batch is open on the current thread, if any.
+     *
+     * @param square
+     * The square whose temperature or humidity is about to change.
+     * @return
+     * True iff a batch was open, in which case it remembers the climate
+     * that the given square had before its first change in the batch.
+     *   | result == isOpen()
+     */
+    static boolean recordClimate(Square square) {
+        EquilibrationBatch batch = current.get();
+        if (batch == null)
+            return false;
+        batch.remember(square, batch.oldTemperatures, batch.oldHumidities);
+        return true;
+    }
+
+    /**
+     * Register the given square, whose cached climate has become stale,
+     * with the batch that is being closed on the current thread, if any.
+     *
+     * @param square
+     * The square to refresh.
+     * @return
+     * True iff a batch is being closed, in which case it refreshes the
+     * given square once it has equilibrated all its areas.
+     */
+    static boolean deferRefresh(SquareImpl square) {
+        EquilibrationBatch batch = closing.get();
+        if (batch == null)
+            return false;
+        batch.stale.add(square);
+        return true;
+    }
+
+    /**
+     * Remember the current climate of the given square in the given maps,
+     * unless they already hold a climate for it.
+     *
+     * @param square
+     * The square whose climate to remember.
+     * @param temperatures
+     * The map of temperatures to add to.
+     * @param humidities
+     * The map of humidities to add to.
+     */
+    private void remember(Square square,
+                            Map<Square, Double> temperatures,
+                            Map<Square, Integer> humidities) {
+        if (temperatures.containsKey(square))
+            return;
+        temperatures.put(square, square.getTemperatureValue());
+        humidities.put(square, square.getHumidity());
+    }
+
+    /**
+     * Equilibrate each distinct area of the pending squares of this batch
+     * once, rolling back all climates if that fails.
+     */
+    private void equilibrate()
+                        throws EquilibratingSquaresViolatesLimitsException {
+        List<Square> representatives = new ArrayList<Square>();
+        Map<Square, Double> temperatures =
+                    new LinkedHashMap<Square, Double>(oldTemperatures);
+        Map<Square, Integer> humidities =
+                    new LinkedHashMap<Square, Integer>(oldHumidities);
+        Set<Square> done = new HashSet<Square>();
+        for (Square square : pending) {
+            if (square.isTerminated() || done.contains(square))
+                continue;
+            Set<Square> area = square.getArea();
+            done.addAll(area);
+            representatives.add(square);
+            for (Square member : area)
+                remember(member, temperatures, humidities);
+        }
+        for (Square square : representatives)
+            for (Square neighbour : square.getAreaBoundary())
+                remember(neighbour, temperatures, humidities);
+
+        try {
+            for (Square square : representatives)
+                square.equilibrateMyArea();
+        } catch (EquilibratingSquaresViolatesLimitsException e) {
+            for (Map.Entry<Square, Double> entry :
+                                                temperatures.entrySet()) {
+                SquareImpl square = (SquareImpl) entry.getKey();
+                if (square.isTerminated())
+                    continue;
+                AreaRecord.unshareClimateOf(square);
+                square.setClimateRaw(entry.getValue(),
+                                            humidities.get(square));
+                square.climateChanged();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Variable registering the nesting depth of this batch.
+     */
+    private int depth = 0;
+
+    /**
+     * Variable referencing the squares whose area needs equilibration.
+     */
+    private final List<Square> pending = new ArrayList<Square>();
+
+    /**
+     * Variable referencing the temperatures that the squares whose climate
+     * changed in this batch had before their first change.
+     */
+    private final Map<Square, Double> oldTemperatures =
+                                    new LinkedHashMap<Square, Double>();
+
+    /**
+     * Variable referencing the humidities that the squares whose climate
+     * changed in this batch had before their first change.
+     */
+    private final Map<Square, Integer> oldHumidities =
+                                    new LinkedHashMap<Square, Integer>();
+
+    /**
+     * Variable referencing the squares whose cached climate has become
+     * stale while this batch is being closed.
+     */
+    private final Set<SquareImpl> stale = new LinkedHashSet<SquareImpl>();
+
+    /**
+     * Variable referencing the open batch of each thread.
+     */
+    private static final ThreadLocal<EquilibrationBatch> current =
+                                    new ThreadLocal<EquilibrationBatch>();
+
+    /**
+     * Variable referencing the batch that is being closed on each thread.
+     */
+    private static final ThreadLocal<EquilibrationBatch> closing =
+                                    new ThreadLocal<EquilibrationBatch>();
+}
+
+// vim: ts=4:sw=4:expandtab:smarttab
@@ -0,0 +1,123 @@
+package rpg.square;
+
+import rpg.util.*;
+import rpg.exceptions.*;
+
+import static org.junit.Assert.*;
+import org.junit.*;
+
+/**
+ * A class collecting tests for the class of equilibration batches.
+ *
+ * @author Roald Frederickx
+ */
+public class EquilibrationBatchTest {
+
+    private Square square_T0;
+    private Square square_T100;
+
+    @Before
+    public void setUpMutableFixture() {
+        square_T0 = new RegularSquare(new Temperature(0), 5000);
+        square_T100 = new RegularSquare(new Temperature(100), 5000);
+    }
+
+    @Test
+    public void mergeWith_postponed() {
+        EquilibrationBatch.begin();
+        assertTrue(EquilibrationBatch.isOpen());
+        square_T0.mergeWith(square_T100, Direction.NORTH);
+        assertEquals(new Temperature(0), square_T0.getTemperature());
+        assertEquals(new Temperature(100), square_T100.getTemperature());
+        EquilibrationBatch.end();
+        assertFalse(EquilibrationBatch.isOpen());
+        assertEquals(new Temperature(50), square_T0.getTemperature());
+        assertTrue(square_T0.myAreaIsEquilibrated());
+    }
+
+    @Test
+    public void nested() {
+        EquilibrationBatch.begin();
+        EquilibrationBatch.begin();
+        square_T0.mergeWith(square_T100, Direction.NORTH);
+        EquilibrationBatch.end();
+        assertTrue(EquilibrationBatch.isOpen());
+        assertEquals(new Temperature(0), square_T0.getTemperature());
+        EquilibrationBatch.end();
+        assertEquals(new Temperature(50), square_T100.getTemperature());
+    }
+
+    @Test
+    public void terminatedSquaresAreSkipped() {
+        EquilibrationBatch.begin();
+        square_T0.mergeWith(square_T100, Direction.NORTH);
+        square_T0.terminate();
+        EquilibrationBatch.end();
+        assertEquals(new Temperature(100), square_T100.getTemperature());
+    }
+
+    @Test
+    public void setTemperature_postponed() {
+        square_T0.mergeWith(square_T100, Direction.NORTH);
+        EquilibrationBatch.begin();
+        square_T0.setTemperature(new Temperature(80));
+        square_T100.setTemperature(new Temperature(40));
+        assertEquals(new Temperature(80), square_T0.getTemperature());
+        EquilibrationBatch.end();
+        assertEquals(new Temperature(60), square_T100.getTemperature());
+        assertTrue(square_T0.myAreaIsEquilibrated());
+    }
+
+    @Test
+    public void setHumidity_postponed() {
+        square_T0.mergeWith(square_T100, Direction.NORTH);
+        EquilibrationBatch.begin();
+        square_T0.setHumidity(7000);
+        EquilibrationBatch.end();
+        assertEquals(6000, square_T100.getHumidity());
+    }
+
+    @Test
+    public void end_rollsBackClimates() {
+        square_T0.mergeWith(square_T100, Direction.NORTH);
+        square_T100.setMaxTemperature(new Temperature(60));
+        EquilibrationBatch.begin();
+        square_T0.setTemperature(new Temperature(90));
+        square_T0.setHumidity(6000);
+        try {
+            EquilibrationBatch.end();
+            fail();
+        } catch (EquilibratingSquaresViolatesLimitsException e) {
+        }
+        assertFalse(EquilibrationBatch.isOpen());
+        assertEquals(new Temperature(50), square_T0.getTemperature());
+        assertEquals(5000, square_T0.getHumidity());
+        assertEquals(new Temperature(50), square_T100.getTemperature());
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void end_rollsBackRawMerges() {
+        Square square_T200 = new RegularSquare(new Temperature(200), 5000);
+        square_T0.setMaxTemperature(new Temperature(60));
+        EquilibrationBatch.begin();
+        square_T0.mergeTemperatures(square_T100);
+        assertEquals(new Temperature(50), square_T100.getTemperature());
+        square_T0.mergeWith(square_T200, Direction.NORTH);
+        try {
+            EquilibrationBatch.end();
+            fail();
+        } catch (EquilibratingSquaresViolatesLimitsException e) {
+        }
+        assertEquals(new Temperature(0), square_T0.getTemperature());
+        assertEquals(new Temperature(100), square_T100.getTemperature());
+        assertEquals(new Temperature(200), square_T200.getTemperature());
+    }
+
+    @Test (expected = IllegalStateException.class)
+    public void end_notOpen() {
+        EquilibrationBatch.end();
+    }
+}
+
+// vim: ts=4:sw=4:expandtab:smarttab
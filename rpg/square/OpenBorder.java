@@ -19,14 +19,14 @@ public class OpenBorder extends Border{
      * @effect
      *   | super(border)
      * @effect
-     *   | if (isSharedByTwoSquares())
+     *   | if (isSharedByTwoSquares()  &amp;&amp;  !EquilibrationBatch.isOpen())
      *   |      then getASquare().equilibrateMyArea()
      */
     @Raw
     public OpenBorder(Border border)
                 throws IllegalArgumentException, BorderConstraintsException {
         super(border);
-        if (isSharedByTwoSquares())
+        if (isSharedByTwoSquares() && !EquilibrationBatch.defer(getASquare()))
             getASquare().equilibrateMyArea();
     }
 
@@ -0,0 +1,162 @@
+package rpg.square;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Map;
+import java.util.IdentityHashMap;
+
+/**
+ * A class of path finders that look for the shortest sequence of squares
+ * to navigate along from one square to another.
+ * Each step goes to one of the navigatable squares of the previous
+ * square, be it through an open border or through a teleporter, and all
+ * steps count the same. The search is a breadth-first search, which
+ * finds a shortest path in that case. A heuristic based on the distance
+ * between coordinates would not help: a single teleport can cover any
+ * distance, so such a heuristic would overestimate the remaining steps
+ * and could make the search miss the shortest path.
+ * The state of the search lives in arrays that a path finder keeps and
+ * reuses from one query to the next, so that a query only allocates what
+ * it cannot avoid. Path finders are therefore not safe for use by
+ * multiple threads at once.
+ *
+ * @author Roald Frederickx
+ */
+public final class PathFinder {
+
+    /**
+     * Create a new path finder.
+     */
+    public PathFinder() {
+    }
+
+    /**
+     * Return a shortest path from the given square to the given
+     * destination.
+     *
+     * @param square
+     * The square to start from.
+     * @param destination
+     * The square to end at.
+     * @return
+     * If the given square cannot navigate to the given destination, null.
+     *   | if (!square.canNavigateTo(destination))
+     *   |      then result == null
+     * @return
+     * Otherwise, a new list of squares that starts with the given square
+     * and ends with the given destination, in which each square is a
+     * navigatable square of the square before it. No shorter list
+     * satisfies these conditions.
+     *   | result.get(0) == square
+     *   |   &amp;&amp; result.get(result.size() - 1) == destination
+     *   |   &amp;&amp; for each i in 1..result.size()-1 :
+     *   |          result.get(i-1).getNavigatableSquares().contains(
+     *   |                                              result.get(i))
+     * @throws IllegalArgumentException
+     *   | square == null  ||  destination == null
+     */
+    public List<Square> findPath(Square square, Square destination)
+                                            throws IllegalArgumentException {
+        if (square == null || destination == null)
+            throw new IllegalArgumentException();
+        try {
+            visit(square, -1);
+            if (square == destination)
+                return getPathTo(0);
+            for (int current = 0; current < nbVisited; current++) {
+                nextSquares = SquareImpl.collectNavigatableSquaresOf(
+                                            visited[current], nextSquares);
+                for (int i = 0; nextSquares[i] != null; i++) {
+                    Square next = nextSquares[i];
+                    if (ids.containsKey(next))
+                        continue;
+                    int id = visit(next, current);
+                    if (next == destination)
+                        return getPathTo(id);
+                }
+            }
+            return null;
+        } finally {
+            Arrays.fill(visited, 0, nbVisited, null);
+            Arrays.fill(nextSquares, null);
+            nbVisited = 0;
+            ids.clear();
+        }
+    }
+
+    /**
+     * Register the given square as visited in the current search.
+     *
+     * @param square
+     * The square to register.
+     * @param parent
+     * The id of the square from which the given square was reached, or -1
+     * if the given square is where the search starts.
+     * @return
+     * The id of the given square in the current search. Ids are handed
+     * out in the order in which squares are visited, so the visited
+     * squares double as the queue of the search.
+     */
+    private int visit(Square square, int parent) {
+        if (nbVisited == visited.length) {
+            visited = Arrays.copyOf(visited, 2 * nbVisited);
+            parents = Arrays.copyOf(parents, 2 * nbVisited);
+        }
+        int id = nbVisited++;
+        visited[id] = square;
+        parents[id] = parent;
+        ids.put(square, id);
+        return id;
+    }
+
+    /**
+     * Return the path from the square where the current search started to
+     * the visited square with the given id.
+     *
+     * @param id
+     * The id of the last square of the path.
+     */
+    private List<Square> getPathTo(int id) {
+        List<Square> path = new ArrayList<Square>();
+        for (int step = id; step >= 0; step = parents[step])
+            path.add(visited[step]);
+        Collections.reverse(path);
+        return path;
+    }
+
+    /**
+     * Variable referencing the squares visited in the current search, by
+     * id.
+     */
+    private Square[] visited = new Square[64];
+
+    /**
+     * Variable referencing the id of the square from which each visited
+     * square was reached in the current search, by id.
+     */
+    private int[] parents = new int[64];
+
+    /**
+     * Variable referencing the squares that can be navigated to from the
+     * square the current search is at, followed by null.
+     */
+    private Square[] nextSquares = new Square[8];
+
+    /**
+     * Variable registering the number of squares visited in the current
+     * search.
+     */
+    private int nbVisited = 0;
+
+    /**
+     * Variable referencing the id of each square visited in the current
+     * search. Squares are compared by identity. The map is cleared rather
+     * than replaced after each search, so it keeps its capacity.
+     */
+    private final Map<Square, Integer> ids =
+                                    new IdentityHashMap<Square, Integer>();
+}
+
+// vim: ts=4:sw=4:expandtab:smarttab
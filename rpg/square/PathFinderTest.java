@@ -0,0 +1,77 @@
+package rpg.square;
+
+import rpg.util.*;
+
+import static org.junit.Assert.*;
+import org.junit.*;
+
+import java.util.List;
+import java.util.ArrayList;
+
+/**
+ * A class collecting tests for the class of path finders.
+ *
+ * @author Roald Frederickx
+ */
+public class PathFinderTest {
+
+    private List<Square> row;
+    private PathFinder pathFinder;
+
+    /**
+     * Set up a mutable test fixture of a row of ten squares, from south to 
+     * north, that are connected through open borders.
+     */
+    @Before
+    public void setUpMutableFixture() {
+        row = new ArrayList<Square>();
+        row.add(new RegularSquare());
+        for (int i = 1; i < 10; i++) {
+            Square next = new RegularSquare();
+            row.get(i - 1).mergeWith(next, Direction.NORTH);
+            row.add(next);
+        }
+        pathFinder = new PathFinder();
+    }
+
+    @Test
+    public void findPath_row() {
+        assertEquals(row, pathFinder.findPath(row.get(0), row.get(9)));
+        assertEquals(row.subList(2, 4),
+                     pathFinder.findPath(row.get(2), row.get(3)));
+    }
+
+    @Test
+    public void findPath_sameSquare() {
+        List<Square> path = pathFinder.findPath(row.get(4), row.get(4));
+        assertEquals(1, path.size());
+        assertSame(row.get(4), path.get(0));
+    }
+
+    @Test
+    public void findPath_teleporter() {
+        Square teleport = new RegularTeleportationSquare(
+                                                new Teleporter(row.get(8)));
+        teleport.mergeWith(row.get(0), Direction.NORTH);
+        List<Square> path = pathFinder.findPath(row.get(0), row.get(9));
+        assertEquals(4, path.size());
+        assertSame(teleport, path.get(1));
+        assertSame(row.get(8), path.get(2));
+        assertNull(pathFinder.findPath(row.get(9), new RegularSquare()));
+    }
+
+    @Test
+    public void findPath_closedDoor() {
+        Door door = new Door(row.get(4).getBorderAt(Direction.NORTH), false);
+        assertNull(pathFinder.findPath(row.get(0), row.get(9)));
+        door.open();
+        assertEquals(10, pathFinder.findPath(row.get(0), row.get(9)).size());
+    }
+
+    @Test (expected = IllegalArgumentException.class)
+    public void findPath_null() {
+        pathFinder.findPath(row.get(0), null);
+    }
+}
+
+// vim: ts=4:sw=4:expandtab:smarttab
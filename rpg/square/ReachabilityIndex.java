@@ -0,0 +1,409 @@
+package rpg.square;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.Set;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.lang.ref.WeakReference;
+
+/**
+ * A class of indices that answer whether one square can navigate to
+ * another without searching the squares in between.
+ * Navigating is a directed graph: open borders lead both ways, but
+ * teleporters only lead to their destinations. All squares of an area
+ * can reach each other, so the index works on areas rather than squares.
+ * It discovers the areas of the given squares and of all areas they can
+ * navigate to, links each area to the areas that its squares can
+ * navigate to in a single step, and condenses the strongly connected
+ * components of that graph into a directed acyclic graph. Two squares in
+ * the same component can reach each other; otherwise, the squares that a
+ * component can reach are computed once, on demand, and cached.
+ * Each index has a navigation version of its own, which it registers
+ * with the area records of the areas it discovers, through a weak
+ * reference that it clears again on its next build. Only a change to the
+ * open borders or teleporters of one of those areas increments that
+ * version and so makes the index stale. A change elsewhere cannot affect
+ * which of the discovered areas reach each other, so it leaves the index
+ * alone. A stale index rebuilds itself completely on the next query,
+ * which takes time linear in the number of squares it covers, however
+ * small the change. An index thus pays off for many queries between few
+ * changes.
+ * Squares that are not a SquareImpl have no area record: each of them
+ * counts as an area on its own, and as there is nothing to register the
+ * navigation version with, an index that discovers one of them rebuilds
+ * itself on every query.
+ * Indices are not safe for use by multiple threads at once.
+ *
+ * @author Roald Frederickx
+ */
+public final class ReachabilityIndex {
+
+    /**
+     * Create a new reachability index for the given squares.
+     *
+     * @param squares
+     * The squares to index. They are iterated again whenever the index
+     * gets rebuilt, so a live view reflects later additions.
+     * @throws IllegalArgumentException
+     *   | squares == null
+     */
+    public ReachabilityIndex(Iterable<? extends Square> squares)
+                                            throws IllegalArgumentException {
+        if (squares == null)
+            throw new IllegalArgumentException();
+        this.squares = squares;
+    }
+
+    /**
+     * Variable referencing the squares of this index.
+     */
+    private final Iterable<? extends Square> squares;
+
+    /**
+     * Checks whether the given square can navigate to the given
+     * destination.
+     *
+     * @param square
+     * The square to start from.
+     * @param destination
+     * The destination square.
+     * @return
+     *   | result == square.canNavigateTo(destination)
+     * @throws IllegalArgumentException
+     *   | square == null  ||  destination == null
+     */
+    public boolean canNavigate(Square square, Square destination)
+                                            throws IllegalArgumentException {
+        if (square == null || destination == null)
+            throw new IllegalArgumentException();
+        if (!isUpToDate())
+            build();
+        int from = getComponentOf(square);
+        int to = getComponentOf(destination);
+        if (from < 0 || to < 0)
+            return square.canNavigateTo(destination);
+        if (from == to)
+            return true;
+        if (reachable[from] == null)
+            reachable[from] = computeReachable(from);
+        return reachable[from].get(to);
+    }
+
+    /**
+     * Return the component of the given square in this index, or -1 if the
+     * given square is not indexed.
+     *
+     * @param square
+     * The square whose component to return.
+     */
+    private int getComponentOf(Square square) {
+        if (square.isTerminated())
+            return -1;
+        Integer area;
+        if (square instanceof SquareImpl)
+            area = areas.get(AreaRecord.getAreaOf((SquareImpl) square));
+        else
+            area = otherAreas.get(square);
+        if (area == null)
+            return -1;
+        return componentOfArea[area];
+    }
+
+    /**
+     * Return the number of strongly connected components of this index,
+     * rebuilding it first if it is stale.
+     */
+    public int getNbComponents() {
+        if (!isUpToDate())
+            build();
+        return nbComponents;
+    }
+
+    /**
+     * Checks whether this index reflects the current open borders and
+     * teleporters of all squares.
+     */
+    public boolean isUpToDate() {
+        return otherAreas.isEmpty()
+                        && builtVersion == navigationVersion.get();
+    }
+
+    /**
+     * Variable registering the version of the navigation graph of the
+     * areas of this index. The area records of those areas increment it,
+     * so it is atomic.
+     */
+    private final AtomicLong navigationVersion = new AtomicLong();
+
+    /**
+     * Variable referencing the weak reference to the navigation version of
+     * this index that the area records of its areas hold since its last
+     * build, or null if it has not been built yet.
+     */
+    private WeakReference<AtomicLong> navigationWatch = null;
+
+    /**
+     * Variable registering the version of the navigation graph that this
+     * index was built for.
+     */
+    private long builtVersion = -1;
+
+    /**
+     * Rebuild this index from the current navigation graph.
+     */
+    private void build() {
+        long version = navigationVersion.get();
+        if (navigationWatch != null)
+            navigationWatch.clear();
+        navigationWatch = new WeakReference<AtomicLong>(navigationVersion);
+        areas.clear();
+        otherAreas.clear();
+        List<Square> representatives = new ArrayList<Square>();
+        for (Square square : squares)
+            if (!square.isTerminated())
+                addArea(square, representatives);
+
+        List<int[]> successors = new ArrayList<int[]>();
+        int[] targets = new int[8];
+        Square[] nextSquares = new Square[8];
+        for (int area = 0; area < representatives.size(); area++) {
+            Set<Square> members = getMembersOf(representatives.get(area));
+            int nbTargets = 0;
+            for (Square member : members) {
+                nextSquares = SquareImpl.collectNavigatableSquaresOf(member,
+                                                                nextSquares);
+                for (int i = 0; nextSquares[i] != null; i++) {
+                    Square next = nextSquares[i];
+                    if (next.isTerminated() || members.contains(next))
+                        continue;
+                    if (nbTargets == targets.length)
+                        targets = Arrays.copyOf(targets, 2 * nbTargets);
+                    targets[nbTargets++] = addArea(next, representatives);
+                }
+            }
+            successors.add(Arrays.copyOf(targets, nbTargets));
+        }
+        int[][] graph = successors.toArray(new int[successors.size()][]);
+        componentOfArea = computeComponents(graph);
+        componentSuccessors = condense(graph);
+        reachable = new BitSet[nbComponents];
+        builtVersion = version;
+    }
+
+    /**
+     * Register the area of the given square with this index, if it is not
+     * registered yet, and let the record of that area watch the navigation
+     * version of this index.
+     *
+     * @param square
+     * The square whose area to register.
+     * @param representatives
+     * A square of each registered area, by area index.
+     * @return
+     * The index of the area of the given square.
+     */
+    private int addArea(Square square, List<Square> representatives) {
+        if (!(square instanceof SquareImpl)) {
+            Integer index = otherAreas.get(square);
+            if (index == null) {
+                index = representatives.size();
+                otherAreas.put(square, index);
+                representatives.add(square);
+            }
+            return index;
+        }
+        SquareImpl squareImpl = (SquareImpl) square;
+        Set<Square> area = AreaRecord.getAreaOf(squareImpl);
+        Integer index = areas.get(area);
+        if (index == null) {
+            index = representatives.size();
+            areas.put(area, index);
+            representatives.add(square);
+            AreaRecord.watchNavigation(squareImpl, navigationWatch);
+        }
+        return index;
+    }
+
+    /**
+     * Return the members of the area of the given square, as this index
+     * sees them.
+     *
+     * @param square
+     * The square whose area to return.
+     */
+    private static Set<Square> getMembersOf(Square square) {
+        if (square instanceof SquareImpl)
+            return AreaRecord.getAreaOf((SquareImpl) square);
+        return Collections.singleton(square);
+    }
+
+    /**
+     * Compute the strongly connected components of the given graph, with
+     * an iterative version of Tarjan's algorithm.
+     *
+     * @param graph
+     * The successors of each area.
+     * @return
+     * The component of each area. Components are numbered in reverse
+     * topological order: each component only reaches components with a
+     * lower number.
+     */
+    private int[] computeComponents(int[][] graph) {
+        int nbAreas = graph.length;
+        int[] order = new int[nbAreas];
+        int[] lowLink = new int[nbAreas];
+        int[] component = new int[nbAreas];
+        Arrays.fill(order, -1);
+        Arrays.fill(component, -1);
+        int[] stack = new int[nbAreas];
+        int stackSize = 0;
+        int[] path = new int[nbAreas];
+        int[] nextEdge = new int[nbAreas];
+        int counter = 0;
+        nbComponents = 0;
+
+        for (int root = 0; root < nbAreas; root++) {
+            if (order[root] >= 0)
+                continue;
+            int depth = 0;
+            path[0] = root;
+            nextEdge[0] = 0;
+            order[root] = lowLink[root] = counter++;
+            stack[stackSize++] = root;
+            while (depth >= 0) {
+                int area = path[depth];
+                if (nextEdge[depth] < graph[area].length) {
+                    int next = graph[area][nextEdge[depth]++];
+                    if (order[next] < 0) {
+                        order[next] = lowLink[next] = counter++;
+                        stack[stackSize++] = next;
+                        depth++;
+                        path[depth] = next;
+                        nextEdge[depth] = 0;
+                    } else if (component[next] < 0) {
+                        lowLink[area] = Math.min(lowLink[area], order[next]);
+                    }
+                    continue;
+                }
+                if (lowLink[area] == order[area]) {
+                    int member;
+                    do {
+                        member = stack[--stackSize];
+                        component[member] = nbComponents;
+                    } while (member != area);
+                    nbComponents++;
+                }
+                depth--;
+                if (depth >= 0) {
+                    int parent = path[depth];
+                    lowLink[parent] = Math.min(lowLink[parent],
+                                                            lowLink[area]);
+                }
+            }
+        }
+        return component;
+    }
+
+    /**
+     * Condense the given graph of areas into a graph of components.
+     *
+     * @param graph
+     * The successors of each area.
+     * @return
+     * The successors of each component, without the component itself.
+     */
+    private int[][] condense(int[][] graph) {
+        int[] nbSuccessors = new int[nbComponents];
+        for (int area = 0; area < graph.length; area++)
+            for (int next : graph[area])
+                if (componentOfArea[next] != componentOfArea[area])
+                    nbSuccessors[componentOfArea[area]]++;
+        int[][] result = new int[nbComponents][];
+        for (int component = 0; component < nbComponents; component++)
+            result[component] = new int[nbSuccessors[component]];
+        Arrays.fill(nbSuccessors, 0);
+        for (int area = 0; area < graph.length; area++) {
+            int component = componentOfArea[area];
+            for (int next : graph[area])
+                if (componentOfArea[next] != component)
+                    result[component][nbSuccessors[component]++] =
+                                                    componentOfArea[next];
+        }
+        return result;
+    }
+
+    /**
+     * Compute the components that can be reached from the given component.
+     *
+     * @param component
+     * The component to start from.
+     * @return
+     * The set of components that can be reached from the given component,
+     * the component itself included.
+     */
+    private BitSet computeReachable(int component) {
+        BitSet result = new BitSet(nbComponents);
+        int[] frontier = new int[nbComponents];
+        int size = 0;
+        result.set(component);
+        frontier[size++] = component;
+        while (size > 0) {
+            int next = frontier[--size];
+            if (reachable[next] != null && next != component) {
+                result.or(reachable[next]);
+                continue;
+            }
+            for (int successor : componentSuccessors[next])
+                if (!result.get(successor)) {
+                    result.set(successor);
+                    frontier[size++] = successor;
+                }
+        }
+        return result;
+    }
+
+    /**
+     * Variable referencing the index of each area of this index. The areas
+     * are the sets of squares kept by their area records, so they are
+     * looked up by identity.
+     */
+    private final Map<Set<Square>, Integer> areas =
+                                new IdentityHashMap<Set<Square>, Integer>();
+
+    /**
+     * Variable referencing the index of each square of this index that is
+     * not a SquareImpl, and so makes up an area on its own. Squares are
+     * compared by identity.
+     */
+    private final Map<Square, Integer> otherAreas =
+                                    new IdentityHashMap<Square, Integer>();
+
+    /**
+     * Variable referencing the component of each area of this index.
+     */
+    private int[] componentOfArea;
+
+    /**
+     * Variable registering the number of components of this index.
+     */
+    private int nbComponents;
+
+    /**
+     * Variable referencing the successors of each component of this index
+     * in the condensed graph.
+     */
+    private int[][] componentSuccessors;
+
+    /**
+     * Variable referencing the set of components that each component of
+     * this index can reach, or null if that has not been computed yet.
+     */
+    private BitSet[] reachable;
+}
+
+// vim: ts=4:sw=4:expandtab:smarttab
@@ -0,0 +1,213 @@
+package rpg.square;
+
+import rpg.util.*;
+
+import static org.junit.Assert.*;
+import org.junit.*;
+
+import java.util.List;
+import java.util.Arrays;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+
+/**
+ * A class collecting tests for the class of reachability indices.
+ *
+ * @author Roald Frederickx
+ */
+public class ReachabilityIndexTest {
+
+    private Square square;
+    private RegularTeleportationSquare teleport;
+    private RegularTeleportationSquare middle;
+    private Square end;
+    private List<Square> squares;
+    private ReachabilityIndex index;
+
+    /**
+     * Set up a mutable test fixture of three areas, each teleporting to 
+     * the next: the first area holds a teleportation square and a square 
+     * next to it, the other areas hold a single square each.
+     */
+    @Before
+    public void setUpMutableFixture() {
+        end = new RegularSquare();
+        middle = new RegularTeleportationSquare(new Teleporter(end));
+        teleport = new RegularTeleportationSquare(new Teleporter(middle));
+        square = new RegularSquare();
+        square.mergeWith(teleport, Direction.NORTH);
+        squares = new ArrayList<Square>();
+        squares.add(square);
+        squares.add(end);
+        index = new ReachabilityIndex(squares);
+    }
+
+    @Test (expected = IllegalArgumentException.class)
+    public void constructor_null() {
+        new ReachabilityIndex(null);
+    }
+
+    @Test
+    public void canNavigate_test() {
+        assertEquals(3, index.getNbComponents());
+        assertTrue(index.isUpToDate());
+        assertTrue(index.canNavigate(square, end));
+        assertTrue(index.canNavigate(teleport, square));
+        assertFalse(index.canNavigate(end, square));
+        assertFalse(index.canNavigate(middle, teleport));
+    }
+
+    @Test
+    public void canNavigate_notIndexed() {
+        Square other = new RegularSquare();
+        assertFalse(index.canNavigate(square, other));
+        assertTrue(index.canNavigate(other, other));
+    }
+
+    @Test (expected = IllegalArgumentException.class)
+    public void canNavigate_null() {
+        index.canNavigate(square, null);
+    }
+
+    @Test
+    public void setTeleporter_invalidates() {
+        assertFalse(index.canNavigate(middle, square));
+        middle.setTeleporter(new Teleporter(square));
+        assertFalse(index.isUpToDate());
+        assertTrue(index.canNavigate(middle, square));
+        assertFalse(index.canNavigate(square, end));
+        assertEquals(2, index.getNbComponents());
+    }
+
+    @Test
+    public void door_invalidates() {
+        end.mergeWith(square, Direction.WEST);
+        Door door = new Door(end.getBorderAt(Direction.WEST), false);
+        assertFalse(index.canNavigate(end, square));
+        door.open();
+        assertTrue(index.canNavigate(end, square));
+        assertEquals(1, index.getNbComponents());
+        door.close();
+        assertFalse(index.canNavigate(end, square));
+    }
+
+    @Test
+    public void unrelatedChange_keepsIndex() {
+        Square other = new RegularSquare();
+        RegularTeleportationSquare otherTeleport =
+                    new RegularTeleportationSquare(new Teleporter(other));
+        ReachabilityIndex otherIndex =
+                    new ReachabilityIndex(setOf(other, otherTeleport));
+        assertEquals(3, index.getNbComponents());
+        assertEquals(2, otherIndex.getNbComponents());
+        other.mergeWith(new RegularSquare(), Direction.EAST);
+        otherTeleport.setTeleporter(new Teleporter(other));
+        assertTrue(index.isUpToDate());
+        assertFalse(otherIndex.isUpToDate());
+        assertEquals(2, otherIndex.getNbComponents());
+        middle.setTeleporter(new Teleporter(square));
+        end.mergeWith(new RegularSquare(), Direction.EAST);
+        assertFalse(index.isUpToDate());
+        assertTrue(otherIndex.isUpToDate());
+    }
+
+    @Test
+    public void setTeleporter_afterSplit() {
+        Door door = new Door(square.getBorderAt(Direction.NORTH), true);
+        assertEquals(3, index.getNbComponents());
+        door.close();
+        assertFalse(index.isUpToDate());
+        assertEquals(1,
+                AreaRecord.getNbNavigationWatchesOf((SquareImpl) teleport));
+        assertFalse(index.canNavigate(square, end));
+        assertEquals(0,
+                AreaRecord.getNbNavigationWatchesOf((SquareImpl) teleport));
+        teleport.setTeleporter(new Teleporter(square));
+        assertTrue(index.isUpToDate());
+        assertFalse(index.canNavigate(teleport, end));
+        assertTrue(index.canNavigate(teleport, square));
+    }
+
+    @Test
+    public void build_clearsOldWatches() {
+        end.mergeWith(square, Direction.WEST);
+        Door door = new Door(end.getBorderAt(Direction.WEST), false);
+        for (int i = 0; i < 10; i++) {
+            door.open();
+            assertTrue(index.canNavigate(end, square));
+            door.close();
+            assertFalse(index.canNavigate(end, square));
+        }
+        assertEquals(1, AreaRecord.getNbNavigationWatchesOf((SquareImpl) end));
+        ReachabilityIndex otherIndex = new ReachabilityIndex(setOf(end));
+        assertEquals(1, otherIndex.getNbComponents());
+        assertEquals(2, AreaRecord.getNbNavigationWatchesOf((SquareImpl) end));
+        assertEquals(1,
+                AreaRecord.getNbNavigationWatchesOf((SquareImpl) square));
+    }
+
+    @Test
+    public void canNavigate_otherImplementation() {
+        Square other = otherImplementationOf(middle);
+        RegularTeleportationSquare start =
+                    new RegularTeleportationSquare(new Teleporter(other));
+        assertTrue(start.canNavigateTo(end));
+        assertTrue(start.getReachableSquares().contains(other));
+        ReachabilityIndex otherIndex = new ReachabilityIndex(setOf(start));
+        assertEquals(3, otherIndex.getNbComponents());
+        assertFalse(otherIndex.isUpToDate());
+        assertTrue(otherIndex.canNavigate(start, end));
+        assertTrue(otherIndex.canNavigate(other, end));
+        assertFalse(otherIndex.canNavigate(end, other));
+    }
+
+    @Test
+    public void canNavigate_longChain() {
+        List<Square> chain = new ArrayList<Square>();
+        Square previous = new RegularSquare();
+        chain.add(previous);
+        for (int i = 0; i < 20000; i++) {
+            previous = new RegularTeleportationSquare(
+                                                new Teleporter(previous));
+            chain.add(previous);
+        }
+        ReachabilityIndex chainIndex = new ReachabilityIndex(chain);
+        assertEquals(20001, chainIndex.getNbComponents());
+        assertTrue(chainIndex.canNavigate(previous, chain.get(0)));
+        assertTrue(chainIndex.canNavigate(chain.get(100), chain.get(1)));
+        assertFalse(chainIndex.canNavigate(chain.get(0), previous));
+    }
+
+    /**
+     * Return a square that is not a SquareImpl, but that forwards all 
+     * methods except equals and hashCode to the given square.
+     */
+    private static Square otherImplementationOf(final Square square) {
+        InvocationHandler handler = new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args)
+                                                        throws Throwable {
+                if (method.getName().equals("equals"))
+                    return proxy == args[0];
+                if (method.getName().equals("hashCode"))
+                    return System.identityHashCode(proxy);
+                try {
+                    return method.invoke(square, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            }
+        };
+        return (Square) Proxy.newProxyInstance(Square.class.getClassLoader(),
+                                    new Class<?>[] {Square.class}, handler);
+    }
+
+    private static List<Square> setOf(Square... squares) {
+        return new ArrayList<Square>(Arrays.asList(squares));
+    }
+}
+
+// vim: ts=4:sw=4:expandtab:smarttab
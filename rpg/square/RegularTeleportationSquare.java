@@ -119,6 +119,7 @@ public class RegularTeleportationSquare
     public void setTeleporter(Teleporter teleporter) {
         assert isValidTeleporter(teleporter);
         this.teleporter = teleporter;
+        AreaRecord.teleporterChanged(this);
     }
     
     /**
@@ -147,19 +148,15 @@ public class RegularTeleportationSquare
     }
 
     /** 
-     * Return a set of squares that can directly be navigated to 
-     * from this square in a single step in one way or another.
+     * Return the squares that this regular teleportation square can 
+     * teleport to.
      * 
      * @return 
-     * The result contains the teleportation destinations
-     *   | for each destination in getTeleporter().getDestinations() :
-     *   |      result.contains(destination)
+     *   | result.equals(getTeleporter().getDestinations())
      */
     @Override
-    public Set<Square> getNavigatableSquares() {
-        Set<Square> result = super.getNavigatableSquares();
-        result.addAll(getTeleporter().getDestinations());
-        return result;
+    Set<Square> getTeleportationDestinations() {
+        return getTeleporter().getDestinations();
     }
 
     /**
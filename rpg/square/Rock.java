@@ -102,18 +102,18 @@ public class Rock extends SquareImpl {
     }
 	
     /** 
-     * Checks whether the given temperature is valid for this square. 
+     * Checks whether the given temperature value is valid for this square. 
      * 
-     * @param temperature
-     * The temperature of this square.
+     * @param value
+     * The temperature value of this square.
      * @return
-     * True iff the given temperature is the proper temperature for this 
-     * rock.
-     *   | result == temperature.equals(getProperTemperature())
+     * True iff the given temperature value is the proper temperature for 
+     * this rock.
+     *   | result == Temperature.areEqual(value, getProperTemperatureValue())
      */
     @Override
-    public boolean canHaveAsTemperature(Temperature temperature){
-        return temperature.equals(getProperTemperature());
+    public boolean canHaveAsTemperatureValue(double value){
+        return Temperature.areEqual(value, getProperTemperatureValue());
     }
 
     /** 
@@ -123,44 +123,117 @@ public class Rock extends SquareImpl {
      * an area that has just been equilibrated. It will <i>not</i> get 
      * called for every temperature and/or humidity change of the squares 
      * in an area that get equilibrated.
+     * The proper temperature of this rock is not recomputed right away: 
+     * the square that notifies this rock refreshes it afterwards, through 
+     * refreshClimatesOf(), so that a rock that borders many changed areas 
+     * is recomputed only once.
      *
-     * @effect
-     *   | setProperTemperature()
+     * @post
+     *   | new.hasStaleClimate()
      */
 	@Raw @Override
     public void neighbourHasChangedTemperatureOrHumidity() {
-        setProperTemperature();
+        hasStaleTemperature = true;
+    }
+
+    /**
+     * Returns the temperature of this rock, in degrees Celcius.
+     *
+     * @return
+     * If the cached temperature of this rock is stale, the proper 
+     * temperature of this rock. Otherwise, the cached temperature of this 
+     * rock.
+     *   | if (hasStaleClimate())
+     *   |      then result == getProperTemperatureValue()
+     */
+    @Override
+    @Raw
+    public double getTemperatureValue() {
+        if (hasStaleTemperature)
+            return getProperTemperatureValue();
+        return super.getTemperatureValue();
+    }
+
+    /**
+     * Checks whether a neighbour of this rock has changed its temperature 
+     * or humidity since this rock last cached its temperature.
+     */
+    @Override
+    @Basic @Raw
+    boolean hasStaleClimate() {
+        return hasStaleTemperature;
+    }
+
+    /**
+     * Cache the proper temperature of this rock as its temperature, if 
+     * its cached temperature is stale.
+     *
+     * @post
+     *   | !new.hasStaleClimate()
+     * @note
+     * This gives a new version to the area record of this rock, but not to 
+     * those of its neighbours, as setting the temperature through 
+     * setProperTemperature() would. The temperature of a rock is derived 
+     * from its neighbours and does not take part in their equilibration, 
+     * so they have nothing to re-equilibrate.
+     */
+    @Override
+    @Raw
+    void refreshClimate() {
+        if (!hasStaleTemperature)
+            return;
+        double temperature = getProperTemperatureValue();
+        hasStaleTemperature = false;
+        AreaRecord.unshareClimateOf(this);
+        setClimateRaw(temperature, 0);
+        AreaRecord.touch(this);
     }
 
+    /**
+     * Variable registering whether a neighbour of this rock has changed 
+     * its temperature or humidity since this rock last computed its 
+     * temperature.
+     */
+    private boolean hasStaleTemperature = false;
+
     /** 
      * Sets the proper temperature of this rock. 
      *
      * @effect
-     *   | setTemperatureRaw(getProperTemperature())
+     *   | setTemperatureValueRaw(getProperTemperatureValue())
      */
     protected void setProperTemperature() {
-        setTemperatureRaw(getProperTemperature());
+        setTemperatureValueRaw(getProperTemperatureValue());
     }
 
     /** 
      * Get the proper temperature of this rock.
      *
      * @return
+     *   | result == new Temperature(getProperTemperatureValue())
+     */
+    protected Temperature getProperTemperature() {
+        return new Temperature(getProperTemperatureValue());
+    }
+
+    /** 
+     * Get the proper temperature of this rock, in degrees Celcius.
+     *
+     * @return
      * The average temperature of each neighbouring non-rock, coerced to 
      * the temperature limits of this rock.
      */
-    protected Temperature getProperTemperature() {
+    protected double getProperTemperatureValue() {
         Collection<Square> neighbours = 
                 getFilteredNeighbours(acceptNonRockNeighbourFilter).values();
         if (neighbours.isEmpty())
-            return new Temperature(0);
+            return 0;
             
         double temperatureSum = 0;
         for (Square neighbour : neighbours)
-            temperatureSum += neighbour.getTemperature().temperature();
-        Temperature newTemperature = new Temperature(temperatureSum
-                                                        / neighbours.size());
-        return newTemperature.coerce(getMinTemperature(), getMaxTemperature());
+            temperatureSum += neighbour.getTemperatureValue();
+        return Temperature.coerce(temperatureSum / neighbours.size(),
+                        getMinTemperatureValue(), getMaxTemperatureValue());
     }
         
     /**
@@ -185,6 +258,20 @@ public class Rock extends SquareImpl {
         new Area().equilibrateBoundary();
     }
 
+    /** 
+     * Checks whether the interior of the area of this rock takes part in 
+     * equilibration.
+     *
+     * @return
+     * Always false, a rock only equilibrates the boundary of its area.
+     *   | result == false
+     */
+    @Override
+    @Basic @Immutable
+    boolean hasEquilibratingInterior() {
+        return false;
+    }
+
     /** 
      * A default border initializer for rocks.
      *
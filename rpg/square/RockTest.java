@@ -61,6 +61,82 @@ public class RockTest {
         new Rock(new Temperature(-10), null);
     }
 
+    @Test
+    public void neighbourHasChanged_recomputedOnce() {
+        final int[] nbRecomputations = new int[1];
+        Rock rock = new Rock() {
+            @Override
+            protected double getProperTemperatureValue() {
+                nbRecomputations[0]++;
+                return super.getProperTemperatureValue();
+            }
+        };
+        Square square = new RegularSquare(new Temperature(40), 5000);
+        rock.mergeWith(square, Direction.NORTH);
+        nbRecomputations[0] = 0;
+        for (int i = 0; i < 10; i++)
+            rock.neighbourHasChangedTemperatureOrHumidity();
+        assertEquals(0, nbRecomputations[0]);
+        rock.refreshClimate();
+        assertEquals(1, nbRecomputations[0]);
+        assertFalse(rock.hasStaleClimate());
+        assertEquals(new Temperature(40), rock.getTemperature());
+        assertEquals(1, nbRecomputations[0]);
+    }
+
+    @Test
+    public void getTemperatureValue_pure() {
+        Square square = new RegularSquare(new Temperature(40), 5000);
+        rockDefault.mergeWith(square, Direction.NORTH);
+        rockDefault.refreshClimate();
+        square.setTemperatureRaw(new Temperature(60));
+        rockDefault.neighbourHasChangedTemperatureOrHumidity();
+        assertEquals(60, rockDefault.getTemperatureValue(), 0);
+        assertTrue(rockDefault.hasStaleClimate());
+        rockDefault.refreshClimate();
+        assertFalse(rockDefault.hasStaleClimate());
+        assertEquals(60, rockDefault.getTemperatureValue(), 0);
+    }
+
+    @Test
+    public void batch_recomputedOnce() {
+        final int[] nbRecomputations = new int[1];
+        Rock rock = new Rock() {
+            @Override
+            protected double getProperTemperatureValue() {
+                nbRecomputations[0]++;
+                return super.getProperTemperatureValue();
+            }
+        };
+        Square north = new RegularSquare(new Temperature(40), 5000);
+        Square south = new RegularSquare(new Temperature(40), 5000);
+        rock.mergeWith(north, Direction.NORTH);
+        rock.mergeWith(south, Direction.SOUTH);
+        rock.refreshClimate();
+        EquilibrationBatch.begin();
+        north.setTemperature(new Temperature(20));
+        south.setTemperature(new Temperature(60));
+        nbRecomputations[0] = 0;
+        EquilibrationBatch.end();
+        assertEquals(1, nbRecomputations[0]);
+        assertFalse(rock.hasStaleClimate());
+        assertEquals(new Temperature(40), rock.getTemperature());
+    }
+
+    @Test
+    public void getTemperatureValue_leavesNeighboursUntouched() {
+        Square square = new RegularSquare(new Temperature(40), 5000);
+        rockDefault.mergeWith(square, Direction.NORTH);
+        rockDefault.getTemperatureValue();
+        rockDefault.neighbourHasChangedTemperatureOrHumidity();
+        square.getArea();
+        AreaRecord record = ((SquareImpl) square).getAreaRecord();
+        long version = record.getVersion();
+        assertEquals(40, rockDefault.getTemperatureValue(), 0);
+        assertEquals(version, record.getVersion());
+        assertTrue(square.myAreaIsEquilibrated());
+    }
+
     @Test
     public void canHaveAsBorderAt_Test() {
         Border terminatedBorder = rockDefault.getBorderAt(Direction.NORTH);
@@ -8,6 +8,7 @@ import be.kuleuven.cs.som.annotate.*;
 
 import java.util.Map;
 import java.util.Set;
+import java.util.Collection;
 
 /**
  * An interface of squares involving a temperature, a humidity and a set of 
@@ -69,7 +70,9 @@ public interface Square {
      * The new temperature.
      * @effect
      * The new temperature of this square is set to the given temperature 
-     * and then the area of this square is equilibrated.
+     * and then the area of this square is equilibrated. If an 
+     * equilibration batch is open, the equilibration is postponed until 
+     * the batch is closed.
      *   | setTemperatureRaw(temperature);
      *   | equilibrateMyArea()
      * @throws IllegalArgumentException
@@ -103,6 +106,53 @@ public interface Square {
     public void setTemperatureRaw(Temperature temperature)
                                             throws IllegalArgumentException;
 
+    /**
+     * Returns the temperature of this square, in degrees Celcius.
+     *
+     * @return
+     *   | result == getTemperature().temperature()
+     */
+    @Basic @Raw
+    public double getTemperatureValue();
+
+    /** 
+     * Checks whether the given temperature value, in degrees Celcius, is 
+     * valid for this square. 
+     * 
+     * @param value
+     * The temperature value to check.
+     * @return
+     *   | result == canHaveAsTemperature(new Temperature(value))
+     */
+    public boolean canHaveAsTemperatureValue(double value);
+
+    /**
+     * Sets the temperature of this square to the given value, in degrees 
+     * Celcius, and equilibrate its area afterwards.
+     *
+     * @param value
+     * The new temperature value.
+     * @effect
+     *   | setTemperature(new Temperature(value))
+     */
+    @Raw
+    public void setTemperatureValue(double value)
+                        throws IllegalArgumentException,
+                                EquilibratingSquaresViolatesLimitsException;
+
+    /**
+     * Sets the temperature of this square to the given value, in degrees 
+     * Celcius, without equilibrating its area.
+     *
+     * @param value
+     * The new temperature value.
+     * @effect
+     *   | setTemperatureRaw(new Temperature(value))
+     */
+    @Raw
+    public void setTemperatureValueRaw(double value)
+                                            throws IllegalArgumentException;
+
     /**
      * Returns the minimum temperature for this square.
      */
@@ -198,6 +248,24 @@ public interface Square {
     public boolean matchesMinTemperatureMax(Temperature minTemperature,
                             Temperature temperature, Temperature maxTemperature);
 
+    /**
+     * Returns the minimum temperature for this square, in degrees Celcius.
+     *
+     * @return
+     *   | result == getMinTemperature().temperature()
+     */
+    @Basic @Raw
+    public double getMinTemperatureValue();
+
+    /**
+     * Returns the maximum temperature for this square, in degrees Celcius.
+     *
+     * @return
+     *   | result == getMaxTemperature().temperature()
+     */
+    @Basic @Raw
+    public double getMaxTemperatureValue();
+
 
     /** 
      * Returns the cold damage associated with this square.
@@ -461,10 +529,21 @@ public interface Square {
      * border gets detatched from this square.
      *   | if (old.getBorderAt(direction) != null)
      *   |      old.getBorderAt(direction).detatchFromSquare(this);
+     * @effect
+     * All border listeners of this square get notified of the change.
+     *   | for each listener in border listeners of this square :
+     *   |      listener.borderChanged(this, direction,
+     *   |                          old.getBorderAt(direction), border)
      * @post
      * If this square is not terminated, the area of this square gets 
-     * equilibrated after having changed the border.
-     *   | old.isTerminated() || new.myAreaIsEquilibrated()
+     * equilibrated after having changed the border. If an equilibration 
+     * batch is open, this is postponed until that batch gets closed.
+     *   | old.isTerminated() || EquilibrationBatch.isOpen()
+     *   |      || new.myAreaIsEquilibrated()
+     * @post
+     * If this square is terminated and an equilibration batch is open, 
+     * the area of the square that shared the old border with this square, 
+     * if any, gets equilibrated when that batch gets closed.
      * @throws IllegalArgumentException
      * This square can not have the given border as a proper border in the 
      * given direction.
@@ -483,6 +562,38 @@ public interface Square {
     public void changeBorderAt(Direction direction, @Raw Border border) 
                 throws IllegalArgumentException, BorderConstraintsException;
 
+    /** 
+     * Register the given listener to be notified of every change of a 
+     * border of this square.
+     * 
+     * @param listener 
+     * The listener to register.
+     * @post
+     *   | if (listener != null)
+     *   |      then new.hasAsBorderListener(listener)
+     */
+    public void addBorderListener(BorderListener listener);
+
+    /** 
+     * Unregister the given listener from this square.
+     * 
+     * @param listener 
+     * The listener to unregister.
+     * @post
+     *   | !new.hasAsBorderListener(listener)
+     */
+    public void removeBorderListener(BorderListener listener);
+
+    /** 
+     * Check whether the given listener is registered to be notified of 
+     * changes of the borders of this square.
+     * 
+     * @param listener 
+     * The listener to check.
+     */
+    @Basic
+    public boolean hasAsBorderListener(BorderListener listener);
+
     /** 
      * Update the border of this square to the given border.
      * 
@@ -617,6 +728,38 @@ public interface Square {
      */
     public boolean canNavigateTo(Square destination, Set<Square> visited);
 
+    /** 
+     * Return the set of squares that can be navigated to, starting from 
+     * this square.
+     * 
+     * @return
+     * A new set containing each square that this square can navigate to, 
+     * this square included.
+     *   | for each square in Square :
+     *   |      result.contains(square) == canNavigateTo(square)
+     */
+    public Set<Square> getReachableSquares();
+
+    /** 
+     * Return the set of the given targets that can be navigated to, 
+     * starting from this square, in a single traversal.
+     * The traversal stops as soon as all targets have been reached.
+     * 
+     * @param targets
+     * The squares to check.
+     * @return
+     * A new set containing each of the given targets that this square can 
+     * navigate to.
+     *   | for each square in targets :
+     *   |      result.contains(square) == canNavigateTo(square)
+     *   | result.size() &lt;= targets.size()
+     * @throws IllegalArgumentException
+     *   | targets == null  ||  targets.contains(null)
+     */
+    public Set<Square> getNavigatableSquaresAmong(
+                                        Collection<? extends Square> targets)
+                                            throws IllegalArgumentException;
+
     /** 
      * An interface to filter neighbouring squares.
      */
@@ -10,8 +10,13 @@ import java.util.Map;
 import java.util.EnumMap;
 import java.util.Set;
 import java.util.HashSet;
-import java.util.Queue;
-import java.util.LinkedList;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 
 /**
  * A class of squares involving a temperature, a humidity and a set of 
@@ -62,10 +67,9 @@ abstract public class SquareImpl implements Square {
      * The maximum temperature for this new square is equal to the 
      * given maximum temperature.
      *   | new.getMaxTemperature().equals(maxTemp)
-     * @effect
-     * The humidity for this new square gets initialized to the given 
-     * humidity.
-     *   | setHumidity(humidity)
+     * @post
+     * The humidity for this new square is equal to the given humidity.
+     *   | new.getHumidity() == humidity
      * @effect
      * The borders of the square get initialized.
      *   | initializeBorders(borderInitializer);
@@ -82,10 +86,11 @@ abstract public class SquareImpl implements Square {
                                    BorderConstraintsException {
         if(!matchesMinTemperatureMax(minTemp, temperature, maxTemp))
             throw new IllegalArgumentException();
-        minTemperature = minTemp;
-        maxTemperature = maxTemp;
+        minTemperature = minTemp.temperature();
+        maxTemperature = maxTemp.temperature();
         setTemperatureRaw(temperature);
-        setHumidity(humidity);
+        assert canHaveAsHumidity(humidity);
+        this.humidity = humidity;
         initializeBorders(borderInitializer);
     }
 
@@ -138,18 +143,48 @@ abstract public class SquareImpl implements Square {
      * Returns the temperature of this square.
      */
     @Override
-    @Basic @Raw
+    @Raw
     public Temperature getTemperature() {
+        return new Temperature(getTemperatureValue());
+    }
+
+    /**
+     * Returns the temperature of this square, in degrees Celcius.
+     * If this square shares the climate of its area, the temperature is
+     * read from the area record of this square.
+     */
+    @Override
+    @Basic @Raw
+    public double getTemperatureValue() {
+        if (areaRecord != null && areaRecord.hasClimate())
+            return areaRecord.getTemperatureValue();
         return temperature;
     }
 
     /** 
      * Checks whether the given temperature is valid for this square. 
+     *
+     * @return
+     *   | result == (temperature != null
+     *   |      &amp;&amp; canHaveAsTemperatureValue(temperature.temperature()))
      */
     @Override
     public boolean canHaveAsTemperature(Temperature temperature){
-        return matchesMinTemperatureMax(getMinTemperature(), temperature,
-                getMaxTemperature());
+        return temperature != null
+                && canHaveAsTemperatureValue(temperature.temperature());
+    }
+
+    /** 
+     * Checks whether the given temperature value is valid for this square. 
+     *
+     * @return
+     *   | result == matchesMinTemperatureMax(getMinTemperatureValue(),
+     *   |                              value, getMaxTemperatureValue())
+     */
+    @Override
+    public boolean canHaveAsTemperatureValue(double value) {
+        return matchesMinTemperatureMax(getMinTemperatureValue(), value,
+                getMaxTemperatureValue());
     }
 
     /**
@@ -161,14 +196,35 @@ abstract public class SquareImpl implements Square {
     public void setTemperature(Temperature temperature)
                         throws IllegalArgumentException,
                                 EquilibratingSquaresViolatesLimitsException {
-        if (! canHaveAsTemperature(temperature))
+        if (temperature == null)
             throw new IllegalArgumentException();
-        Temperature oldTemperature = getTemperature();
-        setTemperatureRaw(temperature);
+        setTemperatureValue(temperature.temperature());
+    }
+
+    /**
+     * Sets the temperature of this square to the given value and 
+     * equilibrate its area afterwards.
+     */
+    @Override
+    @Raw
+    public void setTemperatureValue(double value)
+                        throws IllegalArgumentException,
+                                EquilibratingSquaresViolatesLimitsException {
+        if (! canHaveAsTemperatureValue(value))
+            throw new IllegalArgumentException();
+        if (EquilibrationBatch.recordClimate(this)) {
+            setTemperatureValueRaw(value);
+            EquilibrationBatch.defer(this);
+            return;
+        }
+        if (!isTerminated() && new Area().spreadTemperature(value))
+            return;
+        double oldValue = getTemperatureValue();
+        setTemperatureValueRaw(value);
         try {
             equilibrateMyArea();
         } catch (EquilibratingSquaresViolatesLimitsException e) {
-            setTemperatureRaw(oldTemperature);
+            setTemperatureValueRaw(oldValue);
             throw e;
         }
     }
@@ -181,20 +237,91 @@ abstract public class SquareImpl implements Square {
     public void setTemperatureRaw(Temperature temperature)
                                             throws IllegalArgumentException {
         assert canHaveAsTemperature(temperature);
+        setTemperatureValueRaw(temperature.temperature());
+    }
+
+    /**
+     * Sets the temperature of this square to the given value, without 
+     * equilibrating its area.
+     * If an equilibration batch is open, it remembers the climate of this 
+     * square from before the change, so that it can be rolled back.
+     */
+    @Override
+    @Raw
+    public void setTemperatureValueRaw(double value)
+                                            throws IllegalArgumentException {
+        assert canHaveAsTemperatureValue(value);
+        EquilibrationBatch.recordClimate(this);
+        AreaRecord.unshareClimateOf(this);
+        this.temperature = value;
+        climateChanged();
+    }
+
+    /**
+     * Set the temperature and humidity of this square to the given 
+     * values, without taking the climate shared by its area into account.
+     *
+     * @param temperature
+     * The temperature for this square.
+     * @param humidity
+     * The humidity for this square.
+     * @note
+     * This is only meant for the area record of this square, which takes 
+     * care of the climate that its members share, and for rocks that 
+     * cache their proper temperature.
+     */
+    @Raw
+    void setClimateRaw(double temperature, int humidity) {
         this.temperature = temperature;
+        this.humidity = humidity;
+    }
+
+    /**
+     * Register that the climate or the temperature limits of this square 
+     * have changed.
+     * This gives a new version to the area records of this square and of 
+     * the squares it borders on, as their areas may no longer be 
+     * equilibrated. The records of the squares bordering on a neighbouring 
+     * rock get a new version as well, as the proper temperature of that 
+     * rock depends on this square.
+     */
+    @Raw
+    void climateChanged() {
+        AreaRecord.touch(this);
+        for (Border border : borders.values()) {
+            if (border.isTerminated())
+                continue;
+            Square neighbour = border.getNeighbour(this);
+            if (neighbour == null)
+                continue;
+            AreaRecord.touch(neighbour);
+            if (neighbour instanceof Rock)
+                for (Square other : neighbour.getNeighbours().values())
+                    AreaRecord.touch(other);
+        }
     }
 
     /** 
-     * Variable registering the current temperature of this square.
+     * Variable registering the current temperature of this square, in 
+     * degrees Celcius.
      */
-    private Temperature temperature;
+    private double temperature;
 
     /**
      * Returns the minimum temperature for this square.
      */
     @Override
-    @Basic @Raw
+    @Raw
     public Temperature getMinTemperature() {
+        return new Temperature(minTemperature);
+    }
+
+    /**
+     * Returns the minimum temperature for this square, in degrees Celcius.
+     */
+    @Override
+    @Basic @Raw
+    public double getMinTemperatureValue() {
         return minTemperature;
     }
 
@@ -204,8 +331,8 @@ abstract public class SquareImpl implements Square {
      */
     @Override
     public boolean canHaveAsMinTemperature(Temperature min) {
-        return matchesMinTemperatureMax(min, getTemperature(),
-                getMaxTemperature());
+        return min != null && matchesMinTemperatureMax(min.temperature(),
+                getTemperatureValue(), getMaxTemperatureValue());
     }
 
     /** 
@@ -232,20 +359,32 @@ abstract public class SquareImpl implements Square {
      */
     @Raw
     protected void setMinTemperatureRaw(Temperature min) {
-          minTemperature = min;
+          minTemperature = min.temperature();
+          AreaRecord.limitsChanged(this);
+          climateChanged();
     }
 
     /** 
-     * Variable referencing the minimum temperature of this square. 
+     * Variable registering the minimum temperature of this square, in 
+     * degrees Celcius. 
      */
-    private Temperature minTemperature;
+    private double minTemperature;
 
     /**
      * Returns the maximum temperature for this square.
      */
     @Override
-    @Basic @Raw
+    @Raw
     public Temperature getMaxTemperature() {
+        return new Temperature(maxTemperature);
+    }
+
+    /**
+     * Returns the maximum temperature for this square, in degrees Celcius.
+     */
+    @Override
+    @Basic @Raw
+    public double getMaxTemperatureValue() {
         return maxTemperature;
     }
 
@@ -261,8 +400,9 @@ abstract public class SquareImpl implements Square {
      *   |                              getTemperature(), min)
      */
     public boolean canHaveAsMaxTemperature(Temperature max) {
-        return matchesMinTemperatureMax(getMinTemperature(),
-                getTemperature(), max);
+        return max != null && matchesMinTemperatureMax(
+                getMinTemperatureValue(), getTemperatureValue(),
+                max.temperature());
     }
 
     /** 
@@ -274,7 +414,7 @@ abstract public class SquareImpl implements Square {
                                 throws IllegalArgumentException {
         if (! canHaveAsMaxTemperature(max))
             throw new IllegalArgumentException();
-        maxTemperature = max;
+        setMaxTemperatureRaw(max);
     }
     
     /** 
@@ -289,13 +429,16 @@ abstract public class SquareImpl implements Square {
      */
     @Raw
     protected void setMaxTemperatureRaw(Temperature max) {
-        maxTemperature = max;
+        maxTemperature = max.temperature();
+        AreaRecord.limitsChanged(this);
+        climateChanged();
     }
 
     /** 
-     * Variable referencing the maximum temperature of this square. 
+     * Variable registering the maximum temperature of this square, in 
+     * degrees Celcius. 
      */
-    private Temperature maxTemperature;
+    private double maxTemperature;
 
     /**
      * Check whether the given temperature matches with the given 
@@ -307,8 +450,31 @@ abstract public class SquareImpl implements Square {
         return minTemperature != null 
             && temperature != null
             && maxTemperature != null
-            && minTemperature.compareTo(temperature) <= 0
-            && temperature.compareTo(maxTemperature) <= 0;
+            && matchesMinTemperatureMax(minTemperature.temperature(),
+                    temperature.temperature(), maxTemperature.temperature());
+    }
+
+    /**
+     * Check whether the given temperature value matches with the given 
+     * temperature limits, all in degrees Celcius, without creating 
+     * temperature objects.
+     *
+     * @param minTemperature 
+     * The minimum temperature value.
+     * @param temperature 
+     * The actual temperature value.
+     * @param maxTemperature 
+     * The maximum temperature value.
+     * @return 
+     *   | result == 
+     *   |    Temperature.compare(minTemperature, temperature) &lt;= 0
+     *   |    &amp;&amp; 
+     *   |    Temperature.compare(temperature, maxTemperature) &lt;= 0
+     */
+    public static boolean matchesMinTemperatureMax(double minTemperature,
+                                double temperature, double maxTemperature) {
+        return Temperature.compare(minTemperature, temperature) <= 0
+            && Temperature.compare(temperature, maxTemperature) <= 0;
     }
 
     /** 
@@ -326,7 +492,7 @@ abstract public class SquareImpl implements Square {
      */
     @Override
     public int coldDamage() {
-        double temp = getTemperature().temperature();
+        double temp = getTemperatureValue();
         if (temp > COLD_DAMAGE_THRESHOLD)
             return 0;
         return 1 + (int)((COLD_DAMAGE_THRESHOLD - temp) / COLD_DAMAGE_STEP);
@@ -357,10 +523,10 @@ abstract public class SquareImpl implements Square {
      */
     @Override
     public int heatDamage() {
-        if (getTemperature().compareTo(getHeatDamageThreshold()) < 0)
-            return 0;
-        double temp = getTemperature().temperature();
+        double temp = getTemperatureValue();
         double threshold = getHeatDamageThreshold().temperature();
+        if (Temperature.compare(temp, threshold) < 0)
+            return 0;
         return 1 + (int)((temp - threshold) / getHeatDamageStep());
     }
 
@@ -483,6 +649,8 @@ abstract public class SquareImpl implements Square {
     @Basic @Raw
     @Override
     public int getHumidity() {
+        if (areaRecord != null && areaRecord.hasClimate())
+            return areaRecord.getHumidity();
         return humidity;
     }
 
@@ -527,11 +695,17 @@ abstract public class SquareImpl implements Square {
 
     /**
      * Set the humidity for this square to the given humidity.
+     * If an equilibration batch is open, the area of this square gets 
+     * equilibrated when the batch is closed.
      */
     @Raw
     public void setHumidity(int humidity) {
         assert canHaveAsHumidity(humidity);
+        if (EquilibrationBatch.recordClimate(this))
+            EquilibrationBatch.defer(this);
+        AreaRecord.unshareClimateOf(this);
         this.humidity = humidity;
+        climateChanged();
     }
     
     /**
@@ -593,7 +767,7 @@ abstract public class SquareImpl implements Square {
      */
     @Override
     public boolean isSlipperyBecauseOfHumidity() {
-        return getHumidity() == 10000 && getTemperature().temperature() > 0;
+        return getHumidity() == 10000 && getTemperatureValue() > 0;
     }
 
     /** 
@@ -602,7 +776,7 @@ abstract public class SquareImpl implements Square {
      */
     @Override
     public boolean isSlipperyBecauseOfTemperature() {
-        return getTemperature().temperature() < 0 && getHumidity() > 1000;
+        return getTemperatureValue() < 0 && getHumidity() > 1000;
     }
 
     /** 
@@ -724,6 +898,9 @@ abstract public class SquareImpl implements Square {
             throw new IllegalArgumentException();
 
         Border oldBorder = getBorderAt(direction);
+        Square oldNeighbour = getOpenNeighbourThrough(oldBorder);
+        Square oldAdjacent = (oldBorder == null || oldBorder.isTerminated())
+                                    ? null : oldBorder.getNeighbour(this);
         setBorderAt(direction, border);
         if (!bordersSatisfyConstraints()){
             setBorderAt(direction, oldBorder);
@@ -735,10 +912,75 @@ abstract public class SquareImpl implements Square {
         else
             oldBorder.detatchFromSquare(this);
 
-        if (!isTerminated())
+        Square newNeighbour = getOpenNeighbourThrough(border);
+        if (oldNeighbour != null && oldNeighbour != newNeighbour)
+            AreaRecord.disconnect(this, oldNeighbour);
+        if (newNeighbour != null)
+            AreaRecord.connect(this, newNeighbour);
+        AreaRecord.neighboursChanged(this);
+        AreaRecord.neighboursChanged(oldAdjacent);
+        if (border != null && !border.isTerminated())
+            AreaRecord.neighboursChanged(border.getNeighbour(this));
+
+        if (borderListeners != null)
+            for (BorderListener listener : borderListeners)
+                listener.borderChanged(this, direction, oldBorder, border);
+
+        if (isTerminated()) {
+            if (oldAdjacent != null)
+                EquilibrationBatch.defer(oldAdjacent);
+        } else if (!EquilibrationBatch.defer(this)) {
             equilibrateMyArea();
+        }
+    }
+
+    /** 
+     * Return the square that this square is openly connected to through 
+     * the given border.
+     * 
+     * @param border 
+     * The border to look through.
+     * @return 
+     *   | if (border == null || !border.isOpen())
+     *   |      then result == null
+     *   |      else result == border.getNeighbour(this)
+     */
+    @Raw
+    private Square getOpenNeighbourThrough(@Raw Border border) {
+        if (border == null || border.isTerminated() || !border.isOpen())
+            return null;
+        return border.getNeighbour(this);
+    }
+
+    @Override
+    public void addBorderListener(BorderListener listener) {
+        if (listener == null || hasAsBorderListener(listener))
+            return;
+        if (borderListeners == null)
+            borderListeners = new ArrayList<BorderListener>(1);
+        borderListeners.add(listener);
+    }
+
+    @Override
+    public void removeBorderListener(BorderListener listener) {
+        if (borderListeners == null)
+            return;
+        borderListeners.remove(listener);
+        if (borderListeners.isEmpty())
+            borderListeners = null;
+    }
+
+    @Basic @Override
+    public boolean hasAsBorderListener(BorderListener listener) {
+        return borderListeners != null && borderListeners.contains(listener);
     }
 
+    /** 
+     * Variable referencing the listeners to notify of changes of the 
+     * borders of this square, or null if there are none.
+     */
+    private List<BorderListener> borderListeners = null;
+
     /** 
      * Update the border of this square to the given border.
      */
@@ -795,9 +1037,99 @@ abstract public class SquareImpl implements Square {
      */
     @Override
     public Set<Square> getNavigatableSquares() {
-        return new HashSet<Square>(getAccessibleNeighbours().values());
+        Set<Square> result =
+                        new HashSet<Square>(getAccessibleNeighbours().values());
+        result.addAll(getTeleportationDestinations());
+        return result;
+    }
+
+    /** 
+     * Return the squares that this square can teleport to.
+     * Squares without a teleporter cannot teleport anywhere.
+     */
+    Set<Square> getTeleportationDestinations() {
+        return Collections.emptySet();
+    }
+
+    /** 
+     * Store the squares that can directly be navigated to from this square 
+     * in the given array, from its first element onwards, followed by null.
+     * This serves the searches over the navigatable squares, which call it 
+     * for each square they visit and reuse the same array throughout, 
+     * rather than building a new set for each of those squares.
+     * 
+     * @param buffer
+     * The array to store the squares in.
+     * @return
+     * The given array, if it is large enough, or a new, larger array 
+     * otherwise. A square that can be reached both through an open border 
+     * and through a teleporter may be stored twice.
+     *   | for each square in getNavigatableSquares() :
+     *   |      for some i in 0..result.length-1 :
+     *   |          result[i] == square
+     *   |              &amp;&amp; for each j in 0..i-1 : result[j] != null
+     */
+    Square[] collectNavigatableSquares(Square[] buffer) {
+        Set<Square> destinations = getTeleportationDestinations();
+        int capacity = DIRECTIONS.length + destinations.size() + 1;
+        if (buffer.length < capacity)
+            buffer = new Square[Math.max(capacity, 2 * buffer.length)];
+        int size = 0;
+        for (Direction direction : DIRECTIONS) {
+            Border border = getBorderAt(direction);
+            if (border == null)
+                continue;
+            Square neighbour = border.getNeighbour(this);
+            if (neighbour != null  &&  acceptOpenlyConnectedNeighboursFilter
+                                        .filter(this, border, neighbour))
+                buffer[size++] = neighbour;
+        }
+        for (Square destination : destinations)
+            buffer[size++] = destination;
+        buffer[size] = null;
+        return buffer;
+    }
+
+    /** 
+     * Store the squares that can directly be navigated to from the given 
+     * square in the given array, from its first element onwards, followed 
+     * by null.
+     * 
+     * @param square
+     * The square to navigate from.
+     * @param buffer
+     * The array to store the squares in.
+     * @return
+     * If the given square is a SquareImpl, its squares get collected 
+     * without building a set.
+     *   | if (square instanceof SquareImpl)
+     *   |      then result == 
+     *   |          ((SquareImpl) square).collectNavigatableSquares(buffer)
+     * @return
+     * Otherwise, the result holds the navigatable squares of the given 
+     * square, as it reports them, followed by null. It is the given array 
+     * if that is large enough, or a new, larger array otherwise.
+     */
+    static Square[] collectNavigatableSquaresOf(Square square,
+                                                    Square[] buffer) {
+        if (square instanceof SquareImpl)
+            return ((SquareImpl) square).collectNavigatableSquares(buffer);
+        Set<Square> navigatable = square.getNavigatableSquares();
+        if (buffer.length <= navigatable.size())
+            buffer = new Square[Math.max(navigatable.size() + 1,
+                                                    2 * buffer.length)];
+        int size = 0;
+        for (Square next : navigatable)
+            buffer[size++] = next;
+        buffer[size] = null;
+        return buffer;
     }
 
+    /**
+     * Constant referencing all directions.
+     */
+    private static final Direction[] DIRECTIONS = Direction.values();
+
     /** 
      * Return a list of neighbouring squares that satisfy the given filter.
      */
@@ -937,8 +1269,8 @@ abstract public class SquareImpl implements Square {
     public void mergeTemperatures(Square other)
                         throws MergingTemperaturesViolatesLimitsException {
         assert other != null;
-        double thisTemp = this.getTemperature().temperature();
-        double otherTemp = other.getTemperature().temperature();
+        double thisTemp = this.getTemperatureValue();
+        double otherTemp = other.getTemperatureValue();
 
         double averageHumidity = (getHumidity() + other.getHumidity()) / 2.0;
 
@@ -950,14 +1282,13 @@ abstract public class SquareImpl implements Square {
 
         double newTempValue = ((thisWeight) * thisTemp
                 + (otherWeight) * otherTemp) / 2.0;
-        Temperature newTemp = new Temperature(newTempValue);
 
-        if (!this.canHaveAsTemperature(newTemp)
-                || !other.canHaveAsTemperature(newTemp))
+        if (!this.canHaveAsTemperatureValue(newTempValue)
+                || !other.canHaveAsTemperatureValue(newTempValue))
             throw new MergingTemperaturesViolatesLimitsException();
 
-        this.setTemperatureRaw(newTemp);
-        other.setTemperatureRaw(newTemp);
+        this.setTemperatureValueRaw(newTempValue);
+        other.setTemperatureValueRaw(newTempValue);
     }
 
     /**
@@ -1086,6 +1417,9 @@ abstract public class SquareImpl implements Square {
 	/** 
 	 * A class collecting methods that relate to the concept of an area 
 	 * surrounding this square.
+	 * The squares of the area are kept up to date by the area record of 
+	 * this square as borders change, rather than being rediscovered on 
+	 * every query.
 	 */
 	public class Area {
 
@@ -1098,14 +1432,21 @@ abstract public class SquareImpl implements Square {
 		 */
 		@Basic
 		public Set<Square> getArea() throws IllegalStateException {
+			return new HashSet<Square>(getMembers());
+		}
+
+		/** 
+		 * Returns the squares in this area associated to this square, as 
+		 * kept by the area record of this square.
+		 * The resulting set must not be modified.
+		 * 
+		 * @throws IllegalStateException
+		 *   | SquareImpl.this.isTerminated()
+		 */
+		private Set<Square> getMembers() throws IllegalStateException {
 			if (SquareImpl.this.isTerminated())
 				throw new IllegalStateException();
-			Set<Square> squareSet = new HashSet<Square>();
-			Square square = SquareImpl.this;
-			squareSet.add(square);
-			addNeighbouringSquaresRecursively(squareSet,
-                            Square.acceptOpenlyConnectedNeighboursFilter);
-			return squareSet;
+			return AreaRecord.getAreaOf(SquareImpl.this);
 		}
 
 		/** 
@@ -1120,22 +1461,33 @@ abstract public class SquareImpl implements Square {
 		public Set<Square> getBoundary() throws IllegalStateException {
 			if (SquareImpl.this.isTerminated())
 				throw new IllegalStateException();
-			return getNeighbouringSquaresOnly(getArea(),
-									Square.acceptAllNeighboursFilter);
+			return new HashSet<Square>(getBoundary(getMembers()));
 		}
 
 		/** 
-		 * Return the boundary of the given set of squares.
+		 * Return the boundary of the given members of this area.
+		 * The boundary is cached by the area record of this square until 
+		 * the neighbours of one of its members change. The resulting set 
+		 * must not be modified.
 		 * 
 		 * @param area 
-		 * The set of squares whose boundary to return.
+		 * The members of this area.
+		 * @pre
+		 *   | area == getMembers()
 		 * @return 
-		 *   | result == getNeighbouringSquaresOnly(area,
-		 *   |				Square.acceptAllNeighboursFilter)
+		 *   | result.equals(getNeighbouringSquaresOnly(area,
+		 *   |				Square.acceptAllNeighboursFilter))
 		 */
 		private Set<Square> getBoundary(@Raw Set<Square> area) {
-			return getNeighbouringSquaresOnly(area,
+			assert area == getMembers();
+			AreaRecord record = getAreaRecord();
+			Set<Square> boundary = record.getBoundary();
+			if (boundary == null) {
+				boundary = getNeighbouringSquaresOnly(area,
 									Square.acceptAllNeighboursFilter);
+				record.setBoundary(boundary);
+			}
+			return boundary;
 		}
 
 		/** 
@@ -1154,6 +1506,10 @@ abstract public class SquareImpl implements Square {
 		 *   |   (for each square in getBoundary(getArea()) :
 		 *   |      square.canHaveAsTemperature(square.getTemperature())
 		 *   |      &amp;&amp; square.canHaveAsHumidity(square.getHumidity())))
+		 * @note
+		 * A positive outcome is remembered by the area record of this 
+		 * square, along with the version of that record. As long as that 
+		 * version does not change, the area is not walked again.
 		 * @throws IllegalStateException
 		 *   | SquareImpl.this.isTerminated()
 		 */
@@ -1161,18 +1517,26 @@ abstract public class SquareImpl implements Square {
 		public boolean isEquilibrated() throws IllegalStateException {
 			if (SquareImpl.this.isTerminated())
 				throw new IllegalStateException();
-			Set<Square> area = getArea();
-			Temperature myTemperature = getTemperature();
+			Set<Square> area = getMembers();
+			double myTemperature = getTemperatureValue();
 			int myHumidity = getHumidity();
-			for (Square square : area)
-				if (!square.getTemperature().equals(myTemperature)
-							|| square.getHumidity() != myHumidity)
-					return false;
+			AreaRecord record = getAreaRecord();
+			if (record.isKnownEquilibrated())
+				return true;
+			long version = record.getVersion();
+			if (!record.hasClimate())
+				for (Square square : area)
+					if (!Temperature.areEqual(square.getTemperatureValue(),
+												myTemperature)
+								|| square.getHumidity() != myHumidity)
+						return false;
 			Set<Square> boundary = getBoundary(area);
 			for (Square square : boundary)
-				if (!square.canHaveAsTemperature(square.getTemperature())
+				if (!square.canHaveAsTemperatureValue(
+											square.getTemperatureValue())
                         || !square.canHaveAsHumidity(square.getHumidity()))
 					return false;
+			record.setEquilibratedAt(version);
 			return true;
 		}
 
@@ -1191,7 +1555,7 @@ abstract public class SquareImpl implements Square {
 		 */
 		public void equilibrate() 
 							throws EquilibratingSquaresViolatesLimitsException {
-			Set<Square> area = getArea();
+			Set<Square> area = getMembers();
 			equilibrateAreaInternally(area);
 			Set<Square> boundary = getBoundary(area);
 			equilibrateBoundary(boundary);
@@ -1208,7 +1572,7 @@ abstract public class SquareImpl implements Square {
          */
         public void equilibrateAreaInternally()
 							throws EquilibratingSquaresViolatesLimitsException {
-            equilibrateAreaInternally(getArea());
+            equilibrateAreaInternally(getMembers());
         }
         /**
          * Equilibrate the boundary of this area.
@@ -1251,93 +1615,165 @@ abstract public class SquareImpl implements Square {
 			return result;
 		}
 
-		/** 
-         * Recursively expand the given set of squares with all neighbours 
-         * of its squares according to the given neighbourfilter.
-		 * 
-		 * @param squares 
-		 * The set of squares to expand.
-		 * @param nf 
-		 * The neighbourfilter to use.
-		 * @pre
-		 *   | squares != null  &amp;&amp;  nf != null
-		 * @post
-		 * new.squares is a maximal recursive expansion of old.squares, by 
-		 * adding all neighbouring squares that satisfy the given neighbour 
-		 * filter.
-		 */
-		@Raw
-		private void addNeighbouringSquaresRecursively(
-                                                @Raw Set<Square> squares,
-                                                Square.NeighbourFilter nf) {
-			assert squares != null;
-			assert nf != null;
-			Queue<Square> queue = new LinkedList<Square>();
-			queue.addAll(squares);
-			while (!queue.isEmpty()) {
-				Square next = queue.remove();
-				for (Square neigh : next.getFilteredNeighbours(nf).values()) {
-					if (!squares.contains(neigh)) {
-						squares.add(neigh);
-						queue.add(neigh);
-					}
-				}
-			}
-		}
-
 		/** 
 		 * Equilibrate the temperatures and humidities betwneen the given 
 		 * squares.
 		 * 
 		 * @param area
-		 * The set of squares to equilibrate.
+		 * The members of this area.
+		 * @pre
+		 *   | area == getMembers()
 		 * @post
-		 * All squares in the given area have the same temperature and 
-		 * humidity.
+		 * All squares in the given area share the same temperature and 
+		 * humidity through the area record of this square.
          * The temperature is the weighted sum of the 
          * temperatures of the squares in this area, weighted by their 
          * humidities according to the merge temperature weight that 
          * applies to all squares.
          * The humidity is the average of the humidities of the squares in 
          * this area.
+		 * @note
+		 * The climates of the squares are first gathered into the arrays of 
+		 * the area record, indexed by the ids of the squares within that 
+		 * record, so the averages are computed over primitive arrays.
+		 * @effect
+		 * Each square in the boundary of this area gets a new version.
 		 */
         @Model
 		private void equilibrateAreaInternally(@Raw Set<Square> area) 
                         throws EquilibratingSquaresViolatesLimitsException {
 			if (area.size() == 0)
 				return;
+			shareEquilibratedClimate();
+			for (Square square : getBoundary(area))
+				AreaRecord.touch(square);
+		}
+
+		/** 
+		 * Let the squares of this area share their equilibrated climate, 
+		 * without touching anything outside of this area and its record.
+		 * Distinct areas can therefore be equilibrated this way on 
+		 * different threads at the same time; their boundaries are left to 
+		 * the caller.
+		 * 
+		 * @pre
+		 * The area record of this square holds exactly the squares of this 
+		 * area, as it does right after AreaRecord.getAreaOf() has been 
+		 * called for this square.
+		 * @post
+		 * All squares of this area share the climate described by 
+		 * equilibrateAreaInternally(getArea()).
+		 * @throws EquilibratingSquaresViolatesLimitsException
+		 * The equilibrated climate violates the limits of one of the 
+		 * squares of this area. This area is left untouched.
+		 */
+		void shareEquilibratedClimate()
+                        throws EquilibratingSquaresViolatesLimitsException {
+			AreaRecord record = getAreaRecord();
+			SquareImpl[] members = record.getMemberArray();
+			double[] temperatures = record.getTemperatureBuffer();
+			int[] humidities = record.getHumidityBuffer();
+			int size = members.length;
+			for (int id = 0; id < size; id++) {
+				temperatures[id] = members[id].getTemperatureValue();
+				humidities[id] = members[id].getHumidity();
+			}
 
 			double temperatureWeightedSum = 0;
 			double humiditiesSum = 0;
 			double temperatureWeightOffset = getMergeTemperatureWeight();
 			double temperatureBaseWeight = 1 - temperatureWeightOffset;
 
-			for (Square square : area) {
-				humiditiesSum  += square.getHumidity();
+			for (int id = 0; id < size; id++) {
+				humiditiesSum  += humidities[id];
 			}
-			double averageHumidity = humiditiesSum / area.size();
+			double averageHumidity = humiditiesSum / size;
 
-			for (Square square : area) {
+			for (int id = 0; id < size; id++) {
 				double temperatureWeight = temperatureWeightOffset
-                            + temperatureBaseWeight * square.getHumidity() 
+                            + temperatureBaseWeight * humidities[id] 
                                                         / averageHumidity;
 				temperatureWeightedSum += 
-                            square.getTemperature().temperature()
-                                                    * temperatureWeight;
+                            temperatures[id] * temperatureWeight;
 			}
-			Temperature newTemperature = new Temperature(
-                                    temperatureWeightedSum / area.size());
+			double newTemperature = temperatureWeightedSum / size;
 			int newHumidity = (int) Math.round(averageHumidity);
 
-			for (Square square : area){
-				if (!square.canHaveAsTemperature(newTemperature)
+			for (SquareImpl square : members) {
+				if (!square.canHaveAsTemperatureValue(newTemperature)
                                 || !square.canHaveAsHumidity(newHumidity))
 					throw new EquilibratingSquaresViolatesLimitsException();
 			}
-			for (Square square : area) {
-				square.setTemperatureRaw(newTemperature);
-				square.setHumidity(newHumidity);
-			}
+			record.shareClimate(newTemperature, newHumidity);
+		}
+
+		/** 
+		 * Spread the given new temperature of this square over this area, 
+		 * if the squares of this area share their climate.
+		 * This takes constant time apart from notifying the boundary of 
+		 * this area, as the shared climate of the area only needs to 
+		 * account for the change of this square.
+		 * 
+		 * @param temperature
+		 * The new temperature value of this square.
+		 * @pre
+		 *   | canHaveAsTemperatureValue(temperature)
+		 * @return
+		 * True iff this area has more than one square and its squares share 
+		 * a climate with a non-zero humidity, in which case this area has 
+		 * been equilibrated as if this square had been given the given 
+		 * temperature first.
+		 * @throws EquilibratingSquaresViolatesLimitsException
+		 * The squares of this area share their climate, but the resulting 
+		 * temperature violates the temperature limits of one of them. This 
+		 * area is left untouched.
+		 */
+		private boolean spreadTemperature(double temperature)
+						throws EquilibratingSquaresViolatesLimitsException {
+			int size = getMembers().size();
+			AreaRecord record = getAreaRecord();
+			if (size < 2 || !record.hasClimate() || record.getHumidity() == 0)
+				return false;
+
+			//the area shares one humidity, so the humidity weights cancel out
+			double newTemperature = ((size - 1) * record.getTemperatureValue()
+												+ temperature) / size;
+
+			if (!matchesMinTemperatureMax(record.getLowestTemperature(),
+						newTemperature, record.getHighestTemperature()))
+				throw new EquilibratingSquaresViolatesLimitsException();
+			record.shareClimate(newTemperature, record.getHumidity());
+			for (Square square : getBoundary(getMembers()))
+				AreaRecord.touch(square);
+			equilibrateBoundary(getBoundary(getMembers()));
+			return true;
+		}
+
+		/** 
+		 * Let the squares of this area share the given climate, and notify 
+		 * the boundary of this area.
+		 * 
+		 * @param temperature
+		 * The new temperature value of the squares of this area.
+		 * @param humidity
+		 * The new humidity of the squares of this area.
+		 * @pre
+		 *   | for each square in getArea() :
+		 *   |      square.canHaveAsTemperatureValue(temperature)
+		 *   |          &amp;&amp; square.canHaveAsHumidity(humidity)
+		 * @effect
+		 *   | equilibrateBoundary()
+		 * @throws IllegalStateException
+		 *   | SquareImpl.this.isTerminated()
+		 */
+		void setClimate(double temperature, int humidity)
+										throws IllegalStateException {
+			Set<Square> area = getMembers();
+			getAreaRecord().shareClimate(temperature, humidity);
+			Set<Square> boundary = getBoundary(area);
+			for (Square square : boundary)
+				AreaRecord.touch(square);
+			equilibrateBoundary(boundary);
 		}
 
 		/** 
@@ -1354,6 +1790,8 @@ abstract public class SquareImpl implements Square {
 		 * @effect
 		 *   | for each square in boundary:
 		 *   |      square.neighbourHasChangedTemperatureOrHumidity()
+		 * @effect
+		 *   | refreshClimatesOf(boundary)
 		 */
         @Model
 		private void equilibrateBoundary(@Raw Set<Square> boundary) {
@@ -1361,9 +1799,22 @@ abstract public class SquareImpl implements Square {
 			for (Square square : boundary) {
 				square.neighbourHasChangedTemperatureOrHumidity();
 			}
+			refreshClimatesOf(boundary);
 		}
 	}
 
+    /** 
+     * Checks whether the interior of the area of this square takes part in 
+     * equilibration, or only its boundary.
+     *
+     * @return
+     *   | result == true
+     */
+    @Basic @Immutable
+    boolean hasEquilibratingInterior() {
+        return true;
+    }
+
     /** 
      * Function signalling that one of the neighbours of this square has 
      * changed its temperature or humidity.
@@ -1378,28 +1829,73 @@ abstract public class SquareImpl implements Square {
         return;
     }
 
+    /** 
+     * Checks whether this square caches a climate that a change of one of 
+     * its neighbours has made stale.
+     *
+     * @return
+     *   | result == false
+     */
+    @Raw
+    boolean hasStaleClimate() {
+        return false;
+    }
+
+    /** 
+     * Bring the cached climate of this square up to date, if it is stale.
+     *
+     * @post
+     *   | !new.hasStaleClimate()
+     */
+    @Raw
+    void refreshClimate() {
+        return;
+    }
+
+    /** 
+     * Refresh the stale climates of the given squares, which have just 
+     * been notified that one of their neighbours changed.
+     * This is called on the thread that notified them. While an 
+     * equilibration batch is being closed, the refresh is postponed until 
+     * all its areas have been equilibrated, so that a square next to many 
+     * of them is refreshed only once.
+     *
+     * @param squares
+     * The squares to refresh.
+     * @effect
+     *   | for each square in squares :
+     *   |      if (square instanceof SquareImpl
+     *   |              &amp;&amp; square.hasStaleClimate()
+     *   |              &amp;&amp; !EquilibrationBatch.deferRefresh(square))
+     *   |          then square.refreshClimate()
+     */
+    static void refreshClimatesOf(Collection<? extends Square> squares) {
+        for (Square square : squares) {
+            if (!(square instanceof SquareImpl))
+                continue;
+            SquareImpl squareImpl = (SquareImpl) square;
+            if (squareImpl.hasStaleClimate()
+                            && !EquilibrationBatch.deferRefresh(squareImpl))
+                squareImpl.refreshClimate();
+        }
+    }
+
     /** 
      * Checks whether it is possible to navigate to the given destination 
      * square, starting from this square.
      *
-     * The implementation does a depth-first traversal of the neighbouring 
-     * squares of this square on a spanning tree of the graph of 
-     * navigatable squares.
+     * If the destination lies in the area of this square, it can be 
+     * reached through open borders alone, which the area record of this 
+     * square answers without any search. Note that a bidirectional search 
+     * would only pay off in that same case: teleporters only lead one way, 
+     * so they cannot be followed backwards from the destination.
      *
-     * Its average time complexity is linear in the number of squares that 
-     * are openly connected to this square. Hence, in general, if this 
-     * square is part of a dungeon, the average time complexity is 
-     * linear in the number of squares in the root dungeon.
-     * 
-     * Note that the <i>worst</i> case time complexity is superlinear 
-     * (probably quadratic, depending on the implementation of java's 
-     * HashSet). This happens in the pathological case where all 
-     * squares hash to the same value.
-     *
-     * Also note that that if the containing dungeon of this square were to 
-     * enforce extra constraints (eg. open areas can be no larger than N 
-     * squares), the time complexity would effectively reduce to 
-     * constant-time. 
+     * Otherwise, the implementation does an iterative depth-first 
+     * traversal of the graph of navigatable squares, with an explicit 
+     * frontier and a set of visited squares that compares squares by 
+     * identity. Its time and memory complexity are linear in the number of 
+     * squares that can be reached from this square, and the depth of the 
+     * traversal is not limited by the size of the call stack.
      *
      * Finally, note that smarter search strategies could be employed at 
      * the level of dungeons, where, for instance, the distance between the 
@@ -1411,8 +1907,12 @@ abstract public class SquareImpl implements Square {
                                             throws IllegalArgumentException {
         if (destination == null)
             throw new IllegalArgumentException();
-        
-        Set<Square> visited = new HashSet<Square>();
+
+        if (!isTerminated() && !destination.isTerminated()
+                    && AreaRecord.getAreaOf(this).contains(destination))
+            return true;
+        Set<Square> visited = Collections.newSetFromMap(
+                                    new IdentityHashMap<Square, Boolean>());
         return canNavigateTo(destination, visited);
     }
 
@@ -1420,6 +1920,8 @@ abstract public class SquareImpl implements Square {
      * Checks whether the given destination square can be reached, starting 
      * from this square and only moving through open borders, without 
      * visiting a square that is in the given set of already visited squares.
+     * The squares are traversed iteratively, so the length of the path to 
+     * the destination is not limited by the size of the call stack.
      */
     @Override
     public boolean canNavigateTo(Square destination, Set<Square> visited) {
@@ -1434,13 +1936,98 @@ abstract public class SquareImpl implements Square {
             return false;
 
         visited.add(this);
-
-        for (Square square : getNavigatableSquares())
-            if (square.canNavigateTo(destination, visited))
-                return true;
+        Deque<Square> frontier = new ArrayDeque<Square>();
+        frontier.push(this);
+        Square[] next = new Square[INITIAL_NEXT_CAPACITY];
+        while (!frontier.isEmpty()) {
+            next = collectNavigatableSquaresOf(frontier.pop(), next);
+            for (int i = 0; next[i] != null; i++) {
+                Square square = next[i];
+                if (square.equals(destination))
+                    return true;
+                if (visited.add(square))
+                    frontier.push(square);
+            }
+        }
         return false;
     }
 
+    /** 
+     * Return the set of squares that can be navigated to, starting from 
+     * this square.
+     * The resulting set compares squares by identity.
+     */
+    @Override
+    public Set<Square> getReachableSquares() {
+        return exploreReachableSquares(null);
+    }
+
+    /** 
+     * Return the set of the given targets that can be navigated to, 
+     * starting from this square, in a single traversal.
+     */
+    @Override
+    public Set<Square> getNavigatableSquaresAmong(
+                                        Collection<? extends Square> targets)
+                                            throws IllegalArgumentException {
+        if (targets == null)
+            throw new IllegalArgumentException();
+        Set<Square> remaining = Collections.newSetFromMap(
+                                    new IdentityHashMap<Square, Boolean>());
+        for (Square target : targets) {
+            if (target == null)
+                throw new IllegalArgumentException();
+            remaining.add(target);
+        }
+        Set<Square> visited = exploreReachableSquares(remaining);
+        remaining.retainAll(visited);
+        return remaining;
+    }
+
+    /** 
+     * Visit the squares that can be navigated to, starting from this 
+     * square, with an iterative depth-first traversal.
+     * 
+     * @param targets
+     * The squares to look for, or null to visit all squares that can be 
+     * navigated to.
+     * @return
+     * A new set, comparing squares by identity, of the squares that have 
+     * been visited. If targets is not null, the traversal stops as soon as 
+     * all targets have been visited.
+     */
+    private Set<Square> exploreReachableSquares(Set<Square> targets) {
+        Set<Square> visited = Collections.newSetFromMap(
+                                    new IdentityHashMap<Square, Boolean>());
+        int nbTargetsLeft = targets == null ? -1 : targets.size();
+        visited.add(this);
+        if (targets != null && targets.contains(this))
+            nbTargetsLeft--;
+        Deque<Square> frontier = new ArrayDeque<Square>();
+        frontier.push(this);
+        Square[] next = new Square[INITIAL_NEXT_CAPACITY];
+        while (nbTargetsLeft != 0 && !frontier.isEmpty()) {
+            next = collectNavigatableSquaresOf(frontier.pop(), next);
+            for (int i = 0; next[i] != null; i++) {
+                Square square = next[i];
+                if (!visited.add(square))
+                    continue;
+                if (targets != null && targets.contains(square)
+                                    && --nbTargetsLeft == 0)
+                    break;
+                frontier.push(square);
+            }
+        }
+        return visited;
+    }
+
+    /**
+     * Constant registering the initial length of the array in which the 
+     * searches over the navigatable squares collect the squares that can 
+     * be navigated to from the square they visit.
+     */
+    private static final int INITIAL_NEXT_CAPACITY = 8;
+
     /**
      * Return the termination status for this square.
      */
@@ -1474,6 +2061,35 @@ abstract public class SquareImpl implements Square {
      */
     private boolean isTerminated = false;
 
+    /**
+     * Return the record that keeps track of the area of this square, or 
+     * null if this square has not been assigned a record yet.
+     */
+    @Basic @Raw
+    AreaRecord getAreaRecord() {
+        return areaRecord;
+    }
+
+    /**
+     * Set the record that keeps track of the area of this square to the 
+     * given record.
+     *
+     * @param areaRecord
+     * The new record for this square.
+     * @post
+     *   | new.getAreaRecord() == areaRecord
+     */
+    @Raw
+    void setAreaRecord(AreaRecord areaRecord) {
+        this.areaRecord = areaRecord;
+    }
+
+    /**
+     * Variable referencing the record that keeps track of the area of 
+     * this square.
+     */
+    private AreaRecord areaRecord = null;
+
 
     public String summarizedStatusString() {
         if (isTerminated())
@@ -1499,8 +2115,8 @@ abstract public class SquareImpl implements Square {
             && isValidMergeTemperatureWeight(getMergeTemperatureWeight()) 
             && isValidHeatDamageThreshold(getHeatDamageThreshold()) 
             && isValidHeatDamageStep(getHeatDamageStep()) 
-            && matchesMinTemperatureMax(getMinTemperature(),
-                                    getTemperature(), getMaxTemperature())
+            && matchesMinTemperatureMax(getMinTemperatureValue(),
+                            getTemperatureValue(), getMaxTemperatureValue())
             && canHaveAsHumidity(getHumidity()) 
             && hasProperBorders()
             && bordersSatisfyConstraints()
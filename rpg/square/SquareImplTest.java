@@ -10,6 +10,11 @@ import rpg.util.*;
 import static org.junit.Assert.*;
 import org.junit.*;
 
+import java.util.Set;
+import java.util.HashSet;
+import java.util.List;
+import java.util.ArrayList;
+
 /**
  * A class collecting tests for the abstract class of squares.
  *
@@ -120,6 +125,23 @@ public class SquareImplTest {
         assertEquals(T50, connectedSquare1.getTemperature());
         assertEquals(T50, connectedSquare2.getTemperature());
     }
+    @Test
+    public void setTemperatureValue_properEquilibration() {
+        connectedSquare1.setTemperatureValue(100);
+        assertEquals(50, connectedSquare1.getTemperatureValue(), 1e-9);
+        assertEquals(50, connectedSquare2.getTemperatureValue(), 1e-9);
+        assertEquals(new Temperature(50), connectedSquare2.getTemperature());
+    }
+    @Test
+    public void canHaveAsTemperatureValue_limits() {
+        assertEquals(100, connectedSquare2.getMaxTemperatureValue(), 0);
+        assertEquals(0, connectedSquare2.getMinTemperatureValue(), 0);
+        assertTrue(connectedSquare2.canHaveAsTemperatureValue(100));
+        assertFalse(connectedSquare2.canHaveAsTemperatureValue(100.5));
+        assertFalse(connectedSquare2.canHaveAsTemperature(null));
+        assertTrue(SquareImpl.matchesMinTemperatureMax(0, 0, 0));
+        assertFalse(SquareImpl.matchesMinTemperatureMax(1, 0, 2));
+    }
     @Test 
     public void setTemperature_equilibrationViolatesLimits() {
         Temperature T1000 = new Temperature(1000);
@@ -643,6 +665,78 @@ public class SquareImplTest {
         assertTrue(regTelSq2.canNavigateTo(regTelSq1));
     }
 
+    @Test
+    public void getReachableSquares_test() {
+        Square first = new RegularSquare();
+        Square second = new RegularSquare();
+        Square destination = new RegularSquare();
+        Square teleport = new RegularTeleportationSquare(
+                                                new Teleporter(destination));
+        first.mergeWith(second, Direction.NORTH);
+        second.mergeWith(teleport, Direction.NORTH);
+        Set<Square> reachable = first.getReachableSquares();
+        assertEquals(4, reachable.size());
+        assertTrue(reachable.contains(destination));
+        assertEquals(1, destination.getReachableSquares().size());
+
+        List<Square> targets = new ArrayList<Square>();
+        targets.add(destination);
+        targets.add(first);
+        targets.add(new RegularSquare());
+        Set<Square> found = second.getNavigatableSquaresAmong(targets);
+        assertEquals(2, found.size());
+        assertTrue(found.contains(destination));
+        assertTrue(found.contains(first));
+        assertTrue(destination.getNavigatableSquaresAmong(
+                                    new ArrayList<Square>()).isEmpty());
+    }
+
+    @Test (expected = IllegalArgumentException.class)
+    public void getNavigatableSquaresAmong_null() {
+        new RegularSquare().getNavigatableSquaresAmong(null);
+    }
+
+    @Test
+    public void canNavigateTo_longChain() {
+        Square first = new RegularSquare();
+        Square last = first;
+        EquilibrationBatch.begin();
+        for (int i = 0; i < 50000; i++) {
+            Square next = new RegularSquare();
+            last.mergeWith(next, Direction.NORTH);
+            last = next;
+        }
+        EquilibrationBatch.end();
+        assertTrue(first.canNavigateTo(last));
+        assertTrue(first.canNavigateTo(last, new HashSet<Square>()));
+        assertFalse(first.canNavigateTo(new RegularSquare()));
+    }
+
+    @Test
+    public void borderListener_test() {
+        final Border[] seen = new Border[2];
+        BorderListener listener = new BorderListener() {
+            public void borderChanged(Square square, Direction direction,
+                                      Border oldBorder, Border newBorder) {
+                assertEquals(Direction.DOWN, direction);
+                assertTrue(newBorder.isSlippery());
+                seen[0] = oldBorder;
+                seen[1] = newBorder;
+            }
+        };
+        squareDefault.addBorderListener(listener);
+        assertTrue(squareDefault.hasAsBorderListener(listener));
+        Border oldFloor = squareDefault.getBorderAt(Direction.DOWN);
+        Wall newFloor = new Wall(oldFloor, true);
+        assertEquals(oldFloor, seen[0]);
+        assertEquals(newFloor, seen[1]);
+
+        squareDefault.removeBorderListener(listener);
+        assertFalse(squareDefault.hasAsBorderListener(listener));
+        new Wall(squareDefault.getBorderAt(Direction.NORTH));
+        assertEquals(newFloor, seen[1]);
+    }
+
     @Test
     public void terminate_test() {
         squareDefault.terminate();
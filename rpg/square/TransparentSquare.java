@@ -228,8 +228,8 @@ public class TransparentSquare extends SquareImpl {
             && isValidMergeTemperatureWeight(getMergeTemperatureWeight()) 
             && isValidHeatDamageThreshold(getHeatDamageThreshold()) 
             && isValidHeatDamageStep(getHeatDamageStep()) 
-            && matchesMinTemperatureMax(getMinTemperature(),
-                                    getTemperature(), getMaxTemperature())
+            && matchesMinTemperatureMax(getMinTemperatureValue(),
+                            getTemperatureValue(), getMaxTemperatureValue())
             && canHaveAsHumidity(getHumidity()) 
             && hasProperBorders()
             && bordersSatisfyConstraints()
@@ -116,6 +116,7 @@ public class TransparentTeleportationSquare
 	public void setTeleporter(Teleporter teleporter) {
 		assert isValidTeleporter(teleporter);
 		this.teleporter = teleporter;
+		AreaRecord.teleporterChanged(this);
 	}
 	
 	/**
@@ -144,18 +145,15 @@ public class TransparentTeleportationSquare
 	}
 
     /** 
-     * Return a set of squares that can directly be navigated to 
-     * from this square in a single step in one way or another.
+     * Return the squares that this transparent teleportation square can 
+     * teleport to.
      * 
      * @return 
-	 * The result contains the teleportation destination
-	 *   | result.contains(getTeleporter().getDestination())
+	 *   | result.equals(getTeleporter().getDestinations())
      */
 	@Override
-    public Set<Square> getNavigatableSquares() {
-		Set<Square> result = super.getNavigatableSquares();
-		result.addAll(getTeleporter().getDestinations());
-		return result;
+    Set<Square> getTeleportationDestinations() {
+		return getTeleporter().getDestinations();
     }
 
 	/**
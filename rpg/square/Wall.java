@@ -21,13 +21,14 @@ public class Wall extends Border{
      * @post
      *   | new.isSlippery() == isSlippery
      * @effect
-     *   | super(border)
+     *   | replace(border)
      */
     @Raw
     public Wall(Border border, boolean isSlippery) 
                                         throws IllegalArgumentException {
-        super(border);
+        //set the slipperyness first, so the squares see the final wall
         this.isSlippery = isSlippery;
+        replace(border);
     }
 
     /** 
@@ -183,29 +183,179 @@ public class Coordinate {
     
     /** 
      * Returns a hashcode for this coordinate object.
+     *
+     * @note
+     * Every component gets mixed in with a multiplicative hash, so 
+     * coordinates that only differ in a single component (neighbours in a 
+     * dungeon, for instance) spread out nicely, whatever the span of the 
+     * coordinates.
      */
     @Override
     public int hashCode() {
-        // Go for the maximum base possible without overflowing an integer. 
-        // Hopefully the compiler can calculate this in advance and 
-        // hard-code the result to make it faster and avoid floating point 
-        // calculations.
-        int base = (int) java.lang.Math.floor(java.lang.Math.pow(Integer.MAX_VALUE,1f/3f));
-        return (int) (x  +  base * y  +  base * base * z);
-        // Note: this does collide when the 'span' of the coordinates 
-        // exceed the cube root of Integer.MAX_VALUE.
-
-        /*
-        // Goedel encoding may be a bit of overkill, but at least it's 
-        // guaranteed to be unique (well, modulo integer wrap-around) :-)
-        // Negative coordinates will collide with positive ones, though.
-        return (new java.lang.Double(
-                    java.lang.Math.pow(2, java.lang.Math.abs(x)) 
-                    * java.lang.Math.pow(3, java.lang.Math.abs(y))
-                    * java.lang.Math.pow(5, java.lang.Math.abs(z)))).intValue();
-        */
+        long h = x * HASH_MULTIPLIER + y;
+        h = h * HASH_MULTIPLIER + z;
+        h *= HASH_MULTIPLIER;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /** 
+     * Constant registering the multiplier for hashing coordinates (the 
+     * 64 bit golden ratio).
+     */
+    private static final long HASH_MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+    /** 
+     * Checks whether the given components can be packed into a single 
+     * long value.
+     * 
+     * @param x 
+     * The component in the x-direction.
+     * @param y 
+     * The component in the y-direction.
+     * @param z 
+     * The component in the z-direction.
+     * @return 
+     *   | result == (MIN_PACKABLE &lt;= x &amp;&amp; x &lt;= MAX_PACKABLE
+     *   |         &amp;&amp; MIN_PACKABLE &lt;= y &amp;&amp; y &lt;= MAX_PACKABLE
+     *   |         &amp;&amp; MIN_PACKABLE &lt;= z &amp;&amp; z &lt;= MAX_PACKABLE)
+     */
+    public static boolean isPackable(long x, long y, long z) {
+        return MIN_PACKABLE <= x  &&  x <= MAX_PACKABLE
+            && MIN_PACKABLE <= y  &&  y <= MAX_PACKABLE
+            && MIN_PACKABLE <= z  &&  z <= MAX_PACKABLE;
+    }
+
+    /** 
+     * Checks whether this coordinate can be packed into a single long 
+     * value.
+     * 
+     * @return 
+     *   | result == isPackable(x, y, z)
+     */
+    public boolean isPackable() {
+        return isPackable(x, y, z);
     }
 
+    /** 
+     * Pack the given components into a single long value.
+     * Distinct packable coordinates always get distinct packed values, and 
+     * the packed values are never negative.
+     * 
+     * @param x 
+     * The component in the x-direction.
+     * @param y 
+     * The component in the y-direction.
+     * @param z 
+     * The component in the z-direction.
+     * @return 
+     *   | unpack(result).equals(new Coordinate(x, y, z))
+     * @return 
+     *   | result &gt;= 0
+     * @throws IllegalArgumentException
+     *   | !isPackable(x, y, z)
+     */
+    public static long pack(long x, long y, long z) 
+                                            throws IllegalArgumentException {
+        if (!isPackable(x, y, z))
+            throw new IllegalArgumentException();
+        return ((x - MIN_PACKABLE) << (2 * PACKED_BITS))
+             | ((y - MIN_PACKABLE) << PACKED_BITS)
+             |  (z - MIN_PACKABLE);
+    }
+
+    /** 
+     * Pack this coordinate into a single long value.
+     * 
+     * @return 
+     *   | result == pack(x, y, z)
+     * @throws IllegalStateException
+     *   | !isPackable()
+     */
+    public long pack() throws IllegalStateException {
+        if (!isPackable())
+            throw new IllegalStateException();
+        return pack(x, y, z);
+    }
+
+    /** 
+     * Return the x component of the coordinate that was packed into the 
+     * given value.
+     * 
+     * @param packed 
+     * The packed coordinate.
+     * @pre
+     *   | packed was the result of pack()
+     */
+    public static long unpackX(long packed) {
+        return ((packed >>> (2 * PACKED_BITS)) & PACKED_MASK) + MIN_PACKABLE;
+    }
+
+    /** 
+     * Return the y component of the coordinate that was packed into the 
+     * given value.
+     * 
+     * @param packed 
+     * The packed coordinate.
+     * @pre
+     *   | packed was the result of pack()
+     */
+    public static long unpackY(long packed) {
+        return ((packed >>> PACKED_BITS) & PACKED_MASK) + MIN_PACKABLE;
+    }
+
+    /** 
+     * Return the z component of the coordinate that was packed into the 
+     * given value.
+     * 
+     * @param packed 
+     * The packed coordinate.
+     * @pre
+     *   | packed was the result of pack()
+     */
+    public static long unpackZ(long packed) {
+        return (packed & PACKED_MASK) + MIN_PACKABLE;
+    }
+
+    /** 
+     * Return the coordinate that was packed into the given value.
+     * 
+     * @param packed 
+     * The packed coordinate.
+     * @pre
+     *   | packed was the result of pack()
+     * @return 
+     *   | result == new Coordinate(unpackX(packed), unpackY(packed),
+     *   |                                           unpackZ(packed))
+     */
+    public static Coordinate unpack(long packed) {
+        return new Coordinate(unpackX(packed), unpackY(packed),
+                                               unpackZ(packed));
+    }
+
+    /** 
+     * Constant registering the number of bits for each component of a 
+     * packed coordinate.
+     */
+    public static final int PACKED_BITS = 21;
+
+    /** 
+     * Constant registering the mask for a single component of a packed 
+     * coordinate.
+     */
+    private static final long PACKED_MASK = (1L << PACKED_BITS) - 1;
+
+    /** 
+     * Constant registering the smallest value of a component of a 
+     * packable coordinate.
+     */
+    public static final long MIN_PACKABLE = -(1L << (PACKED_BITS - 1));
+
+    /** 
+     * Constant registering the largest value of a component of a packable 
+     * coordinate.
+     */
+    public static final long MAX_PACKABLE = (1L << (PACKED_BITS - 1)) - 1;
+
     /**
      * Returns a string representation for this coordinate object
      *
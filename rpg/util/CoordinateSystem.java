@@ -349,15 +349,17 @@ public class CoordinateSystem implements Cloneable, Iterable<Coordinate> {
      * @pre
      *   | other != null;
      * @return 
-     *   | result == (contains(other.getLowerBound())
-     *   |         || contains(other.getUpperBound())
-     *   |         || other.contains(getLowerBound())
-     *   |         || other.contains(getUpperBound()))
+     *   | result == (for some coordinate :
+     *   |              contains(coordinate) &amp;&amp; other.contains(coordinate))
      */
     public boolean overlaps(CoordinateSystem other) {
         assert other != null;
-        return contains(other.getLowerBound()) || contains(other.getUpperBound())
-            || other.contains(getLowerBound()) || other.contains(getUpperBound());
+        Coordinate lo = getLowerBound(), hi = getUpperBound();
+        Coordinate otherLo = other.getLowerBound();
+        Coordinate otherHi = other.getUpperBound();
+        return lo.x <= otherHi.x && otherLo.x <= hi.x
+            && lo.y <= otherHi.y && otherLo.y <= hi.y
+            && lo.z <= otherHi.z && otherLo.z <= hi.z;
     }
 
     /** 
@@ -143,6 +143,20 @@ public class CoordinateSystemTest {
         assertFalse(coordSyst_10_to_20.contains(coordSyst_0_to_20));
     }
 
+    @Test
+    public void overlaps_test() {
+        assertTrue(coordSyst_0_to_20.overlaps(coordSyst_10_to_20));
+        CoordinateSystem beyond = new CoordinateSystem(
+                            new Coordinate(21, 0, 0), new Coordinate(30, 5, 5));
+        assertFalse(coordSyst_0_to_20.overlaps(beyond));
+        CoordinateSystem crossX = new CoordinateSystem(
+                            new Coordinate(0, 5, 5), new Coordinate(20, 6, 6));
+        CoordinateSystem crossY = new CoordinateSystem(
+                            new Coordinate(5, 0, 5), new Coordinate(6, 20, 6));
+        assertTrue(crossX.overlaps(crossY));
+        assertTrue(crossY.overlaps(crossX));
+    }
+
     @Test
     public void iterator_test() {
         CoordinateSystem coordSyst2x2x0 = new CoordinateSystem(Coordinate.ORIGIN,
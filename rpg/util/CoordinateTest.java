@@ -39,6 +39,42 @@ public class CoordinateTest {
             (new Coordinate(10, 20, 30).hashCode()));
     }
 
+    @Test
+    public void hashCode_largeSpan() {
+        java.util.Set<Integer> hashes = new java.util.HashSet<Integer>();
+        for (long i = 0; i < 2000; i++)
+            hashes.add(new Coordinate(i, 0, 0).hashCode());
+        for (long i = 1; i < 2000; i++)
+            hashes.add(new Coordinate(0, i * 1291, 0).hashCode());
+        assertEquals(3999, hashes.size());
+    }
+
+    @Test
+    public void pack_roundTrip() {
+        long max = Coordinate.MAX_PACKABLE;
+        long min = Coordinate.MIN_PACKABLE;
+        Coordinate[] coordinates = { origin, coord_10_20_30, coord_n10_n20_n30,
+                new Coordinate(max, min, max), new Coordinate(min, max, min) };
+        for (Coordinate coordinate : coordinates) {
+            assertTrue(coordinate.pack() >= 0);
+            assertEquals(coordinate, Coordinate.unpack(coordinate.pack()));
+        }
+        assertFalse(new Coordinate(1, 2, 3).pack()
+                        == new Coordinate(3, 2, 1).pack());
+    }
+    @Test
+    public void isPackable_test() {
+        assertTrue(coord_n10_n20_n30.isPackable());
+        assertFalse(new Coordinate(Coordinate.MAX_PACKABLE + 1, 0, 0)
+                                                            .isPackable());
+        assertFalse(new Coordinate(0, 0, Coordinate.MIN_PACKABLE - 1)
+                                                            .isPackable());
+    }
+    @Test (expected = IllegalStateException.class)
+    public void pack_unpackable() {
+        new Coordinate(0, Long.MAX_VALUE, 0).pack();
+    }
+
     @Test
     public void moveTo_legal() {
         assertEquals(new Coordinate( 1, 0, 0),origin.moveTo(Direction.EAST));
@@ -0,0 +1,348 @@
+package rpg.util;
+
+import be.kuleuven.cs.som.annotate.*;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A class of maps from primitive long keys to non-null values.
+ * The map uses open addressing with linear probing, so it does not
+ * allocate an entry object per mapping, nor does it box its keys.
+ *
+ * @invar
+ *   | size() &gt;= 0
+ *
+ * @author Roald Frederickx
+ */
+public class LongMap<V> {
+
+    /**
+     * Create a new, empty long map.
+     *
+     * @post
+     *   | new.size() == 0
+     */
+    public LongMap() {
+        allocate(MIN_CAPACITY);
+    }
+
+    /**
+     * Return the number of mappings in this long map.
+     */
+    @Basic
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Checks whether this long map is empty.
+     *
+     * @return
+     *   | result == (size() == 0)
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Variable registering the number of mappings in this long map.
+     */
+    private int size;
+
+    /**
+     * Return the value that is mapped to the given key, or null if there
+     * is no such value.
+     *
+     * @param key
+     * The key whose value to return.
+     */
+    @Basic
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        int slot = slotOf(key);
+        while (values[slot] != null) {
+            if (keys[slot] == key)
+                return (V) values[slot];
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+
+    /**
+     * Checks whether this long map has a value for the given key.
+     *
+     * @param key
+     * The key to check.
+     * @return
+     *   | result == (get(key) != null)
+     */
+    public boolean containsKey(long key) {
+        return get(key) != null;
+    }
+
+    /**
+     * Map the given key to the given value.
+     *
+     * @param key
+     * The key to map.
+     * @param value
+     * The value to map the given key to.
+     * @post
+     *   | new.get(key) == value
+     * @return
+     * The value that was mapped to the given key before, or null if there
+     * was no such value.
+     *   | result == old.get(key)
+     * @throws IllegalArgumentException
+     *   | value == null
+     */
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) throws IllegalArgumentException {
+        if (value == null)
+            throw new IllegalArgumentException("Non-effective value");
+        int slot = slotOf(key);
+        while (values[slot] != null) {
+            if (keys[slot] == key) {
+                V old = (V) values[slot];
+                values[slot] = value;
+                return old;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        size++;
+        if (size > maxSize)
+            allocate(keys.length * 2);
+        return null;
+    }
+
+    /**
+     * Remove the mapping for the given key.
+     *
+     * @param key
+     * The key whose mapping to remove.
+     * @post
+     *   | new.get(key) == null
+     * @return
+     *   | result == old.get(key)
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        int slot = slotOf(key);
+        while (values[slot] != null) {
+            if (keys[slot] == key) {
+                V old = (V) values[slot];
+                shiftBack(slot);
+                size--;
+                return old;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+
+    /**
+     * Remove all mappings of this long map.
+     *
+     * @post
+     *   | new.size() == 0
+     */
+    public void clear() {
+        keys = null;
+        values = null;
+        allocate(MIN_CAPACITY);
+        size = 0;
+    }
+
+    /**
+     * Empty the given slot and move later entries of its probe sequence
+     * back, so that lookups never stumble on a hole.
+     *
+     * @param slot
+     * The slot to empty.
+     */
+    private void shiftBack(int slot) {
+        int hole = slot;
+        int next = (hole + 1) & mask;
+        while (values[next] != null) {
+            int home = slotOf(keys[next]);
+            //move the entry if its home does not lie cyclically in
+            //(hole, next]
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                keys[hole] = keys[next];
+                values[hole] = values[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        values[hole] = null;
+    }
+
+    /**
+     * Return the home slot of the given key.
+     *
+     * @param key
+     * The key whose home slot to return.
+     */
+    private int slotOf(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    /**
+     * Allocate new arrays with the given capacity and reinsert all
+     * current mappings.
+     *
+     * @param capacity
+     * The new capacity.
+     * @pre
+     *   | capacity is a power of two  &amp;&amp;  capacity &gt; size() / LOAD_FACTOR
+     */
+    private void allocate(int capacity) {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new long[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+        maxSize = (int) (capacity * LOAD_FACTOR);
+        if (oldValues == null)
+            return;
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] == null)
+                continue;
+            int slot = slotOf(oldKeys[i]);
+            while (values[slot] != null)
+                slot = (slot + 1) & mask;
+            keys[slot] = oldKeys[i];
+            values[slot] = oldValues[i];
+        }
+    }
+
+    /**
+     * Constant registering the minimum capacity of a long map.
+     */
+    private static final int MIN_CAPACITY = 16;
+
+    /**
+     * Constant registering the maximum fraction of the slots of a long
+     * map that can be in use.
+     */
+    private static final double LOAD_FACTOR = 0.6;
+
+    /**
+     * Variable referencing the keys of the slots of this long map.
+     */
+    private long[] keys;
+
+    /**
+     * Variable referencing the values of the slots of this long map. An
+     * empty slot has null as its value.
+     */
+    private Object[] values;
+
+    /**
+     * Variable registering the mask to reduce a hash to a slot.
+     */
+    private int mask;
+
+    /**
+     * Variable registering the number of mappings at which this long map
+     * grows.
+     */
+    private int maxSize;
+
+    /**
+     * Return a cursor over the mappings of this long map.
+     * The cursor is invalidated by any structural change of this long map.
+     */
+    public Cursor<V> cursor() {
+        return new Cursor<V>(this);
+    }
+
+    /**
+     * Return an iterator over the values of this long map.
+     * The iterator is invalidated by any structural change of this long
+     * map.
+     */
+    public Iterator<V> valueIterator() {
+        return new Iterator<V>() {
+            public boolean hasNext() {
+                return hasNext;
+            }
+
+            public V next() throws NoSuchElementException {
+                if (!hasNext)
+                    throw new NoSuchElementException();
+                V result = cursor.value();
+                hasNext = cursor.advance();
+                return result;
+            }
+
+            public void remove() throws UnsupportedOperationException {
+                throw new UnsupportedOperationException();
+            }
+
+            private Cursor<V> cursor = cursor();
+            private boolean hasNext = cursor.advance();
+        };
+    }
+
+    /**
+     * A class of cursors that walk over the mappings of a long map without
+     * boxing its keys.
+     * A fresh cursor is positioned before the first mapping.
+     */
+    public static class Cursor<V> {
+
+        /**
+         * Create a new cursor over the given long map.
+         */
+        private Cursor(LongMap<V> map) {
+            this.map = map;
+        }
+
+        /**
+         * Move this cursor to the next mapping.
+         *
+         * @return
+         * True iff there was a next mapping.
+         */
+        public boolean advance() {
+            do {
+                slot++;
+            } while (slot < map.values.length && map.values[slot] == null);
+            return slot < map.values.length;
+        }
+
+        /**
+         * Return the key of the current mapping of this cursor.
+         */
+        @Basic
+        public long key() {
+            return map.keys[slot];
+        }
+
+        /**
+         * Return the value of the current mapping of this cursor.
+         */
+        @Basic
+        @SuppressWarnings("unchecked")
+        public V value() {
+            return (V) map.values[slot];
+        }
+
+        /**
+         * Variable referencing the long map of this cursor.
+         */
+        private final LongMap<V> map;
+
+        /**
+         * Variable registering the current slot of this cursor.
+         */
+        private int slot = -1;
+    }
+}
+
+// vim: ts=4:sw=4:expandtab:smarttab
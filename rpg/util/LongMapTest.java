@@ -0,0 +1,100 @@
+package rpg.util;
+
+import static org.junit.Assert.*;
+import org.junit.*;
+
+import java.util.Iterator;
+import java.util.Set;
+import java.util.HashSet;
+
+/**
+ * A class collecting tests for the class of long maps.
+ *
+ * @author Roald Frederickx
+ */
+public class LongMapTest {
+
+    private LongMap<String> map;
+
+    @Before
+    public void setUpMutableFixture() {
+        map = new LongMap<String>();
+        map.put(1, "spam");
+        map.put(-1, "eggs");
+        map.put(Long.MIN_VALUE, "ham");
+    }
+
+    @Test
+    public void get_test() {
+        assertEquals("spam", map.get(1));
+        assertEquals("eggs", map.get(-1));
+        assertEquals("ham", map.get(Long.MIN_VALUE));
+        assertEquals(null, map.get(0));
+        assertEquals(3, map.size());
+    }
+
+    @Test
+    public void put_overwrite() {
+        assertEquals("spam", map.put(1, "bacon"));
+        assertEquals("bacon", map.get(1));
+        assertEquals(3, map.size());
+    }
+    @Test (expected = IllegalArgumentException.class)
+    public void put_null() {
+        map.put(2, null);
+    }
+
+    @Test
+    public void remove_test() {
+        assertEquals("eggs", map.remove(-1));
+        assertEquals(null, map.remove(-1));
+        assertFalse(map.containsKey(-1));
+        assertEquals(2, map.size());
+    }
+
+    @Test
+    public void manyKeys_growAndShrink() {
+        LongMap<Long> big = new LongMap<Long>();
+        for (long i = 0; i < 10000; i++)
+            big.put(i * 1024, i);
+        assertEquals(10000, big.size());
+        for (long i = 0; i < 10000; i += 2)
+            assertEquals(Long.valueOf(i), big.remove(i * 1024));
+        assertEquals(5000, big.size());
+        for (long i = 0; i < 10000; i++)
+            assertEquals(i % 2 == 0 ? null : Long.valueOf(i),
+                         big.get(i * 1024));
+    }
+
+    @Test
+    public void cursor_test() {
+        Set<Long> keys = new HashSet<Long>();
+        LongMap.Cursor<String> cursor = map.cursor();
+        while (cursor.advance()) {
+            keys.add(cursor.key());
+            assertEquals(map.get(cursor.key()), cursor.value());
+        }
+        assertEquals(3, keys.size());
+        assertTrue(keys.contains(Long.MIN_VALUE));
+    }
+
+    @Test
+    public void valueIterator_test() {
+        Set<String> values = new HashSet<String>();
+        Iterator<String> it = map.valueIterator();
+        while (it.hasNext())
+            values.add(it.next());
+        assertEquals(3, values.size());
+        assertTrue(values.contains("eggs"));
+        assertFalse(new LongMap<String>().valueIterator().hasNext());
+    }
+
+    @Test
+    public void clear_test() {
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertEquals(null, map.get(1));
+    }
+}
+
+// vim: ts=4:sw=4:expandtab:smarttab
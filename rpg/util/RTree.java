@@ -0,0 +1,476 @@
+package rpg.util;
+
+import be.kuleuven.cs.som.annotate.*;
+
+import java.util.List;
+import java.util.ArrayList;
+
+/**
+ * A class of R-trees that index elements by an axis aligned box of
+ * coordinates.
+ * Boxes are grouped in nodes of bounded fan-out, each node remembering
+ * the bounding box of everything below it. Point and box queries only
+ * descend into nodes whose bounding box is hit, so on well spread boxes
+ * they take logarithmic time in the number of elements.
+ *
+ * @invar
+ *   | size() &gt;= 0
+ *
+ * @author Roald Frederickx
+ */
+public class RTree<E> {
+
+    /**
+     * Create a new, empty R-tree.
+     *
+     * @post
+     *   | new.size() == 0
+     */
+    public RTree() {
+        clear();
+    }
+
+    /**
+     * Return the number of elements in this R-tree.
+     */
+    @Basic
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Variable registering the number of elements in this R-tree.
+     */
+    private int size;
+
+    /**
+     * Remove all elements from this R-tree.
+     *
+     * @post
+     *   | new.size() == 0
+     */
+    public void clear() {
+        root = new Node(true);
+        size = 0;
+    }
+
+    /**
+     * Add the given element with the given box to this R-tree.
+     *
+     * @param lowerBound
+     * The lower bound of the box of the given element.
+     * @param upperBound
+     * The upper bound of the box of the given element.
+     * @param element
+     * The element to add.
+     * @post
+     *   | new.size() == size() + 1
+     * @throws IllegalArgumentException
+     *   | element == null
+     *   |   || !Coordinate.formsValidBoundingBox(lowerBound, upperBound)
+     */
+    public void insert(Coordinate lowerBound, Coordinate upperBound,
+                                E element) throws IllegalArgumentException {
+        if (element == null
+                || !Coordinate.formsValidBoundingBox(lowerBound, upperBound))
+            throw new IllegalArgumentException();
+        insert(new Entry<E>(lowerBound, upperBound, element));
+        size++;
+    }
+
+    /**
+     * Add the given entry to this R-tree, growing a new root if the old
+     * one had to be split.
+     *
+     * @param entry
+     * The entry to add.
+     */
+    private void insert(Entry<E> entry) {
+        Node sibling = insert(root, entry);
+        if (sibling != null) {
+            Node newRoot = new Node(false);
+            newRoot.children.add(root);
+            newRoot.children.add(sibling);
+            newRoot.recomputeBounds();
+            root = newRoot;
+        }
+    }
+
+    /**
+     * Add the given entry below the given node.
+     *
+     * @param node
+     * The node to add the given entry below.
+     * @param entry
+     * The entry to add.
+     * @return
+     * The node that was split off the given node because it overflowed, or
+     * null if no split was needed.
+     */
+    private Node insert(Node node, Entry<E> entry) {
+        if (node.isLeaf) {
+            node.children.add(entry);
+        } else {
+            Node child = chooseSubtree(node, entry);
+            Node split = insert(child, entry);
+            if (split != null)
+                node.children.add(split);
+        }
+        node.recomputeBounds();
+        if (node.children.size() > MAX_CHILDREN)
+            return split(node);
+        return null;
+    }
+
+    /**
+     * Return the child of the given node whose box needs the smallest
+     * enlargement to cover the given box, preferring the smallest child on
+     * a tie.
+     *
+     * @param node
+     * The non-leaf node to pick a child from.
+     * @param box
+     * The box to cover.
+     */
+    private Node chooseSubtree(Node node, Box box) {
+        Node best = null;
+        double bestEnlargement = 0;
+        double bestVolume = 0;
+        for (Box child : node.children) {
+            double volume = child.volume();
+            double enlargement = child.unionVolume(box) - volume;
+            if (best == null || enlargement < bestEnlargement
+                    || (enlargement == bestEnlargement && volume < bestVolume)) {
+                best = (Node) child;
+                bestEnlargement = enlargement;
+                bestVolume = volume;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Split the given overflowing node in two, using the seeds that would
+     * waste the most volume when grouped together.
+     *
+     * @param node
+     * The node to split.
+     * @post
+     * The given node keeps one group of children.
+     * @return
+     * A new node holding the other group of children.
+     */
+    private Node split(Node node) {
+        List<Box> children = new ArrayList<Box>(node.children);
+        int seed1 = 0, seed2 = 1;
+        double worstWaste = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < children.size(); i++) {
+            for (int j = i + 1; j < children.size(); j++) {
+                Box a = children.get(i);
+                Box b = children.get(j);
+                double waste = a.unionVolume(b) - a.volume() - b.volume();
+                if (waste > worstWaste) {
+                    worstWaste = waste;
+                    seed1 = i;
+                    seed2 = j;
+                }
+            }
+        }
+        Node sibling = new Node(node.isLeaf);
+        node.children.clear();
+        node.children.add(children.get(seed1));
+        sibling.children.add(children.get(seed2));
+        node.recomputeBounds();
+        sibling.recomputeBounds();
+        int remaining = children.size() - 2;
+        for (int i = 0; i < children.size(); i++) {
+            if (i == seed1 || i == seed2)
+                continue;
+            Box child = children.get(i);
+            Node target;
+            if (node.children.size() + remaining <= MIN_CHILDREN)
+                target = node;
+            else if (sibling.children.size() + remaining <= MIN_CHILDREN)
+                target = sibling;
+            else if (node.unionVolume(child) - node.volume()
+                            <= sibling.unionVolume(child) - sibling.volume())
+                target = node;
+            else
+                target = sibling;
+            target.children.add(child);
+            target.include(child);
+            remaining--;
+        }
+        return sibling;
+    }
+
+    /**
+     * Remove the given element with the given box from this R-tree.
+     *
+     * @param lowerBound
+     * The lower bound of the box the given element was added with.
+     * @param upperBound
+     * The upper bound of the box the given element was added with.
+     * @param element
+     * The element to remove.
+     * @return
+     * True iff the given element was found with the given box and removed.
+     * @post
+     *   | if (result) then new.size() == size() - 1
+     */
+    public boolean remove(Coordinate lowerBound, Coordinate upperBound,
+                          Object element) {
+        if (element == null
+                || !Coordinate.formsValidBoundingBox(lowerBound, upperBound))
+            return false;
+        Box box = new Box(lowerBound, upperBound);
+        List<Entry<E>> orphans = new ArrayList<Entry<E>>();
+        if (!remove(root, box, element, orphans))
+            return false;
+        while (!root.isLeaf && root.children.size() == 1)
+            root = (Node) root.children.get(0);
+        for (Entry<E> orphan : orphans)
+            insert(orphan);
+        size--;
+        return true;
+    }
+
+    /**
+     * Remove the given element with the given box from below the given
+     * node. Children that become underfull are cut loose and their entries
+     * are collected in the given list for reinsertion.
+     *
+     * @return
+     * True iff the given element was found and removed.
+     */
+    private boolean remove(Node node, Box box, Object element,
+                           List<Entry<E>> orphans) {
+        if (node.isLeaf) {
+            for (int i = 0; i < node.children.size(); i++) {
+                @SuppressWarnings("unchecked")
+                Entry<E> entry = (Entry<E>) node.children.get(i);
+                if (entry.element.equals(element) && entry.sameBoxAs(box)) {
+                    node.children.remove(i);
+                    node.recomputeBounds();
+                    return true;
+                }
+            }
+            return false;
+        }
+        for (int i = 0; i < node.children.size(); i++) {
+            Node child = (Node) node.children.get(i);
+            if (!child.contains(box))
+                continue;
+            if (remove(child, box, element, orphans)) {
+                if (child.children.size() < MIN_CHILDREN) {
+                    node.children.remove(i);
+                    collectEntries(child, orphans);
+                }
+                node.recomputeBounds();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Add all entries below the given node to the given list.
+     */
+    @SuppressWarnings("unchecked")
+    private void collectEntries(Node node, List<Entry<E>> result) {
+        for (Box child : node.children) {
+            if (node.isLeaf)
+                result.add((Entry<E>) child);
+            else
+                collectEntries((Node) child, result);
+        }
+    }
+
+    /**
+     * Return an element of this R-tree whose box contains the given
+     * coordinate, or null if there is no such element.
+     *
+     * @param coordinate
+     * The coordinate to look up.
+     * @return
+     *   | if (result != null)
+     *   |   then the box of result contains coordinate
+     */
+    public E getContaining(Coordinate coordinate) {
+        if (coordinate == null)
+            return null;
+        return getContaining(root, coordinate.x, coordinate.y, coordinate.z);
+    }
+
+    /**
+     * Return an element below the given node whose box contains the given
+     * point, or null if there is no such element.
+     */
+    @SuppressWarnings("unchecked")
+    private E getContaining(Node node, long x, long y, long z) {
+        for (Box child : node.children) {
+            if (!child.contains(x, y, z))
+                continue;
+            if (node.isLeaf)
+                return ((Entry<E>) child).element;
+            E result = getContaining((Node) child, x, y, z);
+            if (result != null)
+                return result;
+        }
+        return null;
+    }
+
+    /**
+     * Return a list of all elements of this R-tree whose box overlaps with
+     * the given box.
+     *
+     * @param lowerBound
+     * The lower bound of the box to check.
+     * @param upperBound
+     * The upper bound of the box to check.
+     * @throws IllegalArgumentException
+     *   | !Coordinate.formsValidBoundingBox(lowerBound, upperBound)
+     */
+    public List<E> getOverlapping(Coordinate lowerBound,
+                        Coordinate upperBound) throws IllegalArgumentException {
+        if (!Coordinate.formsValidBoundingBox(lowerBound, upperBound))
+            throw new IllegalArgumentException();
+        List<E> result = new ArrayList<E>();
+        addOverlapping(root, new Box(lowerBound, upperBound), result);
+        return result;
+    }
+
+    /**
+     * Add all elements below the given node whose box overlaps with the
+     * given box to the given list.
+     */
+    @SuppressWarnings("unchecked")
+    private void addOverlapping(Node node, Box box, List<E> result) {
+        for (Box child : node.children) {
+            if (!child.overlaps(box))
+                continue;
+            if (node.isLeaf)
+                result.add(((Entry<E>) child).element);
+            else
+                addOverlapping((Node) child, box, result);
+        }
+    }
+
+    /**
+     * Variable referencing the root node of this R-tree.
+     */
+    private Node root;
+
+    /**
+     * Constant registering the maximum number of children of a node.
+     */
+    private static final int MAX_CHILDREN = 8;
+
+    /**
+     * Constant registering the minimum number of children of a node other
+     * than the root.
+     */
+    private static final int MIN_CHILDREN = 3;
+
+    /**
+     * A class of inclusive, axis aligned boxes of coordinates.
+     */
+    private static class Box {
+        Box() {
+        }
+
+        Box(Coordinate lowerBound, Coordinate upperBound) {
+            loX = lowerBound.x; loY = lowerBound.y; loZ = lowerBound.z;
+            hiX = upperBound.x; hiY = upperBound.y; hiZ = upperBound.z;
+        }
+
+        boolean contains(long x, long y, long z) {
+            return loX <= x && x <= hiX
+                && loY <= y && y <= hiY
+                && loZ <= z && z <= hiZ;
+        }
+
+        boolean contains(Box other) {
+            return loX <= other.loX && other.hiX <= hiX
+                && loY <= other.loY && other.hiY <= hiY
+                && loZ <= other.loZ && other.hiZ <= hiZ;
+        }
+
+        boolean overlaps(Box other) {
+            return loX <= other.hiX && other.loX <= hiX
+                && loY <= other.hiY && other.loY <= hiY
+                && loZ <= other.hiZ && other.loZ <= hiZ;
+        }
+
+        boolean sameBoxAs(Box other) {
+            return loX == other.loX && loY == other.loY && loZ == other.loZ
+                && hiX == other.hiX && hiY == other.hiY && hiZ == other.hiZ;
+        }
+
+        void include(Box other) {
+            loX = Math.min(loX, other.loX);
+            loY = Math.min(loY, other.loY);
+            loZ = Math.min(loZ, other.loZ);
+            hiX = Math.max(hiX, other.hiX);
+            hiY = Math.max(hiY, other.hiY);
+            hiZ = Math.max(hiZ, other.hiZ);
+        }
+
+        /*
+         * Volumes are computed in floating point, as boxes may span the
+         * entire range of long coordinates.
+         */
+        double volume() {
+            return extent(loX, hiX) * extent(loY, hiY) * extent(loZ, hiZ);
+        }
+
+        double unionVolume(Box other) {
+            return extent(Math.min(loX, other.loX), Math.max(hiX, other.hiX))
+                 * extent(Math.min(loY, other.loY), Math.max(hiY, other.hiY))
+                 * extent(Math.min(loZ, other.loZ), Math.max(hiZ, other.hiZ));
+        }
+
+        private static double extent(long lo, long hi) {
+            return (double) hi - (double) lo + 1;
+        }
+
+        long loX, loY, loZ, hiX, hiY, hiZ;
+    }
+
+    /**
+     * A class of leaf entries, binding an element to its box.
+     */
+    private static class Entry<E> extends Box {
+        Entry(Coordinate lowerBound, Coordinate upperBound, E element) {
+            super(lowerBound, upperBound);
+            this.element = element;
+        }
+
+        final E element;
+    }
+
+    /**
+     * A class of nodes, whose box is the bounding box of their children.
+     */
+    private static class Node extends Box {
+        Node(boolean isLeaf) {
+            this.isLeaf = isLeaf;
+        }
+
+        void recomputeBounds() {
+            if (children.isEmpty())
+                return;
+            Box first = children.get(0);
+            loX = first.loX; loY = first.loY; loZ = first.loZ;
+            hiX = first.hiX; hiY = first.hiY; hiZ = first.hiZ;
+            for (Box child : children)
+                include(child);
+        }
+
+        final boolean isLeaf;
+
+        final List<Box> children = new ArrayList<Box>(MAX_CHILDREN + 1);
+    }
+}
+
+// vim: ts=4:sw=4:expandtab:smarttab
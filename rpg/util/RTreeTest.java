@@ -0,0 +1,102 @@
+package rpg.util;
+
+import static org.junit.Assert.*;
+import org.junit.*;
+
+import java.util.List;
+import java.util.Set;
+import java.util.HashSet;
+
+/**
+ * A class collecting tests for the class of R-trees.
+ *
+ * @author Roald Frederickx
+ */
+public class RTreeTest {
+
+    private RTree<String> tree;
+
+    @Before
+    public void setUpMutableFixture() {
+        tree = new RTree<String>();
+        tree.insert(new Coordinate(0, 0, 0), new Coordinate(9, 9, 0), "level");
+        tree.insert(new Coordinate(5, 5, 1), new Coordinate(5, 5, 9), "shaft");
+    }
+
+    private static Coordinate lowerOfCell(long i, long j) {
+        return new Coordinate(4 * i, 4 * j, 0);
+    }
+    private static Coordinate upperOfCell(long i, long j) {
+        return new Coordinate(4 * i + 3, 4 * j + 3, 0);
+    }
+
+    @Test
+    public void getContaining_test() {
+        assertEquals("level", tree.getContaining(new Coordinate(9, 0, 0)));
+        assertEquals("shaft", tree.getContaining(new Coordinate(5, 5, 9)));
+        assertEquals(null, tree.getContaining(new Coordinate(4, 5, 9)));
+        assertEquals(null, tree.getContaining(null));
+        assertEquals(2, tree.size());
+    }
+
+    @Test (expected = IllegalArgumentException.class)
+    public void insert_invalidBox() {
+        tree.insert(new Coordinate(1, 0, 0), Coordinate.ORIGIN, "spam");
+    }
+    @Test (expected = IllegalArgumentException.class)
+    public void insert_nullElement() {
+        tree.insert(Coordinate.ORIGIN, Coordinate.ORIGIN, null);
+    }
+
+    @Test
+    public void getOverlapping_test() {
+        List<String> result = tree.getOverlapping(new Coordinate(5, 0, 0),
+                                                  new Coordinate(5, 9, 9));
+        assertEquals(2, result.size());
+        result = tree.getOverlapping(new Coordinate(0, 0, 1),
+                                     new Coordinate(4, 9, 9));
+        assertTrue(result.isEmpty());
+    }
+
+    @Test
+    public void remove_test() {
+        assertFalse(tree.remove(Coordinate.ORIGIN, new Coordinate(9, 9, 1),
+                                "level"));
+        assertTrue(tree.remove(Coordinate.ORIGIN, new Coordinate(9, 9, 0),
+                               "level"));
+        assertEquals(null, tree.getContaining(new Coordinate(9, 0, 0)));
+        assertEquals(1, tree.size());
+    }
+
+    @Test
+    public void manyElements() {
+        RTree<String> grid = new RTree<String>();
+        for (long i = 0; i < 30; i++)
+            for (long j = 0; j < 30; j++)
+                grid.insert(lowerOfCell(i, j), upperOfCell(i, j), i + "," + j);
+        assertEquals(900, grid.size());
+        for (long i = 0; i < 30; i += 2)
+            for (long j = 0; j < 30; j++)
+                assertTrue(grid.remove(lowerOfCell(i, j), upperOfCell(i, j),
+                                       i + "," + j));
+        assertEquals(450, grid.size());
+        for (long i = 0; i < 30; i++)
+            for (long j = 0; j < 30; j++)
+                assertEquals(i % 2 == 0 ? null : i + "," + j,
+                        grid.getContaining(new Coordinate(4 * i + 1,
+                                                          4 * j + 2, 0)));
+        Set<String> overlapping = new HashSet<String>(grid.getOverlapping(
+                                lowerOfCell(3, 3), upperOfCell(5, 4)));
+        assertEquals(4, overlapping.size());
+        assertTrue(overlapping.contains("5,4"));
+    }
+
+    @Test
+    public void clear_test() {
+        tree.clear();
+        assertEquals(0, tree.size());
+        assertEquals(null, tree.getContaining(Coordinate.ORIGIN));
+    }
+}
+
+// vim: ts=4:sw=4:expandtab:smarttab
@@ -155,9 +155,24 @@ public class Temperature implements Comparable<Temperature> {
     public int compareTo(Temperature other) throws IllegalArgumentException {
         if (other == null)
             throw new IllegalArgumentException();
-        if (equals(other))
+        return compare(temperature(), other.temperature());
+    }
+
+    /** 
+     * Compare the given temperature values, in degrees Celcius, without 
+     * creating temperature objects.
+     * 
+     * @param value
+     * The first temperature value.
+     * @param other
+     * The second temperature value.
+     * @return
+     *   | result == new Temperature(value).compareTo(new Temperature(other))
+     */
+    public static int compare(double value, double other) {
+        if (areEqual(value, other))
             return 0;
-        if (temperature() < other.temperature())
+        if (value < other)
             return -1;
         return 1;
     }
@@ -182,11 +197,24 @@ public class Temperature implements Comparable<Temperature> {
         if (this.getClass() != other.getClass())
             return false;
         Temperature otherTemp = (Temperature) other;
-        double allowedError = Math.max(Math.abs(temperature()),
-                                        Math.abs(otherTemp.temperature()))
+        return areEqual(temperature(), otherTemp.temperature());
+    }
+
+    /** 
+     * Check for equality between the given temperature values, in degrees 
+     * Celcius, without creating temperature objects.
+     * 
+     * @param value
+     * The first temperature value.
+     * @param other
+     * The second temperature value.
+     * @return
+     *   | result == new Temperature(value).equals(new Temperature(other))
+     */
+    public static boolean areEqual(double value, double other) {
+        double allowedError = Math.max(Math.abs(value), Math.abs(other))
                                 * EQUALS_EPSILON;
-        return Math.abs(temperature() - otherTemp.temperature())
-                                                            <= allowedError;
+        return Math.abs(value - other) <= allowedError;
     }
 
     /** 
@@ -237,6 +265,29 @@ public class Temperature implements Comparable<Temperature> {
             return high;
         return this;
     }
+
+    /** 
+     * Return the result of coercing the given temperature value to the 
+     * given limits, all in degrees Celcius, without creating temperature 
+     * objects.
+     * 
+     * @param value
+     * The temperature value to coerce.
+     * @param low
+     * The lower temperature limit.
+     * @param high
+     * The upper temperature limit.
+     * @return
+     *   | result == new Temperature(value).coerce(new Temperature(low),
+     *   |                              new Temperature(high)).temperature()
+     */
+    public static double coerce(double value, double low, double high) {
+        if (compare(value, low) <= 0)
+            return low;
+        if (compare(value, high) >= 0)
+            return high;
+        return value;
+    }
 }
 
 // vim: ts=4:sw=4:expandtab:smarttab
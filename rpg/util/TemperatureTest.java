@@ -88,6 +88,18 @@ public class TemperatureTest {
         assertEquals(zeroC, tenC.coerce(zeroC, zeroC));
         assertEquals(hundredC, tenC.coerce(hundredC, hundredC));
     }
+
+    @Test
+    public void primitives_matchObjects() {
+        assertTrue(Temperature.areEqual(10, 10 + 1e-9));
+        assertFalse(Temperature.areEqual(0, 10));
+        assertEquals(-1, Temperature.compare(0, 10));
+        assertEquals(1, Temperature.compare(10, 0));
+        assertEquals(0, Temperature.compare(100, 100 * (1 + 1e-7)));
+        assertEquals(10, Temperature.coerce(10, 0, 100), 0);
+        assertEquals(0, Temperature.coerce(-10, 0, 100), 0);
+        assertEquals(100, Temperature.coerce(110, 0, 100), 0);
+    }
 }
 
 